@@ -3,8 +3,9 @@
 runner=$1
 
 echo "Attempting to compile java code..."
-javac *.java
-runner="java Main"
+# jdk.incubator.foreign is used by --heap=off-heap (see OffHeapArrays.java)
+javac --add-modules jdk.incubator.foreign *.java
+runner="java --add-modules jdk.incubator.foreign Main"
 
 for value in {0..9}
 do
@@ -29,4 +30,42 @@ echo ""
 echo "Correct cases score out of 10:"
 echo $score
 
+# The correct cases and the targeted cases (see tests.manifest) once for every option which changes how a program runs.
+# With another "--gc", the "gc:" lines are not compared (see Batch.java).
+flagsets=("" "--specialize" "--optimize" "--licm" "--cse" "--ir" "--inline" "--tail-calls" "--memoize"
+	"--gc=rc" "--gc=mark-sweep" "--gc=deferred" "--gc=generational" "--gc=incremental"
+	"--heap=jvm" "--heap=arena" "--heap=off-heap"
+	"--pool" "--elide-counts" "--early-release" "--frame-allocate")
+failed=0
+for flags in "${flagsets[@]}"
+do
+	echo ""
+	echo "Running tests.manifest with options: ${flags}"
+	if ! timeout 60 ${runner} --batch tests.manifest ${flags}; then
+		failed=$(($failed + 1))
+	fi
+done
+
+# The residual program of partial evaluation has to print the same output as the program itself.
+echo ""
+echo "Running the residual program of Targeted/pe.code"
+timeout 5 ${runner} Targeted/pe.code Targeted/pe-prefix.data --partial-evaluate --residual-data=Targeted/pe-residual.student.data > Targeted/pe-residual.student.code
+# the values not used by partial evaluation, then the input after pe-prefix.data
+cat Targeted/pe-residual.data >> Targeted/pe-residual.student.data
+timeout 5 ${runner} Targeted/pe-residual.student.code Targeted/pe-residual.student.data > Targeted/pe-residual.student
+grep -o '[[:digit:]]\+' Targeted/pe-residual.student > Targeted/temp1
+grep -o '[[:digit:]]\+' Targeted/pe.expected > Targeted/temp2
+if cmp -s "Targeted/temp1" "Targeted/temp2"; then
+	echo "Print looks good"
+else
+	echo "Residual output and expected output are different"
+	failed=$(($failed + 1))
+fi
+rm Targeted/temp1
+rm Targeted/temp2
+
+echo ""
+echo "Option sets and residual programs failed:"
+echo $failed
+
 echo "Done!"
\ No newline at end of file
@@ -0,0 +1,66 @@
+/**
+ * <expr> ==> <term> + <expr>
+ *
+ * @author Zhao Liu
+ */
+public final class AddExpression extends BinaryExpression {
+
+    /**
+     * @param term       the "<term>" on the left side, which has been parsed
+     * @param expression the "<expr>" on the right side, which has been parsed
+     */
+    public AddExpression(Term term, Expression expression) {
+        super(term, expression);
+    }
+
+    protected char getSymbol() {
+        return '+';
+    }
+
+    protected IrInstruction.Opcode getOpcode() {
+        return IrInstruction.Opcode.ADD;
+    }
+
+    protected int compute(int termValue, int expressionValue) {
+        return termValue + expressionValue;
+    }
+
+    protected BinaryExpression copy(Term term, Expression expression) {
+        return new AddExpression(term, expression);
+    }
+
+    /**
+     * "const + <factor>" and "<factor> + const" skip all the Term layers.
+     *
+     * @return the specialized node, or null if it can not be specialized
+     */
+    protected SpecializedNode.Read specialize() {
+        Factor left = getTerm().getSingleFactor();
+        Factor right = getExpression().getSingleFactor();
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left.isConstant() && !right.isConstant()) {
+            return new SpecializedNode.ConstPlusVar(left.getConstantValue(), new SpecializedNode.FactorRead(right));
+        }
+        if (right.isConstant() && !left.isConstant()) {
+            return new SpecializedNode.ConstPlusVar(right.getConstantValue(), new SpecializedNode.FactorRead(left));
+        }
+        return null;
+    }
+
+    public boolean isIncrementOf(String variable) {
+        Factor left = getTerm().getSingleFactor();
+        Factor right = getExpression().getSingleFactor();
+        if (left == null || right == null) {
+            return false;
+        }
+        if (left.isConstant()) {
+            Factor temp = left;
+            left = right;
+            right = temp;
+        }
+        return right.isConstant() && right.getConstantValue() > 0 && left.isIntegerVariable(variable);
+    }
+
+}
@@ -0,0 +1,155 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <cond> ==> <cmpr> and <cond>
+ *
+ * @author Zhao Liu
+ */
+public final class AndCondition implements Condition {
+    private Compare compare;
+    private Core andKeyword;
+    private Condition condition;
+
+    // The result decided by constant folding, null if it is not a constant.
+    private Boolean constantValue;
+
+    // with option "--short-circuit", "<cond>" is not executed when "<cmpr>" is false
+    private boolean shortCircuit;
+    // for "--profile-write", see Profile.java
+    private int profileId;
+
+    /**
+     * @param compare the "<cmpr>" before "and", which has been parsed
+     */
+    public AndCondition(Compare compare) {
+        this.compare = compare;
+    }
+
+    /**
+     * The grammar is: <cond> ==> <cmpr> and <cond>, starting from "and"
+     *
+     * @param tokenQueue a sequence of tokens as input to the parser.
+     */
+    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+        tokenQueue.poll();
+        andKeyword = Core.AND;
+        shortCircuit = Options.getInstance().isShortCircuit();
+        profileId = Profile.getInstance().newNode(Profile.AND);
+
+        condition = Condition.parse(tokenQueue, functionMap);
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        compare.semanticChecking(variableStack, functionCheckingMap);
+        condition.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<cond> ::= <cmpr> and <cond>", both "<cmpr>" and "<cond>" are true, return true
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<cond>"
+     */
+    public boolean execute(Memory memory, Map<String, Function> functionMap) {
+        if (constantValue != null) {
+            return constantValue;
+        }
+        boolean compareValue = compare.execute(memory, functionMap);
+        // counter 0: the result is decided by "<cmpr>", counter 1: "<cond>" is needed
+        Profile.getInstance().count(profileId, compareValue ? 1 : 0);
+        if (shortCircuit && !compareValue) {
+            return false;
+        }
+        boolean conditionValue = condition.execute(memory, functionMap);
+        return compareValue && conditionValue;
+    }
+
+    /**
+     * Without "--short-circuit", only folded when both sides are constants, because both sides are always executed and may report an error.
+     */
+    public void fold() {
+        compare.fold();
+        condition.fold();
+        if (shortCircuit && compare.isConstant() && !compare.getConstantValue()) {
+            constantValue = false;
+        } else if (compare.isConstant() && condition.isConstant()) {
+            constantValue = compare.getConstantValue() && condition.getConstantValue();
+        }
+    }
+
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    public boolean getConstantValue() {
+        return constantValue;
+    }
+
+    public int countNodes() {
+        return 1 + compare.countNodes() + condition.countNodes();
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        compare.hoist(loops);
+        condition.hoist(loops);
+    }
+
+    public void markBoundsChecks(LoopAnalysis loop) {
+        compare.markBoundsChecks(loop);
+        condition.markBoundsChecks(loop);
+    }
+
+    /**
+     * Both sides are always computed, the same as execute() without "--short-circuit".
+     */
+    public IrInstruction lower(IrBuilder builder) {
+        if (constantValue != null) {
+            return builder.constant(constantValue ? 1 : 0);
+        }
+        IrInstruction compareValue = compare.lower(builder);
+        return builder.emit(IrInstruction.Opcode.AND, compareValue, condition.lower(builder));
+    }
+
+    /**
+     * With "--short-circuit", "<cmpr>" branches to "falseTarget" if it is false, otherwise to the block computing "<cond>".
+     */
+    public void lowerBranch(IrBuilder builder, IrBlock trueTarget, IrBlock falseTarget) {
+        if (!shortCircuit || constantValue != null) {
+            Condition.super.lowerBranch(builder, trueTarget, falseTarget);
+            return;
+        }
+        IrBlock conditionBlock = builder.newBlock();
+        builder.branch(compare.lower(builder), conditionBlock, falseTarget);
+        builder.seal(conditionBlock);
+        builder.setBlock(conditionBlock);
+        condition.lowerBranch(builder, trueTarget, falseTarget);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        boolean readsArray = compare.collectReads(variables);
+        if (condition.collectReads(variables)) {
+            readsArray = true;
+        }
+        return readsArray;
+    }
+
+    public Condition substitute(PartialEvaluator evaluator) {
+        AndCondition residual = new AndCondition(compare.substitute(evaluator));
+        residual.andKeyword = andKeyword;
+        residual.shortCircuit = shortCircuit;
+        residual.profileId = profileId;
+        residual.condition = condition.substitute(evaluator);
+        return residual;
+    }
+
+    public void print(int indent) {
+        compare.print(0);
+        System.out.print(" " + andKeyword.toString().toLowerCase() + " ");
+        condition.print(0);
+    }
+
+}
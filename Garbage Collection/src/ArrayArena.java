@@ -0,0 +1,162 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The arena heap, option "--heap=arena": all the Core arrays live in one large int[] instead of one int[] each.
+ * <p>
+ * A new array is allocated by bumping the top of the arena, and it is referred to by a handle: the index of its entry
+ * in the handle table, which has its offset and its length. When the collector frees an array (see Memory.free()),
+ * its entry is cleared and its integers become a hole below the top. When a new array does not fit above the top,
+ * and the holes are at least "--compact-threshold=P" percent of the part below the top (50 by default), a sliding
+ * compactor runs first: the live arrays are moved down in the order of their offsets, so they stay in allocation order,
+ * and only the offsets in the handle table change. A Memory.Value keeps its handle, so nothing else needs to be updated.
+ * <p>
+ * If it still does not fit, the arena grows by doubling, up to "--heap-size=N" integers. At the bound, the holes are
+ * always compacted, and if the array still does not fit, Memory asks the collector to free what it can and tries again.
+ * Everything above the top is always 0, so a new array never needs to be cleared.
+ * "--gc-stats" prints the size of the arena and the number of compactions.
+ *
+ * @author Zhao Liu
+ */
+public class ArrayArena implements ArrayHeap {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private int[] data;
+    private int top = 0;
+    private int maxSize;
+    private int compactPercent;
+    // the integers below the top which belong to freed arrays
+    private int holes = 0;
+
+    // the handle table, an entry with offset -1 is free
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int handleCount = 0;
+    private int[] freeHandles = new int[256];
+    private int freeHandleCount = 0;
+
+    private int peakUsed = 0;
+    private long compactions = 0;
+
+    /**
+     * @param maxSize        the largest number of integers in the arena
+     * @param compactPercent the percentage of holes which triggers a compaction
+     */
+    public ArrayArena(int maxSize, int compactPercent) {
+        this.maxSize = maxSize;
+        this.compactPercent = compactPercent;
+        data = new int[Math.min(INITIAL_CAPACITY, maxSize)];
+    }
+
+    public int allocate(int size) {
+        if (size < 0) {
+            // the same as "new int[size]" without the arena
+            throw new NegativeArraySizeException(String.valueOf(size));
+        }
+        if (data.length - top < size) {
+            boolean isFull = (long) top + size > maxSize;
+            if (holes > 0 && (isFull || (long) holes * 100 >= (long) top * compactPercent)) {
+                compact();
+            }
+            if (data.length - top < size) {
+                if ((long) top + size > maxSize) {
+                    return -1;
+                }
+                data = Arrays.copyOf(data, (int) Math.min(maxSize, Math.max((long) top + size, (long) data.length * 2)));
+            }
+        }
+
+        int handle;
+        if (freeHandleCount > 0) {
+            handle = freeHandles[--freeHandleCount];
+        } else {
+            if (handleCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, handleCount * 2);
+                lengths = Arrays.copyOf(lengths, handleCount * 2);
+            }
+            handle = handleCount++;
+        }
+        offsets[handle] = top;
+        lengths[handle] = size;
+        top += size;
+        peakUsed = Math.max(peakUsed, top - holes);
+        return handle;
+    }
+
+    /**
+     * The integers of the array become a hole.
+     */
+    public void free(int handle) {
+        holes += lengths[handle];
+        offsets[handle] = -1;
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        }
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    public int get(int handle, int index) {
+        return data[offsets[handle] + index];
+    }
+
+    public void set(int handle, int index, int value) {
+        data[offsets[handle] + index] = value;
+    }
+
+    public int length(int handle) {
+        return lengths[handle];
+    }
+
+    public int[] copy(int handle) {
+        int offset = offsets[handle];
+        return Arrays.copyOfRange(data, offset, offset + lengths[handle]);
+    }
+
+    public void fill(int handle, int[] contents) {
+        System.arraycopy(contents, 0, data, offsets[handle], contents.length);
+    }
+
+    /**
+     * Slide the live arrays down over the holes, in the order of their offsets, and clear the part above the new top.
+     */
+    private void compact() {
+        compactions++;
+        int[] live = new int[handleCount - freeHandleCount];
+        int count = 0;
+        for (int handle = 0; handle < handleCount; handle++) {
+            if (offsets[handle] >= 0) {
+                live[count++] = handle;
+            }
+        }
+        // sort the handles by offset, as (offset, handle) pairs packed in a long
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) offsets[live[i]] << 32) | live[i];
+        }
+        Arrays.sort(order);
+
+        int newTop = 0;
+        for (long entry : order) {
+            int handle = (int) entry;
+            int offset = offsets[handle];
+            if (offset != newTop) {
+                System.arraycopy(data, offset, data, newTop, lengths[handle]);
+                offsets[handle] = newTop;
+            }
+            newTop += lengths[handle];
+        }
+        Arrays.fill(data, newTop, top, 0);
+        top = newTop;
+        holes = 0;
+    }
+
+    /**
+     * Print the size of the arena, like "heap arena: 1200 of 4096 integers used (peak 2000), 3 compactions"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        output.println("heap arena: " + (top - holes) + " of " + data.length + " integers used (peak " + peakUsed
+                + "), " + compactions + " compactions");
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <factor> ==> id [ <expr> ]
+ *
+ * @author Zhao Liu
+ */
+public final class ArrayFactor implements Factor {
+    private String variable;
+    private Expression expression;
+
+    // for "--specialize", see SpecializedNode.java
+    private SpecializedNode.Read specializedNode;
+    private int executionCount;
+    // the innermost loop around this node when it is parsed, see Profile.getSpecializeThreshold()
+    private int loopProfileId = Profile.getInstance().getEnclosingLoop();
+    private int deoptimizationCount;
+
+    // for "--licm", see LoopAnalysis.java
+    private int hoistSlot = -1;
+    private int hoistLoopSlot = -1;
+
+    // for "--cse", see AvailableExpressions.java
+    private int cseSlot = -1;
+    private boolean isCseDefinition;
+    private int boundsProvenSlot = -1;
+    private int boundsLoopSlot = -1;
+
+    /**
+     * @param variable   the array name
+     * @param expression the index, which has been parsed
+     */
+    public ArrayFactor(String variable, Expression expression) {
+        this.variable = variable;
+        this.expression = expression;
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        if (VariableFactor.findDeclared(variable, variableStack).getType() == Core.INTEGER) {
+            throw new CoreException("ERROR: the variable " + variable + " has to be Array type to use symbol '[]'!!!");
+        }
+        expression.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<factor> ::= id [ <expr> ]"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    public int execute(Memory memory, Map<String, Function> functionMap) {
+        if (cseSlot >= 0 && !isCseDefinition) {
+            // The same value has been computed before in this straight-line part.
+            return memory.getTemporary(cseSlot);
+        }
+
+        int result;
+        if (hoistSlot >= 0) {
+            // It is loop-invariant, so it is only executed once for each time entering the loop.
+            int loopTag = memory.getTemporary(hoistLoopSlot);
+            if (memory.isTemporaryValid(hoistSlot, loopTag)) {
+                result = memory.getTemporary(hoistSlot);
+            } else {
+                result = executeNode(memory, functionMap);
+                memory.setTemporary(hoistSlot, loopTag, result);
+            }
+        } else {
+            result = executeNode(memory, functionMap);
+        }
+
+        if (isCseDefinition) {
+            memory.setTemporary(cseSlot, 0, result);
+        }
+        return result;
+    }
+
+    /**
+     * Execute this node, either by the specialized node or by the generic node.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    private int executeNode(Memory memory, Map<String, Function> functionMap) {
+        if (specializedNode != null) {
+            try {
+                return specializedNode.execute(memory, functionMap);
+            } catch (SpecializedNode.Deoptimize e) {
+                // An assumption of the specialized node is broken, go back to the generic node.
+                specializedNode = null;
+                executionCount = 0;
+                deoptimizationCount++;
+            }
+        }
+
+        int index = expression.execute(memory, functionMap);
+        int result;
+        if (boundsProvenSlot >= 0 && memory.getTemporary(boundsProvenSlot) == memory.getTemporary(boundsLoopSlot)) {
+            // The range of index has been checked once when entering the loop.
+            result = memory.findArrayByIndexUnchecked(variable, index);
+        } else {
+            result = memory.findArrayByIndex(variable, index);
+        }
+
+        Options options = Options.getInstance();
+        if (options.isSpecialize() && deoptimizationCount < SpecializedNode.MAX_DEOPTIMIZATIONS) {
+            executionCount++;
+            if (executionCount >= Profile.getInstance().getSpecializeThreshold(loopProfileId)) {
+                specializedNode = specialize(memory);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Rewrite this node into a specialized node, based on where the array lives right now.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the specialized node, or null if it can not be specialized
+     */
+    private SpecializedNode.Read specialize(Memory memory) {
+        int region = memory.findRegion(variable);
+        if (region == Memory.REGION_NONE) {
+            return null;
+        }
+        if (region == Memory.REGION_GLOBAL) {
+            return new SpecializedNode.GlobalArrayIndexRead(variable, expression.toRead(), memory.getShadowEpoch());
+        }
+        return new SpecializedNode.LocalArrayIndexRead(variable, expression.toRead());
+    }
+
+    public Factor fold() {
+        expression = expression.fold();
+        return this;
+    }
+
+    public int countNodes() {
+        return 1 + expression.countNodes();
+    }
+
+    public boolean isInvariant(LoopAnalysis loop) {
+        return !loop.isWritten(variable) && !loop.hasArrayWrite() && expression.isInvariant(loop);
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        for (LoopAnalysis loop : loops) {
+            if (isInvariant(loop)) {
+                hoistLoopSlot = loop.getLoopSlot();
+                hoistSlot = loop.newTemporarySlot();
+                return;
+            }
+        }
+        expression.hoist(loops);
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop, so the range check can be done once when entering the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        if (!loop.isWritten(variable)) {
+            Factor index = expression.getSingleFactor();
+            if (index != null && index.isIntegerVariable(loop.getInductionVariable())) {
+                boundsLoopSlot = loop.getLoopSlot();
+                boundsProvenSlot = loop.getBoundsSlot();
+                loop.addBoundsCheckedArray(variable);
+            }
+        }
+        expression.markBoundsChecks(loop);
+    }
+
+    /**
+     * Common subexpression elimination for "id [ <expr> ]", see Expression.eliminateCommonSubexpressions()
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        StringBuilder key = new StringBuilder();
+        appendKey(key);
+        Set<String> variables = new HashSet<>();
+        collectReads(variables);
+        cseSlot = available.find(key.toString(), variables, true, slot -> {
+            cseSlot = slot;
+            isCseDefinition = true;
+        });
+        if (cseSlot < 0) {
+            expression.eliminateCommonSubexpressions(available);
+        }
+    }
+
+    public void appendKey(StringBuilder key) {
+        key.append(variable).append('[');
+        expression.appendKey(key);
+        key.append(']');
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        variables.add(variable);
+        expression.collectReads(variables);
+        return true;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        IrInstruction index = expression.lower(builder);
+        return builder.emitMemory(IrInstruction.Opcode.LOAD_INDEX, variable, index);
+    }
+
+    public Factor substitute(PartialEvaluator evaluator) {
+        return new ArrayFactor(variable, expression.substitute(evaluator));
+    }
+
+    public void print(int indent) {
+        System.out.print(variable + "[");
+        expression.print(0);
+        System.out.print("]");
+    }
+
+}
@@ -0,0 +1,73 @@
+import java.io.PrintStream;
+
+/**
+ * Where the elements of the arrays live when they are not an int[] each, chosen by option "--heap=name".
+ * <p>
+ * An array is referred to by a handle, which Memory.Value keeps, and every read and write of its elements goes through
+ * the heap. "arena" keeps all of them in one large int[], see ArrayArena.java, and "off-heap" keeps them in native
+ * memory segments outside of the JVM heap, see OffHeapArrays.java. When the collector frees an array (see Memory.free()),
+ * free() makes its storage available to the next allocation right away.
+ *
+ * @author Zhao Liu
+ */
+public interface ArrayHeap {
+    /**
+     * @param options the options, "--heap", "--heap-size", and "--compact-threshold"
+     * @return a new heap for one execution of the program, or null if every array is its own int[]
+     */
+    static ArrayHeap newHeap(Options options) {
+        switch (options.getHeap()) {
+            case Options.HEAP_ARENA:
+                return new ArrayArena(options.getHeapSize(), options.getCompactThreshold());
+            case Options.HEAP_OFF_HEAP:
+                if (ModuleLayer.boot().findModule("jdk.incubator.foreign").isEmpty()) {
+                    throw new CoreException("ERROR: --heap=off-heap needs \"java --add-modules jdk.incubator.foreign\"!!!");
+                }
+                return new OffHeapArrays(options.getHeapSize());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param size the length of the new array
+     * @return the handle of the new array, filled with 0, or -1 if it does not fit in "--heap-size=N" integers
+     */
+    int allocate(int size);
+
+    /**
+     * The array has been freed by the collector, its handle and its storage can be used again.
+     *
+     * @param handle the handle of the array
+     */
+    void free(int handle);
+
+    int get(int handle, int index);
+
+    void set(int handle, int index, int value);
+
+    int length(int handle);
+
+    /**
+     * @return a copy of the elements of the array
+     */
+    int[] copy(int handle);
+
+    /**
+     * @param contents the new elements of the array, with the same length
+     */
+    void fill(int handle, int[] contents);
+
+    /**
+     * Print the size of the heap to the standard error, for option "--gc-stats"
+     *
+     * @param output where the size is printed, the standard error or the buffer of one data file
+     */
+    void printStats(PrintStream output);
+
+    /**
+     * Free the storage of the heap when the execution ends, if it is not freed by the JVM.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pool of freed arrays, option "--pool".
+ * <p>
+ * A program doing "a := new integer[n];" in a loop frees an array of the same length every iteration
+ * (see Memory.free()), so instead of leaving it to the JVM, the int[] is kept in the free list of its size class,
+ * and the next Memory.initializeArray() of that length takes it back and clears it with Arrays.fill(),
+ * instead of allocating a new one. Every length is its own size class, since the length of the int[] is the length
+ * of the Core array (it is checked by every index).
+ * <p>
+ * A free list keeps at most "--pool-size=N" arrays (16 by default), and all the free lists together keep at most
+ * "--pool-limit=N" integers (1048576 by default). A freed array which does not fit is dropped for the JVM.
+ * "--gc-stats" prints the hits, the misses, and the retained bytes.
+ *
+ * @author Zhao Liu
+ */
+public class ArrayPool {
+    private Map<Integer, ArrayDeque<int[]>> freeLists = new HashMap<>();
+    private int maxArraysPerSize;
+    private long maxRetainedIntegers;
+
+    private long retainedIntegers = 0;
+    private long peakRetainedIntegers = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long dropped = 0;
+
+    /**
+     * @param maxArraysPerSize    the largest number of arrays in one free list
+     * @param maxRetainedIntegers the largest number of integers in all the free lists
+     */
+    public ArrayPool(int maxArraysPerSize, long maxRetainedIntegers) {
+        this.maxArraysPerSize = maxArraysPerSize;
+        this.maxRetainedIntegers = maxRetainedIntegers;
+    }
+
+    /**
+     * @param size the length of the new array
+     * @return an array filled with 0, from the free list of its length if there is one
+     */
+    public int[] allocate(int size) {
+        ArrayDeque<int[]> freeList = freeLists.get(size);
+        if (freeList == null || freeList.isEmpty()) {
+            misses++;
+            return new int[size];
+        }
+        hits++;
+        int[] array = freeList.pop();
+        retainedIntegers -= size;
+        Arrays.fill(array, 0);
+        return array;
+    }
+
+    /**
+     * Keep a freed array for the next allocation of the same length, if the bounds allow it.
+     *
+     * @param array the array, which is never read again by its old value
+     */
+    public void release(int[] array) {
+        ArrayDeque<int[]> freeList = freeLists.computeIfAbsent(array.length, size -> new ArrayDeque<>());
+        if (freeList.size() >= maxArraysPerSize || retainedIntegers + array.length > maxRetainedIntegers) {
+            dropped++;
+            return;
+        }
+        freeList.push(array);
+        retainedIntegers += array.length;
+        peakRetainedIntegers = Math.max(peakRetainedIntegers, retainedIntegers);
+    }
+
+    /**
+     * Print the counters, like "pool: 900 hits, 100 misses (90.0% hit), 4000 bytes retained (peak 8000), 0 dropped"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        long allocations = hits + misses;
+        output.println("pool: " + hits + " hits, " + misses + " misses ("
+                + String.format("%.1f", allocations == 0 ? 0.0 : hits * 100.0 / allocations) + "% hit), "
+                + retainedIntegers * Integer.BYTES + " bytes retained (peak " + peakRetainedIntegers * Integer.BYTES
+                + "), " + dropped + " dropped");
+    }
+}
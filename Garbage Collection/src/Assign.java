@@ -1,5 +1,7 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -22,7 +24,7 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class Assign {
+public final class Assign implements Statement {
     // This 3 variables indicate what is on the Left-Hand Side of the equal sign (=) and what is on Right-Hand Side of the equal sign (=)
     private boolean isLHSArray;
     private boolean isRHSNewInteger;
@@ -47,6 +49,21 @@ public class Assign {
     private Core rhsRightBracket;
     private Core semicolon;
 
+    // for "--specialize", see SpecializedNode.java
+    private SpecializedNode.Write specializedNode;
+    private int executionCount;
+    // the innermost loop around this node when it is parsed, see Profile.getSpecializeThreshold()
+    private int loopProfileId = Profile.getInstance().getEnclosingLoop();
+    private int deoptimizationCount;
+
+    // for "--licm", see LoopAnalysis.java
+    private Core lhsType;
+    private int boundsProvenSlot = -1;
+    private int boundsLoopSlot = -1;
+
+    // for "--frame-allocate": the new array never escapes the frame, see Function.markFrameAllocations()
+    private boolean isFrameAllocated;
+
     /**
      * The grammar is: <assign> ==> id := <expr> ; | id [ <expr> ] := <expr> ; | id := new integer [ <expr> ]; | id := array id ;
      *
@@ -54,8 +71,7 @@ public class Assign {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.ID) {
-            System.out.println("ERROR: missing identifier or variable.");
-            System.exit(1);
+            throw new CoreException("ERROR: missing identifier or variable.");
         }
         lhsVariable = (String) tokenQueue.poll();
 
@@ -65,33 +81,27 @@ public class Assign {
             isLHSArray = true;
 
             if (tokenQueue.poll() != Core.LBRACE) {
-                System.out.println("ERROR: missing left bracket '[' for the variable in the equation " + lhsVariable);
-                System.exit(1);
+                throw new CoreException("ERROR: missing left bracket '[' for the variable in the equation " + lhsVariable);
             }
             lhsLeftBracket = Core.LBRACE;
 
-            lhsExpression = new Expression();
-            lhsExpression.parse(tokenQueue, functionMap);
+            lhsExpression = Expression.parse(tokenQueue, functionMap);
 
             if (tokenQueue.poll() != Core.RBRACE) {
-                System.out.println("ERROR: missing right bracket ']' for the variable in the equation " + lhsVariable);
-                System.exit(1);
+                throw new CoreException("ERROR: missing right bracket ']' for the variable in the equation " + lhsVariable);
             }
             lhsRightBracket = Core.RBRACE;
 
             if (tokenQueue.poll() != Core.ASSIGN) {
-                System.out.println("ERROR: missing assign symbol ':=' for the variable in the equation " + lhsVariable);
-                System.exit(1);
+                throw new CoreException("ERROR: missing assign symbol ':=' for the variable in the equation " + lhsVariable);
             }
             assign = Core.ASSIGN;
 
-            rhsExpression = new Expression();
-            rhsExpression.parse(tokenQueue, functionMap);
+            rhsExpression = Expression.parse(tokenQueue, functionMap);
 
         } else {
             if (tokenQueue.poll() != Core.ASSIGN) {
-                System.out.println("ERROR: missing assign symbol ':=' for the variable in the equation " + lhsVariable);
-                System.exit(1);
+                throw new CoreException("ERROR: missing assign symbol ':=' for the variable in the equation " + lhsVariable);
             }
             assign = Core.ASSIGN;
 
@@ -104,23 +114,19 @@ public class Assign {
                 rhsNewKeyword = Core.NEW;
 
                 if (tokenQueue.poll() != Core.INTEGER) {
-                    System.out.println("ERROR: missing keyword 'integer' for the variable in the equation " + lhsVariable);
-                    System.exit(1);
+                    throw new CoreException("ERROR: missing keyword 'integer' for the variable in the equation " + lhsVariable);
                 }
                 rhsIntegerKeyword = Core.INTEGER;
 
                 if (tokenQueue.poll() != Core.LBRACE) {
-                    System.out.println("ERROR: missing left bracket '[' for the variable in the equation " + lhsVariable);
-                    System.exit(1);
+                    throw new CoreException("ERROR: missing left bracket '[' for the variable in the equation " + lhsVariable);
                 }
                 rhsLeftBracket = Core.LBRACE;
 
-                rhsExpression = new Expression();
-                rhsExpression.parse(tokenQueue, functionMap);
+                rhsExpression = Expression.parse(tokenQueue, functionMap);
 
                 if (tokenQueue.poll() != Core.RBRACE) {
-                    System.out.println("ERROR: missing right bracket ']' for the variable in the equation " + lhsVariable);
-                    System.exit(1);
+                    throw new CoreException("ERROR: missing right bracket ']' for the variable in the equation " + lhsVariable);
                 }
                 rhsRightBracket = Core.RBRACE;
 
@@ -138,14 +144,12 @@ public class Assign {
             } else {
                 // Case 3: "id := <expr> ;" will be only case.
 
-                rhsExpression = new Expression();
-                rhsExpression.parse(tokenQueue, functionMap);
+                rhsExpression = Expression.parse(tokenQueue, functionMap);
             }
         }
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';' for the variable in the equation " + lhsVariable);
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';' for the variable in the equation " + lhsVariable);
         }
         semicolon = Core.SEMICOLON;
     }
@@ -172,28 +176,23 @@ public class Assign {
             }
         }
         if (!isLHSVariableExist) {
-            System.out.println("ERROR: the variable " + lhsVariable + " has not been declared before!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + lhsVariable + " has not been declared before!!!");
         }
 
-        Core lhsType = lhsVariableAttribute.getType();
+        lhsType = lhsVariableAttribute.getType();
 
         if (lhsType == Core.INTEGER && isRHSNewInteger) {
-            System.out.println("ERROR: the variable " + lhsVariable + " is Integer type but assigned Array type to it, which is not available!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + lhsVariable + " is Integer type but assigned Array type to it, which is not available!!!");
         }
         if (lhsType == Core.INTEGER && isRHSNewArray) {
-            System.out.println("ERROR: the variable " + lhsVariable + " is Integer type but assigned Array type to it, which is not available!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + lhsVariable + " is Integer type but assigned Array type to it, which is not available!!!");
         }
         if (lhsType == Core.INTEGER && isLHSArray) {
-            System.out.println("ERROR: the variable " + lhsVariable + " has to be Array type to use symbols '[]'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + lhsVariable + " has to be Array type to use symbols '[]'!!!");
         }
         /*
         if (lhsType == Core.ARRAY && !isLHSArray) {
-            System.out.println("ERROR: the variable " + lhsVariable + " is Array type, can not assign an integer or expression to it!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + lhsVariable + " is Array type, can not assign an integer or expression to it!!!");
         }
         */
 
@@ -212,19 +211,99 @@ public class Assign {
      * @param memory simulating memory (Stack and Heap) for local and global variables
      */
     public void execute(Memory memory, Map<String, Function> functionMap) {
+        if (specializedNode != null) {
+            try {
+                specializedNode.execute(memory, functionMap);
+                return;
+            } catch (SpecializedNode.Deoptimize e) {
+                // An assumption of the specialized node is broken, go back to the generic node.
+                specializedNode = null;
+                executionCount = 0;
+                deoptimizationCount++;
+            }
+        }
+
+        executeGeneric(memory, functionMap);
+
+        Options options = Options.getInstance();
+        if (options.isSpecialize() && deoptimizationCount < SpecializedNode.MAX_DEOPTIMIZATIONS) {
+            executionCount++;
+            if (executionCount >= Profile.getInstance().getSpecializeThreshold(loopProfileId)) {
+                specializedNode = specialize(memory);
+            }
+        }
+    }
+
+    /**
+     * Rewrite this node into a specialized node, based on what the left-hand side variable looks like right now.
+     * Only "id := <expr> ;" and "id [ <expr> ] := <expr> ;" are specialized,
+     * "new integer" and "array id" need the reference counting in Memory anyway.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the specialized node, or null if it can not be specialized
+     */
+    private SpecializedNode.Write specialize(Memory memory) {
+        if (isRHSNewInteger || isRHSNewArray) {
+            return null;
+        }
+
+        int region = memory.findRegion(lhsVariable);
+        Core type = memory.findType(lhsVariable);
+        if (region == Memory.REGION_NONE) {
+            return null;
+        }
+        boolean isGlobal = region == Memory.REGION_GLOBAL;
+        int shadowEpoch = memory.getShadowEpoch();
+
+        if (isLHSArray || type == Core.ARRAY) {
+            // "id := <expr> ;" is a shorthand for "id[0] := <expr> ;" when id is an array.
+            SpecializedNode.Read index;
+            if (isLHSArray) {
+                index = lhsExpression.toRead();
+            } else {
+                index = new SpecializedNode.ConstRead(0);
+            }
+
+            if (isGlobal) {
+                return new SpecializedNode.GlobalArrayIndexWrite(lhsVariable, index, rhsExpression.toRead(), shadowEpoch);
+            }
+            return new SpecializedNode.LocalArrayIndexWrite(lhsVariable, index, rhsExpression.toRead());
+        }
+
+        if (isGlobal) {
+            return new SpecializedNode.GlobalIntWrite(lhsVariable, rhsExpression.toRead(), shadowEpoch);
+        }
+        return new SpecializedNode.LocalIntWrite(lhsVariable, rhsExpression.toRead());
+    }
+
+    /**
+     * The generic version of execute(), which checks all the cases every time.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    private void executeGeneric(Memory memory, Map<String, Function> functionMap) {
         if (isLHSArray) {
             // Handle case for "id [ <expr> ] := <expr> ;"
             // The result of lhsExpression is the "index" of array.
             // The result of rhsExpression is the "value" of array.
             int index = lhsExpression.execute(memory, functionMap);
             int value = rhsExpression.execute(memory, functionMap);
-            memory.updateArray(lhsVariable, index, value);
+            if (boundsProvenSlot >= 0 && memory.getTemporary(boundsProvenSlot) == memory.getTemporary(boundsLoopSlot)) {
+                // The range of index has been checked once when entering the loop.
+                memory.updateArrayUnchecked(lhsVariable, index, value);
+            } else {
+                memory.updateArray(lhsVariable, index, value);
+            }
 
         } else if (isRHSNewInteger) {
             // Handle case for "id := new integer [ <expr> ];"
             // The result of rhsExpression is the "size" of array
             int size = rhsExpression.execute(memory, functionMap);
-            memory.initializeArray(lhsVariable, size);
+            if (isFrameAllocated) {
+                memory.initializeFrameArray(lhsVariable, size);
+            } else {
+                memory.initializeArray(lhsVariable, size);
+            }
 
         } else if (isRHSNewArray) {
             // Handle case for "id := array id ;"
@@ -244,6 +323,251 @@ public class Assign {
     }
 
 
+    /**
+     * Constant folding for the expressions on both sides.
+     */
+    public void fold() {
+        if (lhsExpression != null) {
+            lhsExpression = lhsExpression.fold();
+        }
+        if (rhsExpression != null) {
+            rhsExpression = rhsExpression.fold();
+        }
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        int count = 1;
+        if (lhsExpression != null) {
+            count += lhsExpression.countNodes();
+        }
+        if (rhsExpression != null) {
+            count += rhsExpression.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Record what this assignment writes, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        if (isLHSArray) {
+            loop.addArrayWrite();
+        } else if (isRHSNewInteger || isRHSNewArray) {
+            // The variable points to another array.
+            loop.addWrite(lhsVariable);
+        } else if (lhsType == Core.ARRAY) {
+            // "id := <expr> ;" is a shorthand for "id[0] := <expr> ;" when id is an array.
+            loop.addArrayWrite();
+        } else {
+            loop.addWrite(lhsVariable);
+        }
+    }
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+        if (lhsExpression != null) {
+            lhsExpression.hoist(loops);
+        }
+        if (rhsExpression != null) {
+            rhsExpression.hoist(loops);
+        }
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop, including "a[i] := <expr> ;".
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        if (isLHSArray && !loop.isWritten(lhsVariable)) {
+            Factor index = lhsExpression.getSingleFactor();
+            if (index != null && index.isIntegerVariable(loop.getInductionVariable())) {
+                boundsLoopSlot = loop.getLoopSlot();
+                boundsProvenSlot = loop.getBoundsSlot();
+                loop.addBoundsCheckedArray(lhsVariable);
+            }
+        }
+
+        if (lhsExpression != null) {
+            lhsExpression.markBoundsChecks(loop);
+        }
+        if (rhsExpression != null) {
+            rhsExpression.markBoundsChecks(loop);
+        }
+    }
+
+    /**
+     * @param variable an integer variable
+     * @return true if it is "variable := variable + const ;" or "variable := const + variable ;", where const is positive
+     */
+    public boolean isIncrementOf(String variable) {
+        if (isLHSArray || isRHSNewInteger || isRHSNewArray || lhsType != Core.INTEGER || !lhsVariable.equals(variable)) {
+            return false;
+        }
+        return rhsExpression.isIncrementOf(variable);
+    }
+
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     * Both sides are executed before the left-hand side variable is written.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        if (lhsExpression != null) {
+            lhsExpression.eliminateCommonSubexpressions(available);
+        }
+        if (rhsExpression != null) {
+            rhsExpression.eliminateCommonSubexpressions(available);
+        }
+
+        if (isLHSArray || (lhsType == Core.ARRAY && !isRHSNewInteger && !isRHSNewArray)) {
+            // "id := <expr> ;" is a shorthand for "id[0] := <expr> ;" when id is an array.
+            available.killArrayElements();
+        } else {
+            available.killVariable(lhsVariable);
+        }
+    }
+
+    /**
+     * Build the IR of "<assign>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        if (isLHSArray) {
+            IrInstruction index = lhsExpression.lower(builder);
+            IrInstruction value = rhsExpression.lower(builder);
+            builder.emitMemory(IrInstruction.Opcode.STORE_INDEX, lhsVariable, index, value);
+
+        } else if (isRHSNewInteger) {
+            builder.emitMemory(IrInstruction.Opcode.NEW_ARRAY, lhsVariable, rhsExpression.lower(builder));
+
+        } else if (isRHSNewArray) {
+            builder.emitMemory(IrInstruction.Opcode.SHARE, lhsVariable).setOtherVariable(rhsVariable);
+
+        } else {
+            IrInstruction value = rhsExpression.lower(builder);
+            if (builder.isLocalInteger(lhsVariable)) {
+                builder.writeLocal(lhsVariable, value);
+            } else {
+                builder.emitMemory(IrInstruction.Opcode.STORE, lhsVariable, value);
+            }
+        }
+    }
+
+    /**
+     * Find the local integer variables which have to stay in Memory, see IrBuilder.java
+     * Both variables of "id := array id ;" share the same value.
+     *
+     * @param sharedVariables  the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        if (isRHSNewArray) {
+            sharedVariables.add(lhsVariable);
+            sharedVariables.add(rhsVariable);
+        }
+    }
+
+    /**
+     * "id := new integer [ <expr> ];" allocates in the frame if id does not escape, see Function.markFrameAllocations()
+     *
+     * @param variables the local array variables which never escape the frame
+     */
+    public void markFrameAllocations(Set<String> variables) {
+        if (isRHSNewInteger && variables.contains(lhsVariable)) {
+            isFrameAllocated = true;
+        }
+    }
+
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        if (isRHSNewInteger) {
+            analysis.addNewArray(lhsVariable);
+        } else if (isRHSNewArray) {
+            analysis.addShare();
+            analysis.addName(rhsVariable);
+        }
+        analysis.addWrite(lhsVariable);
+        if (lhsExpression != null) {
+            lhsExpression.collectReads(analysis.getNames());
+        }
+        if (rhsExpression != null) {
+            rhsExpression.collectReads(analysis.getNames());
+        }
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     * "id := <expr> ;" with a static value only changes the value of id, everything else stays in the residual program.
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        Assign residual = new Assign();
+        residual.isLHSArray = isLHSArray;
+        residual.isRHSNewInteger = isRHSNewInteger;
+        residual.isRHSNewArray = isRHSNewArray;
+        residual.lhsVariable = lhsVariable;
+        residual.lhsLeftBracket = lhsLeftBracket;
+        residual.lhsRightBracket = lhsRightBracket;
+        residual.assign = assign;
+        residual.rhsVariable = rhsVariable;
+        residual.rhsNewKeyword = rhsNewKeyword;
+        residual.rhsIntegerKeyword = rhsIntegerKeyword;
+        residual.rhsArrayKeyword = rhsArrayKeyword;
+        residual.rhsLeftBracket = rhsLeftBracket;
+        residual.rhsRightBracket = rhsRightBracket;
+        residual.semicolon = semicolon;
+        residual.lhsType = lhsType;
+        if (lhsExpression != null) {
+            residual.lhsExpression = lhsExpression.partialEvaluate(evaluator);
+        }
+        if (rhsExpression != null) {
+            residual.rhsExpression = rhsExpression.partialEvaluate(evaluator);
+        }
+
+        if (!isLHSArray && !isRHSNewInteger && !isRHSNewArray && lhsType == Core.INTEGER) {
+            if (residual.rhsExpression.isConstant()) {
+                evaluator.setValue(lhsVariable, residual.rhsExpression.getSingleFactor().getConstantValue());
+                return;
+            }
+            evaluator.forget(lhsVariable);
+        }
+        evaluator.emit(residual);
+    }
+
+    /**
+     * Create "id := const ;" for partial evaluation
+     *
+     * @param variable the variable
+     * @param value    the value of constant
+     * @return the new assign
+     */
+    public static Assign fromConstant(String variable, int value) {
+        Assign assign = new Assign();
+        assign.lhsVariable = variable;
+        assign.assign = Core.ASSIGN;
+        assign.rhsExpression = Expression.fromConstant(value);
+        assign.semicolon = Core.SEMICOLON;
+        return assign;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -0,0 +1,111 @@
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Store the expressions which have been computed in a straight-line part of a "<stmt-seq>" for "--cse" (common subexpression elimination).
+ * <p>
+ * The statements are visited in the same order as they are executed. Every "<expr>" and "<term>" with an operator,
+ * and every "id [ <expr> ]" is written as a key, like "(x*y)" or "a[(i+1)]".
+ * If the same key is found again and nothing it reads has been written in between,
+ * the first one (definition) saves its value into a temporary slot in Memory, and the later one (use) only reads that slot.
+ * <p>
+ * Writing a variable removes all the keys reading it. Writing any array element removes all the keys reading array elements,
+ * because two array variables may share the same array ("id := array id ;" and parameters).
+ * "if", "while", and function calls end the straight-line part, so everything is removed.
+ *
+ * @author Zhao Liu
+ */
+public class AvailableExpressions {
+
+    /**
+     * An expression computed before, see AvailableExpressions
+     */
+    private static class Entry {
+        private Set<String> variables;
+        private boolean readsArray;
+        // It is called to make the first one a definition, when the first use is found.
+        private IntConsumer definition;
+        private int slot = -1;
+    }
+
+    private Map<String, Entry> entries = new LinkedHashMap<>();
+    private TemporarySlots slots;
+
+    /**
+     * @param slots the slots of the temporary values of this compile
+     */
+    public AvailableExpressions(TemporarySlots slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * @return a new straight-line part (like a branch of "if" or a loop body), with the same slots
+     */
+    public AvailableExpressions newPart() {
+        return new AvailableExpressions(slots);
+    }
+
+    /**
+     * Look for the key. If it has been computed before, the node becomes a use, otherwise it is remembered as a definition.
+     *
+     * @param key        the key of the node
+     * @param variables  all the variables read by the node
+     * @param readsArray whether the node reads any array element
+     * @param definition called with the slot when the node becomes a definition
+     * @return the slot to read if the node is a use, otherwise -1
+     */
+    public int find(String key, Set<String> variables, boolean readsArray, IntConsumer definition) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entry.variables = new HashSet<>(variables);
+            entry.readsArray = readsArray;
+            entry.definition = definition;
+            entries.put(key, entry);
+            return -1;
+        }
+
+        if (entry.slot < 0) {
+            entry.slot = slots.newSlot();
+            entry.definition.accept(entry.slot);
+        }
+        return entry.slot;
+    }
+
+    /**
+     * The variable has been written (assigned, declared, or read by "in").
+     *
+     * @param variable variable name
+     */
+    public void killVariable(String variable) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().variables.contains(variable)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Some array element has been written.
+     */
+    public void killArrayElements() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().readsArray) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The straight-line part ends.
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
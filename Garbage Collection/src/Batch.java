@@ -0,0 +1,150 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Batch mode: run many programs in one JVM, like "java Main --batch tests.manifest --optimize".
+ * <p>
+ * Each line of the manifest is a case: the .code file, the .data file, and the .expected file,
+ * separated by tabs (or spaces if there is no tab), relative to the directory of the manifest.
+ * A path with a space (like "Garbage Collection/...") needs tabs, otherwise it is split at the space.
+ * Empty lines and lines starting with "#" are skipped. Without the .expected file, the output is only printed.
+ * <p>
+ * Every case runs with a new Memory (see Main.run()), and everything it prints goes into its own buffer.
+ * An error only stops its own case: the message is the last line of its output, the same as running it alone.
+ * A .expected file which can not be read is also an error of its case, which is reported as ERROR and not run.
+ * Like tester.sh, the output passes if it has the same numbers as the .expected file.
+ * The .expected files come from reference counting, so with any other "--gc" the "gc:" lines are skipped on both sides:
+ * the other collectors free arrays at other times (see Collector.java), but the rest of the output has to be the same.
+ *
+ * @author Zhao Liu
+ */
+public class Batch {
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+    private Path directory;
+    // the .code, .data, and .expected (may be null) files of each case
+    private List<String[]> cases = new ArrayList<>();
+    // the .code file of each case as it is written in the manifest, for printing
+    private List<String> names = new ArrayList<>();
+
+    /**
+     * Read the manifest.
+     *
+     * @param manifestFileName the manifest
+     */
+    public Batch(String manifestFileName) {
+        Path manifest = Paths.get(manifestFileName);
+        directory = manifest.toAbsolutePath().getParent();
+        List<String> lines = null;
+        try {
+            lines = Files.readAllLines(manifest);
+        } catch (IOException e) {
+            throw new CoreException("ERROR: can not read the manifest " + manifestFileName + "!!!");
+        }
+
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] files = line.contains("\t") ? line.split("\t+") : line.split("\\s+");
+            if (files.length < 2 || files.length > 3) {
+                throw new CoreException("ERROR: a case of the manifest needs a .code file, a .data file, "
+                        + "and an optional .expected file: " + line + "!!!");
+            }
+            String[] testCase = new String[3];
+            for (int i = 0; i < files.length; i++) {
+                testCase[i] = directory.resolve(files[i].trim()).toString();
+            }
+            cases.add(testCase);
+            names.add(files[0].trim());
+        }
+    }
+
+    /**
+     * Run all the cases, and print whether each of them passes.
+     *
+     * @param options the options for all the cases
+     * @return the number of failed cases
+     */
+    public int run(Options options) {
+        PrintStream console = System.out;
+        boolean isGcCompared = options.getCollector().equals(Collector.REFERENCE_COUNTING);
+        int failed = 0;
+        long batchStart = System.nanoTime();
+        for (int caseIndex = 0; caseIndex < cases.size(); caseIndex++) {
+            String[] testCase = cases.get(caseIndex);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            System.setOut(new PrintStream(sink, true));
+            String expected = null;
+            try {
+                if (testCase[2] != null) {
+                    expected = readExpected(testCase[2]);
+                }
+                Main.run(testCase[0], testCase[1], options);
+            } catch (CoreException e) {
+                System.out.println(e.getMessage());
+            } catch (RuntimeException | StackOverflowError e) {
+                // a bug of the interpreter only stops this case
+                System.out.println("ERROR: " + e + "!!!");
+            } finally {
+                System.out.flush();
+                System.setOut(console);
+            }
+            long milliseconds = (System.nanoTime() - start) / 1000000;
+
+            String output = sink.toString();
+            String name = names.get(caseIndex);
+            if (testCase[2] == null) {
+                console.println("RAN " + name + " (" + milliseconds + " ms)");
+                console.print(output);
+            } else if (expected != null && numbers(output, isGcCompared).equals(numbers(expected, isGcCompared))) {
+                console.println("PASS " + name + " (" + milliseconds + " ms)");
+            } else {
+                failed++;
+                console.println((expected == null ? "ERROR " : "FAIL ") + name + " (" + milliseconds + " ms)");
+                for (String line : output.split("\n")) {
+                    console.println("    " + line);
+                }
+            }
+        }
+        console.println("passed " + (cases.size() - failed) + "/" + cases.size()
+                + " in " + (System.nanoTime() - batchStart) / 1000000 + " ms");
+        return failed;
+    }
+
+    private String readExpected(String fileName) {
+        try {
+            return Files.readString(Paths.get(fileName));
+        } catch (IOException e) {
+            throw new CoreException("ERROR: can not read the expected output " + fileName + "!!!");
+        }
+    }
+
+    /**
+     * @param isGcCompared false for skipping the "gc:" lines
+     * @return all the numbers in the text, the same as "grep -o '[[:digit:]]\+'" in tester.sh
+     */
+    private static List<String> numbers(String text, boolean isGcCompared) {
+        List<String> numbers = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!isGcCompared && line.trim().startsWith("gc:")) {
+                continue;
+            }
+            Matcher matcher = NUMBER.matcher(line);
+            while (matcher.find()) {
+                numbers.add(matcher.group());
+            }
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Time how long the interpreter takes to execute a program, like:
+ * java Benchmark ../documents/Benchmark/dispatch.code ../documents/Benchmark/dispatch.data 30 --specialize
+ * <p>
+ * The program is compiled again before every run (a compiled program may have specialized itself),
+ * and only Main.execute() is timed, with the output thrown away. The first third of the runs warm up the JVM
+ * and are not counted. The fastest and the median time of the other runs are printed in milliseconds.
+ *
+ * @author Zhao Liu
+ */
+class Benchmark {
+    public static void main(String[] args) {
+        Options options = Options.getInstance();
+        options.parse(args, 3);
+        int runs = Integer.parseInt(args[2]);
+        int warmUps = runs / 3;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+        try {
+            long[] times = new long[runs - warmUps];
+            for (int run = 0; run < runs; run++) {
+                Queue<Integer> inputDataQueue = Main.readData(args[1]);
+                Main.Program program = Main.compile(args[0], new LinkedList<>(inputDataQueue), options);
+                if (program == null) {
+                    System.out.println("ERROR: --partial-evaluate does not execute the program!!!");
+                    System.exit(1);
+                }
+
+                long start = System.nanoTime();
+                Main.execute(program, inputDataQueue, discard, discard, options);
+                if (run >= warmUps) {
+                    times[run - warmUps] = System.nanoTime() - start;
+                }
+            }
+
+            Arrays.sort(times);
+            System.out.printf("%s: min %.1f ms, median %.1f ms (%d runs)%n", args[0],
+                    times[0] / 1e6, times[times.length / 2] / 1e6, times.length);
+        } catch (CoreException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <expr> ==> <term> + <expr>
+ * <expr> ==> <term> - <expr>
+ * <p>
+ * Everything but the operator is the same for both of them, AddExpression.java and SubtractExpression.java
+ * only give the operator and their own specialized nodes.
+ *
+ * @author Zhao Liu
+ */
+public abstract sealed class BinaryExpression extends Expression permits AddExpression, SubtractExpression {
+    private Expression expression;
+
+    /**
+     * @param term       the "<term>" on the left side, which has been parsed
+     * @param expression the "<expr>" on the right side, which has been parsed
+     */
+    protected BinaryExpression(Term term, Expression expression) {
+        super(term);
+        this.expression = expression;
+    }
+
+    /**
+     * @param isAdd      "+" if true, otherwise "-"
+     * @param term       the "<term>" on the left side
+     * @param expression the "<expr>" on the right side
+     * @return "<term> + <expr>" or "<term> - <expr>"
+     */
+    static BinaryExpression of(boolean isAdd, Term term, Expression expression) {
+        return isAdd ? new AddExpression(term, expression) : new SubtractExpression(term, expression);
+    }
+
+    protected Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return '+' or '-'
+     */
+    protected abstract char getSymbol();
+
+    protected abstract IrInstruction.Opcode getOpcode();
+
+    /**
+     * @return the result of the operator on both sides
+     */
+    protected abstract int compute(int termValue, int expressionValue);
+
+    /**
+     * @return a new node with the same operator
+     */
+    protected abstract BinaryExpression copy(Term term, Expression expression);
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        super.semanticChecking(variableStack, functionCheckingMap);
+        expression.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<expr> ::= <term> + <expr>" and "<expr> ::= <term> - <expr>"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<expr>"
+     */
+    protected int executeGeneric(Memory memory, Map<String, Function> functionMap) {
+        int termValue = getTerm().execute(memory, functionMap);
+        return compute(termValue, expression.execute(memory, functionMap));
+    }
+
+    /**
+     * Constant folding and algebraic simplification for "<expr>".
+     * 1. "const + const" and "const - const" are folded into one constant.
+     * 2. "<term> + 0", "<term> - 0", and "0 + <expr>" are simplified.
+     * 3. Constants are combined across levels, like "1 + (2 - x)" becomes "3 - x".
+     *    (The grammar is right-recursive, so "1 + 2 - x" means "1 + (2 - x)")
+     *
+     * @return the expression replacing this one, or this expression itself
+     */
+    public Expression fold() {
+        getTerm().fold();
+        expression = expression.fold();
+        return simplify();
+    }
+
+    /**
+     * One step of fold(), the children have already been folded.
+     *
+     * @return the simplified expression
+     */
+    private Expression simplify() {
+        Factor left = getTerm().getSingleFactor();
+        Factor right = expression.getSingleFactor();
+        boolean isLeftConstant = left != null && left.isConstant();
+        boolean isRightConstant = right != null && right.isConstant();
+
+        if (isLeftConstant && isRightConstant) {
+            return Expression.fromConstant(compute(left.getConstantValue(), right.getConstantValue()));
+        }
+
+        if (isRightConstant && right.getConstantValue() == 0) {
+            // "<term> + 0" and "<term> - 0"
+            return new TermExpression(getTerm());
+        }
+
+        if (this instanceof AddExpression && isLeftConstant && left.getConstantValue() == 0) {
+            // "0 + <expr>"
+            return expression;
+        }
+
+        if (isLeftConstant && expression instanceof BinaryExpression inner) {
+            Factor innerLeft = inner.getTerm().getSingleFactor();
+            if (innerLeft != null && innerLeft.isConstant()) {
+                // "c1 + (c2 + e)" = "(c1 + c2) + e",  "c1 + (c2 - e)" = "(c1 + c2) - e"
+                // "c1 - (c2 + e)" = "(c1 - c2) - e",  "c1 - (c2 - e)" = "(c1 - c2) + e"
+                int combined = compute(left.getConstantValue(), innerLeft.getConstantValue());
+                boolean isAdd = (this instanceof AddExpression) == (inner instanceof AddExpression);
+                return of(isAdd, Term.fromConstant(combined), inner.expression).simplify();
+            }
+        }
+
+        return this;
+    }
+
+    public int countNodes() {
+        return super.countNodes() + expression.countNodes();
+    }
+
+    public boolean isInvariant(LoopAnalysis loop) {
+        return super.isInvariant(loop) && expression.isInvariant(loop);
+    }
+
+    protected void hoistChildren(List<LoopAnalysis> loops) {
+        super.hoistChildren(loops);
+        expression.hoist(loops);
+    }
+
+    public void markBoundsChecks(LoopAnalysis loop) {
+        super.markBoundsChecks(loop);
+        expression.markBoundsChecks(loop);
+    }
+
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        if (findCommonSubexpression(available)) {
+            return;
+        }
+        super.eliminateCommonSubexpressions(available);
+        expression.eliminateCommonSubexpressions(available);
+    }
+
+    public void appendKey(StringBuilder key) {
+        key.append('(');
+        super.appendKey(key);
+        key.append(getSymbol());
+        expression.appendKey(key);
+        key.append(')');
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        boolean readsArray = super.collectReads(variables);
+        if (expression.collectReads(variables)) {
+            readsArray = true;
+        }
+        return readsArray;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        IrInstruction termValue = getTerm().lower(builder);
+        return builder.emit(getOpcode(), termValue, expression.lower(builder));
+    }
+
+    public Expression substitute(PartialEvaluator evaluator) {
+        return copy(getTerm().substitute(evaluator), expression.substitute(evaluator));
+    }
+
+    public void print(int indent) {
+        super.print(0);
+        System.out.print(getSymbol());
+        expression.print(0);
+    }
+
+}
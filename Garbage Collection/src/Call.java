@@ -6,12 +6,22 @@ import java.util.*;
  *
  * @author Zhao Liu
  */
-public class Call {
+public final class Call implements Statement {
 
     private Core beginKeyword;
     private String functionName;
     private Parameter parameter;
 
+    // for "--profile-write" and "--profile-use", see Profile.java
+    private int profileId;
+
+    // for "--inline": the function whose body runs in the frame of the caller, and the names of the arguments
+    private Function inlinedFunction;
+    private List<String> arguments;
+    // for "--tail-calls": the formal parameters of the function and the names of the arguments, null if it is not a tail call
+    private List<String> tailCallParameters;
+    private List<String> tailCallArguments;
+
     /**
      * The grammar is: <call> ::= begin ID ( <parameters> ) ;
      *
@@ -19,35 +29,31 @@ public class Call {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.BEGIN) {
-            System.out.println("ERROR: missing keyword 'begin'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'begin'!!!");
         }
         beginKeyword = Core.BEGIN;
+        profileId = Profile.getInstance().newNode(Profile.CALL);
 
         tokenQueue.poll();
         functionName = (String) tokenQueue.poll();
 
         if (tokenQueue.poll() != Core.LPAREN) {
-            System.out.println("ERROR: missing symbol '('!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol '('!!!");
         }
 
         if (tokenQueue.peek() == Core.RPAREN) {
-            System.out.println("ERROR: Call function " + functionName + " is missing arguments!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Call function " + functionName + " is missing arguments!!!");
         }
 
         parameter = new Parameter();
         parameter.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.RPAREN) {
-            System.out.println("ERROR: missing symbol ')'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol ')'!!!");
         }
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';'");
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';'");
         }
     }
 
@@ -70,8 +76,7 @@ public class Call {
         }
 
         if (!isExist) {
-            System.out.println("ERROR: Function call has an invalid target. Function " + functionName + " does not exist!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Function call has an invalid target. Function " + functionName + " does not exist!!!");
         }
     }
 
@@ -82,6 +87,31 @@ public class Call {
      * @param memory simulating memory (Stack and Heap) for local and global variables
      */
     public void execute(Memory memory, Map<String, Function> functionMap) {
+        Profile.getInstance().count(profileId, 0);
+        if (Options.getInstance().isMemoize()) {
+            Function function = functionMap.get(functionName);
+            if (function.isMemoizable() && memory.getMemoization().isMemoizing(functionName)) {
+                executeMemoized(memory, function, functionMap);
+                return;
+            }
+        }
+        executeCall(memory, functionMap);
+    }
+
+    /**
+     * Run the function, in a new frame, in the frame of the caller (inlined), or in the current frame (tail call).
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    private void executeCall(Memory memory, Map<String, Function> functionMap) {
+        if (inlinedFunction != null) {
+            executeInlined(memory, functionMap);
+            return;
+        }
+        if (tailCallParameters != null) {
+            executeTailCall(memory);
+        }
+
         Queue<String> argumentQueue = new LinkedList<>();
         parameter.execute(memory, argumentQueue, functionMap, true);
 
@@ -97,10 +127,193 @@ public class Call {
         // Indicate finished a function executing
         memory.setExecutingFunction(false);
         // Pop/remove this function variable stack from Call stack.
-        memory.popVariableStack();
+        memory.popVariableStack(function.getUncountedParameterCount());
     }
 
 
+    /**
+     * Memoization, see Memoization.java
+     * If the function has been called with the same contents of the arguments, the written formal parameters
+     * get the saved contents instead of running the function. Otherwise the function runs, and the result is saved.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    private void executeMemoized(Memory memory, Function function, Map<String, Function> functionMap) {
+        Memoization memoization = memory.getMemoization();
+        Memory.Value[] arguments = memory.findArguments(parameter.getNames());
+        Memoization.Key key = memoization.newKey(functionName, arguments);
+        if (memoization.replay(key, function.getWrittenParameters(), arguments)) {
+            // the same as the end of running the function
+            memory.setExecutingFunction(false);
+            return;
+        }
+
+        key = key.copy();
+        executeCall(memory, functionMap);
+        memoization.save(key, function, arguments);
+    }
+
+    /**
+     * Run the inlined function body in the frame of the caller.
+     * The formal parameters are bound in a new scope instead of a new frame, and the scope is released
+     * with the same garbage collection as Memory.popVariableStack(), so the output is the same as execute().
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    private void executeInlined(Memory memory, Map<String, Function> functionMap) {
+        int initialSize = memory.localSize();
+
+        memory.setExecutingFunction(true);
+        memory.bindParameters(inlinedFunction.getParameterNames(), arguments);
+        inlinedFunction.executeInlined(memory, functionMap);
+
+        memory.setExecutingFunction(false);
+        memory.releaseLocalElements(initialSize);
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + parameter.countNodes();
+    }
+
+    /**
+     * A function may change global variables and arrays, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        loop.addCall();
+    }
+
+    /**
+     * Common subexpression elimination, a function may change global variables and arrays,
+     * so the call ends the straight-line part.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        available.clear();
+    }
+
+    /**
+     * Build the IR of "<call>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        builder.emitMemory(IrInstruction.Opcode.CALL, functionName).setArguments(parameter.getNames());
+    }
+
+    /**
+     * The arguments are shared with the formal parameters, so they have to stay in Memory, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        sharedVariables.addAll(parameter.getNames());
+    }
+
+    /**
+     * Record the call, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        analysis.addCall(functionName);
+        for (String argument : parameter.getNames()) {
+            analysis.addName(argument);
+        }
+    }
+
+    /**
+     * Procedure inlining: the call runs the function body in the frame of the caller if the function is inlinable
+     * (see InlineAnalysis.java), it has the same number of arguments as formal parameters,
+     * and no name used by the function is a local variable of the caller.
+     * With a profile, a hot call can inline a larger function even without "--inline", and a cold call is never inlined.
+     *
+     * @param functionMap    all the functions
+     * @param localVariables the local variables of the caller
+     */
+    public void inline(Map<String, Function> functionMap, Set<String> localVariables) {
+        Options options = Options.getInstance();
+        Profile profile = Profile.getInstance();
+        int threshold = options.isInline() ? options.getInlineThreshold() : -1;
+        if (profile.isHot(profileId)) {
+            threshold = options.getInlineThreshold() * Profile.HOT_INLINE_FACTOR;
+        } else if (profile.isCold(profileId)) {
+            threshold = -1;
+        }
+
+        Function function = functionMap.get(functionName);
+        List<String> argumentNames = parameter.getNames();
+        if (function.isInlinable(threshold) && function.getParameterNames().size() == argumentNames.size()
+                && Collections.disjoint(function.getInlineAnalysis().getNames(), localVariables)) {
+            inlinedFunction = function;
+            arguments = argumentNames;
+            function.markInlined();
+        }
+    }
+
+    /**
+     * @param functionName the function whose body contains the call
+     * @param tailCalls    the call is added if it calls the function whose body contains it
+     */
+    public void findTailCalls(String functionName, List<Call> tailCalls) {
+        if (this.functionName.equals(functionName)) {
+            tailCalls.add(this);
+        }
+    }
+
+    /**
+     * Tail-call elimination, see Function.markTailCalls()
+     * The formal parameters of the current frame are bound to the arguments again,
+     * then Function.execute() runs the body again.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    private void executeTailCall(Memory memory) {
+        memory.rebindFrame(tailCallParameters, tailCallArguments);
+        throw Function.TAIL_CALL;
+    }
+
+    /**
+     * Make this call a tail call, see Function.markTailCalls()
+     *
+     * @param parameters the formal parameters of the function
+     */
+    public void setTailCall(List<String> parameters) {
+        tailCallParameters = parameters;
+        tailCallArguments = parameter.getNames();
+    }
+
+    public List<String> getArgumentNames() {
+        return parameter.getNames();
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * Partial evaluation: the function may read and write the global variables and the arguments,
+     * so they become dynamic, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        evaluator.makeGlobalsDynamic();
+        for (String argument : parameter.getNames()) {
+            evaluator.makeDynamic(argument);
+        }
+        if (evaluator.getFunction(functionName).getInlineAnalysis().readsInput()) {
+            evaluator.stopInput();
+        }
+        evaluator.emit(this);
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
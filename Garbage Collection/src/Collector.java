@@ -0,0 +1,112 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The garbage collector of the arrays in Memory, chosen by option "--gc=name".
+ * <p>
+ * Memory calls it every time an array is allocated, a variable starts to point to another array (a reference store),
+ * and the variables of a frame (or a scope of it) have been removed. When the program ends, all the variables are removed
+ * and collect() is called, so every collector frees every array before the program ends.
+ * A collector prints "gc:n" with the number of arrays still alive every time it allocates or frees an array.
+ * <p>
+ * "rc" (the default) is reference counting, see ReferenceCountingCollector.java, it frees an array as soon as nothing
+ * points to it. "mark-sweep" is a tracing collector, see MarkSweepCollector.java, it does not count references,
+ * and only frees the arrays when "--gc-threshold=N" arrays have been allocated since the last collection.
+ * "deferred" only counts the references from global variables, see DeferredReferenceCountingCollector.java
+ * "generational" collects the young arrays more often than the old ones, see GenerationalCollector.java
+ * "incremental" cuts a mark and sweep collection into slices of "--gc-budget=N" arrays, see IncrementalCollector.java
+ * <p>
+ * With "--frame-allocate", the arrays which never escape the frame of a function (see Function.markFrameAllocations())
+ * are not managed by the collector: they are only counted as alive from allocateInFrame() until releaseFrame(),
+ * which frees them all at once and prints "gc:n" once for the whole frame.
+ *
+ * @author Zhao Liu
+ */
+public interface Collector {
+    String REFERENCE_COUNTING = "rc";
+    String MARK_SWEEP = "mark-sweep";
+    String DEFERRED_REFERENCE_COUNTING = "deferred";
+    String GENERATIONAL = "generational";
+    String INCREMENTAL = "incremental";
+    List<String> NAMES = List.of(REFERENCE_COUNTING, MARK_SWEEP, DEFERRED_REFERENCE_COUNTING, GENERATIONAL, INCREMENTAL);
+
+    /**
+     * @param options the options, "--gc", "--gc-threshold", and "--gc-budget"
+     * @return a new collector for one execution of the program
+     */
+    static Collector newCollector(Options options) {
+        switch (options.getCollector()) {
+            case MARK_SWEEP:
+                return new MarkSweepCollector(options.getCollectorThreshold());
+            case DEFERRED_REFERENCE_COUNTING:
+                return new DeferredReferenceCountingCollector(options.getCollectorThreshold());
+            case GENERATIONAL:
+                return new GenerationalCollector(options.getCollectorThreshold());
+            case INCREMENTAL:
+                return new IncrementalCollector(options.getCollectorThreshold(), options.getCollectorBudget());
+            default:
+                return new ReferenceCountingCollector();
+        }
+    }
+
+    /**
+     * A new array has been allocated, and a variable already points to it.
+     *
+     * @param memory the memory
+     * @param value  the new array
+     */
+    void allocate(Memory memory, Memory.Value value);
+
+    /**
+     * A new array has been allocated in the current frame, and a local variable already points to it.
+     * Its references are never counted, and it is never traced.
+     *
+     * @param memory the memory
+     * @param value  the new array
+     */
+    void allocateInFrame(Memory memory, Memory.Value value);
+
+    /**
+     * The frame has been popped, so all the arrays allocated in it are freed.
+     *
+     * @param memory the memory
+     * @param values the arrays allocated in the frame
+     */
+    void releaseFrame(Memory memory, List<Memory.Value> values);
+
+    /**
+     * A variable points to newValue instead of oldValue.
+     *
+     * @param memory   the memory
+     * @param oldValue the value it pointed to, null if nothing
+     * @param newValue the value it points to now, null if nothing
+     * @param isGlobal true if the variable is a global variable, false if it is in a frame
+     */
+    void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal);
+
+    /**
+     * The variables of a frame, a scope of a frame, or the global variables have been removed.
+     *
+     * @param memory   the memory
+     * @param scopes   the variables removed
+     * @param isGlobal true if they are the global variables, removed when the program ends
+     */
+    void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal);
+
+    /**
+     * Free every array which is not reachable any more, called when the program ends.
+     *
+     * @param memory the memory
+     */
+    void collect(Memory memory);
+
+    /**
+     * Print the counters of the collector to the standard error, for option "--gc-stats".
+     * A collector without any counter prints nothing.
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    default void printStats(PrintStream output) {
+    }
+}
@@ -1,5 +1,7 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -18,14 +20,23 @@ public class Compare {
     private Expression leftExpression;
     private Expression rightExpression;
 
+    // The result decided by constant folding, null if it is not a constant.
+    private Boolean constantValue;
+
+    // for "--specialize", see SpecializedNode.java
+    private SpecializedNode.Test specializedNode;
+    private int executionCount;
+    // the innermost loop around this node when it is parsed, see Profile.getSpecializeThreshold()
+    private int loopProfileId = Profile.getInstance().getEnclosingLoop();
+    private boolean isSpecializeTried;
+
     /**
      * The grammar is: <cmpr> ==> <expr> = <expr> | <expr> < <expr>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
-        leftExpression = new Expression();
-        leftExpression.parse(tokenQueue, functionMap);
+        leftExpression = Expression.parse(tokenQueue, functionMap);
 
         if (tokenQueue.peek() == Core.EQUAL) {
             tokenQueue.poll();
@@ -34,12 +45,10 @@ public class Compare {
             tokenQueue.poll();
             lessThan = Core.LESS;
         } else {
-            System.out.println("ERROR: the compare operation only accepts symbol '=' or '<'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the compare operation only accepts symbol '=' or '<'!!!");
         }
 
-        rightExpression = new Expression();
-        rightExpression.parse(tokenQueue, functionMap);
+        rightExpression = Expression.parse(tokenQueue, functionMap);
     }
 
     /**
@@ -71,6 +80,39 @@ public class Compare {
      * @return true or false, the result of compare two expression
      */
     public boolean execute(Memory memory, Map<String, Function> functionMap) {
+        if (constantValue != null) {
+            return constantValue;
+        }
+        if (specializedNode != null) {
+            return specializedNode.execute(memory, functionMap);
+        }
+
+        boolean result = executeGeneric(memory, functionMap);
+
+        Options options = Options.getInstance();
+        if (options.isSpecialize() && !isSpecializeTried) {
+            executionCount++;
+            if (executionCount >= Profile.getInstance().getSpecializeThreshold(loopProfileId)) {
+                // "=" or "<" is decided only once. The children specialize themselves, so this node never deoptimizes.
+                if (equal != null) {
+                    specializedNode = new SpecializedNode.IntEqual(leftExpression.toRead(), rightExpression.toRead());
+                } else {
+                    specializedNode = new SpecializedNode.IntLess(leftExpression.toRead(), rightExpression.toRead());
+                }
+                isSpecializeTried = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * The generic version of execute(), which checks all the cases every time.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return true or false, the result of compare two expression
+     */
+    private boolean executeGeneric(Memory memory, Map<String, Function> functionMap) {
         boolean result = false;
         int leftValue = leftExpression.execute(memory, functionMap);
         int rightValue = rightExpression.execute(memory, functionMap);
@@ -93,6 +135,130 @@ public class Compare {
     }
 
 
+    /**
+     * Constant folding: if both sides are constants, the result of "<cmpr>" is decided here.
+     */
+    public void fold() {
+        leftExpression = leftExpression.fold();
+        rightExpression = rightExpression.fold();
+
+        Factor left = leftExpression.getSingleFactor();
+        Factor right = rightExpression.getSingleFactor();
+        if (left != null && left.isConstant() && right != null && right.isConstant()) {
+            if (equal != null) {
+                constantValue = left.getConstantValue() == right.getConstantValue();
+            } else {
+                constantValue = left.getConstantValue() < right.getConstantValue();
+            }
+        }
+    }
+
+    /**
+     * @return true if the result of "<cmpr>" has been decided by constant folding
+     */
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    public boolean getConstantValue() {
+        return constantValue;
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + leftExpression.countNodes() + rightExpression.countNodes();
+    }
+
+    /**
+     * Create "<cmpr> ::= 0 = 0", which is always true.
+     *
+     * @return the new compare
+     */
+    public static Compare alwaysTrue() {
+        Compare compare = new Compare();
+        compare.leftExpression = Expression.fromConstant(0);
+        compare.equal = Core.EQUAL;
+        compare.rightExpression = Expression.fromConstant(0);
+        compare.constantValue = true;
+        return compare;
+    }
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    public void hoist(List<LoopAnalysis> loops) {
+        leftExpression.hoist(loops);
+        rightExpression.hoist(loops);
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        leftExpression.markBoundsChecks(loop);
+        rightExpression.markBoundsChecks(loop);
+    }
+
+    public boolean isLessThan() {
+        return lessThan != null;
+    }
+
+    public Expression getLeftExpression() {
+        return leftExpression;
+    }
+
+    public Expression getRightExpression() {
+        return rightExpression;
+    }
+
+    /**
+     * Build the IR of "<cmpr>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     * @return 1 if true, otherwise 0
+     */
+    public IrInstruction lower(IrBuilder builder) {
+        if (constantValue != null) {
+            return builder.constant(constantValue ? 1 : 0);
+        }
+        IrInstruction leftValue = leftExpression.lower(builder);
+        IrInstruction rightValue = rightExpression.lower(builder);
+        return builder.emit(equal != null ? IrInstruction.Opcode.EQUAL : IrInstruction.Opcode.LESS, leftValue, rightValue);
+    }
+
+    /**
+     * @param variables all the variables read by "<cmpr>" are added
+     * @return true if any array element is read
+     */
+    public boolean collectReads(Set<String> variables) {
+        boolean readsArray = leftExpression.collectReads(variables);
+        if (rightExpression.collectReads(variables)) {
+            readsArray = true;
+        }
+        return readsArray;
+    }
+
+    /**
+     * Partial evaluation: copy this node, where every static variable is replaced by its value, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual compare
+     */
+    public Compare substitute(PartialEvaluator evaluator) {
+        Compare residual = new Compare();
+        residual.leftExpression = leftExpression.substitute(evaluator);
+        residual.equal = equal;
+        residual.lessThan = lessThan;
+        residual.rightExpression = rightExpression.substitute(evaluator);
+        return residual;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -0,0 +1,94 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <cond> ==> <cmpr>
+ *
+ * @author Zhao Liu
+ */
+public final class CompareCondition implements Condition {
+    private Compare compare;
+
+    // The result decided by constant folding, null if it is not a constant.
+    private Boolean constantValue;
+
+    /**
+     * @param compare the "<cmpr>", which has been parsed
+     */
+    public CompareCondition(Compare compare) {
+        this.compare = compare;
+        if (compare.isConstant()) {
+            constantValue = compare.getConstantValue();
+        }
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        compare.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<cond> ::= <cmpr>", return the result of "<cmpr>"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<cond>"
+     */
+    public boolean execute(Memory memory, Map<String, Function> functionMap) {
+        if (constantValue != null) {
+            return constantValue;
+        }
+        return compare.execute(memory, functionMap);
+    }
+
+    public void fold() {
+        compare.fold();
+        if (compare.isConstant()) {
+            constantValue = compare.getConstantValue();
+        }
+    }
+
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    public boolean getConstantValue() {
+        return constantValue;
+    }
+
+    public int countNodes() {
+        return 1 + compare.countNodes();
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        compare.hoist(loops);
+    }
+
+    public void markBoundsChecks(LoopAnalysis loop) {
+        compare.markBoundsChecks(loop);
+    }
+
+    public Compare getSingleCompare() {
+        return compare;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        if (constantValue != null) {
+            return builder.constant(constantValue ? 1 : 0);
+        }
+        return compare.lower(builder);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        return compare.collectReads(variables);
+    }
+
+    public Condition substitute(PartialEvaluator evaluator) {
+        return new CompareCondition(compare.substitute(evaluator));
+    }
+
+    public void print(int indent) {
+        compare.print(0);
+    }
+
+}
@@ -1,5 +1,7 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -14,52 +16,54 @@ import java.util.Stack;
  * Otherwise, the first token would be "<cmpr>"
  * If the second token is "or", then it is "<cmpr> or <cond>"
  * If the second token is "and", then it is "<cmpr> and <cond>"
+ * <p>
+ * Each type is its own final class (CompareCondition, NotCondition, OrCondition, and AndCondition),
+ * so a condition is run by one virtual call, the same as Statement.java
  *
  * @author Zhao Liu
  */
-public class Condition {
-    private Core notKeyword;
-    private Core orKeyword;
-    private Core andKeyword;
-    private Compare compare;
-    private Condition condition;
+public sealed interface Condition permits CompareCondition, NotCondition, OrCondition, AndCondition {
 
     /**
      * The grammar is: <cond> ==> <cmpr> | not <cond> | <cmpr> or <cond> | <cmpr> and <cond>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
+     * @return the condition
      */
-    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+    static Condition parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.peek() == Core.NOT) {
             // If the first word of token sequence is "not", then it is "<cond> ==> not <cond>"
             // so the second token must be "<cond>"
-            tokenQueue.poll();
-            notKeyword = Core.NOT;
-
-            condition = new Condition();
-            condition.parse(tokenQueue, functionMap);
-
-        } else {
-            // Otherwise, the first token would be "<cmpr>"
-            compare = new Compare();
-            compare.parse(tokenQueue, functionMap);
-
-            if (tokenQueue.peek() == Core.OR) {
-                // If the second token is "or", then it is "<cmpr> or <cond>"
-                tokenQueue.poll();
-                orKeyword = Core.OR;
-
-                condition = new Condition();
-                condition.parse(tokenQueue, functionMap);
-            } else if (tokenQueue.peek() == Core.AND) {
-                // If the second token is "and", then it is "<cmpr> and <cond>"
-                tokenQueue.poll();
-                andKeyword = Core.AND;
-
-                condition = new Condition();
-                condition.parse(tokenQueue, functionMap);
-            }
+            NotCondition notCondition = new NotCondition();
+            notCondition.parse(tokenQueue, functionMap);
+            return notCondition;
+        }
+
+        // Otherwise, the first token would be "<cmpr>"
+        Compare compare = new Compare();
+        compare.parse(tokenQueue, functionMap);
+
+        if (tokenQueue.peek() == Core.OR) {
+            // If the second token is "or", then it is "<cmpr> or <cond>"
+            OrCondition orCondition = new OrCondition(compare);
+            orCondition.parse(tokenQueue, functionMap);
+            return orCondition;
+        } else if (tokenQueue.peek() == Core.AND) {
+            // If the second token is "and", then it is "<cmpr> and <cond>"
+            AndCondition andCondition = new AndCondition(compare);
+            andCondition.parse(tokenQueue, functionMap);
+            return andCondition;
         }
+        return new CompareCondition(compare);
+    }
+
+    /**
+     * Create "<cond> ::= 0 = 0", which is always true.
+     *
+     * @return the new condition
+     */
+    static Condition alwaysTrue() {
+        return new CompareCondition(Compare.alwaysTrue());
     }
 
     /**
@@ -71,93 +75,106 @@ public class Condition {
      *
      * @param variableStack contains all declared variables
      */
-    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
-        if (compare != null) {
-            compare.semanticChecking(variableStack, functionCheckingMap);
-        }
-        if (condition != null) {
-            condition.semanticChecking(variableStack, functionCheckingMap);
-        }
-    }
+    void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap);
 
     /**
      * Using the recursive descent approach to walk over the parse tree.
      * This function will execute its children and perform any action needed on the result of that execution.
      *
-     * The grammar is "<cond> ::= <cmpr> | not <cond> | <cmpr> or <cond> | <cmpr> and <cond>",
-     * so there are 4 cases need to handle.
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<cond>"
+     */
+    boolean execute(Memory memory, Map<String, Function> functionMap);
+
+    /**
+     * Constant folding: if the result only depends on constants, the result of "<cond>" is decided here.
+     */
+    void fold();
+
+    /**
+     * @return true if the result of "<cond>" has been decided by constant folding
+     */
+    boolean isConstant();
+
+    boolean getConstantValue();
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    int countNodes();
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
      *
-     * If "notKeyword" != null, it indicates "<cond> ::= not <cond>"
-     * If "orKeyword" != null, it indicates "<cond> ::= <cmpr> or <cond>"
-     * If "andKeyword" != null, it indicates "<cond> ::= <cmpr> and <cond>"
-     * otherwise, it is "<cond> ::= <cmpr>"
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    void hoist(List<LoopAnalysis> loops);
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
      *
-     * @param memory simulating memory (Stack and Heap) for local and global variables
-     * @return true or false, the result of condition
-     */
-    public boolean execute(Memory memory, Map<String, Function> functionMap) {
-        boolean result = false;
-
-        if (notKeyword != null) {
-            // Handle case for "<cond> ::= not <cond>"
-            // Negate the value of "<cond>"
-            boolean conditionValue = condition.execute(memory, functionMap);
-            if (!conditionValue) {
-                result = true;
-            }
-
-        } else if (orKeyword != null) {
-            // Handle case for "<cond> ::= <cmpr> or <cond>"
-            // either "<cmpr>" or "<cond>" is true, return true
-            boolean compareValue = compare.execute(memory, functionMap);
-            boolean conditionValue = condition.execute(memory, functionMap);
-            if (compareValue || conditionValue) {
-                result = true;
-            }
-
-        } else if (andKeyword != null) {
-            // Handle case for "<cond> ::= <cmpr> or <cond>"
-            // either "<cmpr>" or "<cond>" is true, return true
-            boolean compareValue = compare.execute(memory, functionMap);
-            boolean conditionValue = condition.execute(memory, functionMap);
-            if (compareValue && conditionValue) {
-                result = true;
-            }
-
-        } else {
-            // Handle case for "<cond> ::= <cmpr>"
-            // return the result of "<cmpr>"
-            result = compare.execute(memory, functionMap);
-        }
+     * @param loop information about the loop
+     */
+    void markBoundsChecks(LoopAnalysis loop);
 
-        return result;
+    /**
+     * @return the compare if it is "<cond> ::= <cmpr>", otherwise null
+     */
+    default Compare getSingleCompare() {
+        return null;
     }
 
-
     /**
-     * produce "pretty" code with the appropriate indentation
+     * Build the IR of "<cond>", see IrBuilder.java
      *
-     * @param indent the number of spaces which need to be print
+     * @param builder the IR builder
+     * @return 1 if true, otherwise 0
      */
-    public void print(int indent) {
-        if (notKeyword != null) {
-            System.out.print(notKeyword.toString().toLowerCase() + " ");
-            condition.print(0);
+    IrInstruction lower(IrBuilder builder);
 
-        } else if (orKeyword != null) {
-            compare.print(0);
-            System.out.print(" " + orKeyword.toString().toLowerCase() + " ");
-            condition.print(0);
+    /**
+     * Build the IR of "<cond>" as compare-and-branch jumps, used by "if" and "while".
+     * With "--short-circuit", "and" and "or" branch to the targets before computing the right side.
+     *
+     * @param builder     the IR builder
+     * @param trueTarget  the block to run if "<cond>" is true
+     * @param falseTarget the block to run if "<cond>" is false
+     */
+    default void lowerBranch(IrBuilder builder, IrBlock trueTarget, IrBlock falseTarget) {
+        builder.branch(lower(builder), trueTarget, falseTarget);
+    }
 
-        } else if (andKeyword != null) {
-            compare.print(0);
-            System.out.print(" " + andKeyword.toString().toLowerCase() + " ");
-            condition.print(0);
+    /**
+     * @param variables all the variables read by "<cond>" are added
+     * @return true if any array element is read
+     */
+    boolean collectReads(Set<String> variables);
 
-        } else {
-            compare.print(0);
-        }
+    /**
+     * Partial evaluation: copy this node, where every static variable is replaced by its value, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual condition
+     */
+    Condition substitute(PartialEvaluator evaluator);
 
+    /**
+     * Partial evaluation: the residual condition after constant folding,
+     * its result is decided if it only depends on static variables and constants.
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual condition
+     */
+    default Condition partialEvaluate(PartialEvaluator evaluator) {
+        Condition residual = substitute(evaluator);
+        residual.fold();
+        return residual;
     }
 
+    /**
+     * produce "pretty" code with the appropriate indentation
+     *
+     * @param indent the number of spaces which need to be print
+     */
+    void print(int indent);
 }
@@ -0,0 +1,93 @@
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <factor> ==> const
+ * <p>
+ * Constant folding also creates it for values which can not be written as a "const" in Core, see print().
+ *
+ * @author Zhao Liu
+ */
+public final class ConstFactor implements Factor {
+    // The same with Scanner.java, the largest "const" can be written in Core.
+    private static final int MAX_CONST = 100003;
+
+    private final int value;
+
+    /**
+     * @param value the value of constant
+     */
+    public ConstFactor(int value) {
+        this.value = value;
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+    }
+
+    /**
+     * Handle case for "<factor> ::= const"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    public int execute(Memory memory, Map<String, Function> functionMap) {
+        return value;
+    }
+
+    public boolean isConstant() {
+        return true;
+    }
+
+    public int getConstantValue() {
+        return value;
+    }
+
+    public Factor fold() {
+        return this;
+    }
+
+    public boolean isInvariant(LoopAnalysis loop) {
+        return true;
+    }
+
+    public void appendKey(StringBuilder key) {
+        key.append(value);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        return false;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        return builder.constant(value);
+    }
+
+    public Factor substitute(PartialEvaluator evaluator) {
+        return this;
+    }
+
+    public void print(int indent) {
+        System.out.print(constantToString(value));
+    }
+
+    /**
+     * A folded constant may be negative or larger than MAX_CONST, which can not be written as a "const" in Core.
+     * So it is printed as an expression with the same value, like "(0-3)" or "(12*100000+345)".
+     *
+     * @param value the value of constant
+     * @return the constant written in Core
+     */
+    private static String constantToString(int value) {
+        if (value >= 0 && value <= MAX_CONST) {
+            return String.valueOf(value);
+        }
+        if (value == Integer.MIN_VALUE) {
+            return "((0-" + constantToString(Integer.MAX_VALUE) + ")-1)";
+        }
+        if (value < 0) {
+            return "(0-" + constantToString(-value) + ")";
+        }
+        return "(" + (value / 100000) + "*100000+" + (value % 100000) + ")";
+    }
+}
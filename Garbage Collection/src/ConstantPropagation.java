@@ -0,0 +1,304 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck).
+ * <p>
+ * Every value starts as "unknown" (TOP), and becomes "constant" or "not constant" (BOTTOM), it can only go down.
+ * Only the blocks which may run are visited: a block starts to run when an edge to it is found runnable,
+ * and "branch" with a constant condition only makes one of its edges runnable.
+ * A phi only meets the values coming from runnable edges, so a variable which is constant on every path that can run
+ * stays constant, even inside a loop.
+ * <p>
+ * At last, the constant values become "const", constant branches become jumps, and the blocks which can never run are removed.
+ *
+ * @author Zhao Liu
+ */
+public class ConstantPropagation extends IrPass {
+    private static final int TOP = 0;
+    private static final int CONSTANT = 1;
+    private static final int BOTTOM = 2;
+
+    private int[] states;
+    private int[] values;
+    private Map<IrInstruction, List<IrInstruction>> users;
+    private Set<IrBlock> runnableBlocks;
+    private Map<IrBlock, Set<IrBlock>> runnableEdges;
+    private Deque<IrBlock[]> edgeWorkList;
+    private Deque<IrInstruction> valueWorkList;
+
+    @Override
+    public String getName() {
+        return "sccp";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        states = new int[function.getInstructionCount()];
+        values = new int[function.getInstructionCount()];
+        users = new HashMap<>();
+        runnableBlocks = new HashSet<>();
+        runnableEdges = new HashMap<>();
+        edgeWorkList = new ArrayDeque<>();
+        valueWorkList = new ArrayDeque<>();
+
+        for (IrBlock block : function.getBlocks()) {
+            addUsers(block.getPhis());
+            addUsers(block.getInstructions());
+        }
+
+        edgeWorkList.add(new IrBlock[]{null, function.getEntry()});
+        while (!edgeWorkList.isEmpty() || !valueWorkList.isEmpty()) {
+            while (!edgeWorkList.isEmpty()) {
+                IrBlock[] edge = edgeWorkList.poll();
+                visitEdge(edge[0], edge[1]);
+            }
+            while (!valueWorkList.isEmpty()) {
+                IrInstruction instruction = valueWorkList.poll();
+                if (runnableBlocks.contains(instruction.getBlock())) {
+                    visit(instruction);
+                }
+            }
+        }
+
+        rewrite(function);
+    }
+
+    private void addUsers(List<IrInstruction> instructions) {
+        for (IrInstruction instruction : instructions) {
+            for (IrInstruction operand : instruction.getOperands()) {
+                users.computeIfAbsent(operand, key -> new ArrayList<>()).add(instruction);
+            }
+        }
+    }
+
+    private void visitEdge(IrBlock from, IrBlock to) {
+        if (from != null && !runnableEdges.computeIfAbsent(from, key -> new HashSet<>()).add(to)) {
+            return;
+        }
+
+        for (IrInstruction phi : to.getPhis()) {
+            visit(phi);
+        }
+        if (runnableBlocks.add(to)) {
+            for (IrInstruction instruction : to.getInstructions()) {
+                visit(instruction);
+            }
+        }
+    }
+
+    private boolean isRunnable(IrBlock from, IrBlock to) {
+        Set<IrBlock> targets = runnableEdges.get(from);
+        return targets != null && targets.contains(to);
+    }
+
+    /**
+     * Compute the value of an instruction again from its operands.
+     *
+     * @param instruction the instruction
+     */
+    private void visit(IrInstruction instruction) {
+        switch (instruction.getOpcode()) {
+            case JUMP:
+                edgeWorkList.add(new IrBlock[]{instruction.getBlock(), instruction.getTargets().get(0)});
+                return;
+            case BRANCH:
+                IrInstruction condition = instruction.getOperand(0);
+                int state = states[condition.getId()];
+                if (state == BOTTOM || (state == CONSTANT && values[condition.getId()] != 0)) {
+                    edgeWorkList.add(new IrBlock[]{instruction.getBlock(), instruction.getTargets().get(0)});
+                }
+                if (state == BOTTOM || (state == CONSTANT && values[condition.getId()] == 0)) {
+                    edgeWorkList.add(new IrBlock[]{instruction.getBlock(), instruction.getTargets().get(1)});
+                }
+                return;
+            case PHI:
+                visitPhi(instruction);
+                return;
+            case CONST:
+                lower(instruction, CONSTANT, instruction.getConstant());
+                return;
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case EQUAL:
+            case LESS:
+            case NOT:
+            case AND:
+            case OR:
+                visitOperation(instruction);
+                return;
+            default:
+                if (instruction.hasValue()) {
+                    lower(instruction, BOTTOM, 0);
+                }
+        }
+    }
+
+    private void visitPhi(IrInstruction phi) {
+        int state = TOP;
+        int value = 0;
+        for (int i = 0; i < phi.getOperands().size(); i++) {
+            if (!isRunnable(phi.getPhiBlocks().get(i), phi.getBlock())) {
+                continue;
+            }
+            IrInstruction operand = phi.getOperand(i);
+            int operandState = states[operand.getId()];
+            if (operandState == BOTTOM) {
+                state = BOTTOM;
+                break;
+            }
+            if (operandState == CONSTANT) {
+                if (state == CONSTANT && value != values[operand.getId()]) {
+                    state = BOTTOM;
+                    break;
+                }
+                state = CONSTANT;
+                value = values[operand.getId()];
+            }
+        }
+        lower(phi, state, value);
+    }
+
+    private void visitOperation(IrInstruction instruction) {
+        IrInstruction.Opcode opcode = instruction.getOpcode();
+        int leftState = states[instruction.getOperand(0).getId()];
+        int left = values[instruction.getOperand(0).getId()];
+        if (opcode == IrInstruction.Opcode.NOT) {
+            if (leftState == CONSTANT) {
+                lower(instruction, CONSTANT, left == 0 ? 1 : 0);
+            } else if (leftState == BOTTOM) {
+                lower(instruction, BOTTOM, 0);
+            }
+            return;
+        }
+
+        int rightState = states[instruction.getOperand(1).getId()];
+        int right = values[instruction.getOperand(1).getId()];
+
+        // Both sides are always computed, but "0 and x" is always 0, and "1 or x" is always 1.
+        if (opcode == IrInstruction.Opcode.AND
+                && ((leftState == CONSTANT && left == 0) || (rightState == CONSTANT && right == 0))) {
+            lower(instruction, CONSTANT, 0);
+            return;
+        }
+        if (opcode == IrInstruction.Opcode.OR
+                && ((leftState == CONSTANT && left != 0) || (rightState == CONSTANT && right != 0))) {
+            lower(instruction, CONSTANT, 1);
+            return;
+        }
+
+        if (leftState == BOTTOM || rightState == BOTTOM) {
+            lower(instruction, BOTTOM, 0);
+        } else if (leftState == CONSTANT && rightState == CONSTANT) {
+            if (opcode == IrInstruction.Opcode.DIV && right == 0) {
+                // It has to report the error when running.
+                lower(instruction, BOTTOM, 0);
+            } else {
+                lower(instruction, CONSTANT, compute(opcode, left, right));
+            }
+        }
+    }
+
+    /**
+     * The same operations as the parse tree and IrInterpreter.java
+     */
+    public static int compute(IrInstruction.Opcode opcode, int left, int right) {
+        switch (opcode) {
+            case ADD:
+                return left + right;
+            case SUB:
+                return left - right;
+            case MUL:
+                return left * right;
+            case DIV:
+                return left / right;
+            case EQUAL:
+                return left == right ? 1 : 0;
+            case LESS:
+                return left < right ? 1 : 0;
+            case AND:
+                return left != 0 && right != 0 ? 1 : 0;
+            case OR:
+                return left != 0 || right != 0 ? 1 : 0;
+            default:
+                throw new IllegalArgumentException(opcode.toString());
+        }
+    }
+
+    /**
+     * Move the value of an instruction down, and visit its users again if it has changed.
+     */
+    private void lower(IrInstruction instruction, int state, int value) {
+        int id = instruction.getId();
+        if (states[id] == BOTTOM || state == TOP) {
+            return;
+        }
+        if (states[id] == CONSTANT) {
+            if (state == CONSTANT && values[id] == value) {
+                return;
+            }
+            state = BOTTOM;
+        }
+
+        states[id] = state;
+        values[id] = value;
+        List<IrInstruction> instructionUsers = users.get(instruction);
+        if (instructionUsers != null) {
+            valueWorkList.addAll(instructionUsers);
+        }
+    }
+
+    private void rewrite(IrFunction function) {
+        for (IrBlock block : function.getBlocks()) {
+            if (!runnableBlocks.contains(block)) {
+                continue;
+            }
+
+            List<IrInstruction> constantPhis = new ArrayList<>();
+            for (IrInstruction phi : block.getPhis()) {
+                if (states[phi.getId()] == CONSTANT) {
+                    constantPhis.add(phi);
+                }
+            }
+            block.getPhis().removeAll(constantPhis);
+            for (IrInstruction phi : constantPhis) {
+                phi.becomeConstant(values[phi.getId()]);
+                block.getInstructions().add(0, phi);
+            }
+
+            for (IrInstruction instruction : block.getInstructions()) {
+                IrInstruction.Opcode opcode = instruction.getOpcode();
+                if (opcode == IrInstruction.Opcode.BRANCH) {
+                    IrInstruction condition = instruction.getOperand(0);
+                    if (states[condition.getId()] == CONSTANT) {
+                        IrBlock taken = instruction.getTargets().get(values[condition.getId()] != 0 ? 0 : 1);
+                        IrBlock notTaken = instruction.getTargets().get(values[condition.getId()] != 0 ? 1 : 0);
+                        if (notTaken != taken) {
+                            for (IrInstruction phi : notTaken.getPhis()) {
+                                phi.removePhiOperand(block);
+                            }
+                        }
+                        instruction.setOpcode(IrInstruction.Opcode.JUMP);
+                        instruction.getOperands().clear();
+                        instruction.getTargets().clear();
+                        instruction.getTargets().add(taken);
+                    }
+                } else if (opcode != IrInstruction.Opcode.CONST && instruction.hasValue()
+                        && states[instruction.getId()] == CONSTANT) {
+                    instruction.becomeConstant(values[instruction.getId()]);
+                }
+            }
+        }
+
+        function.removeUnreachableBlocks();
+        function.removeTrivialPhis();
+    }
+}
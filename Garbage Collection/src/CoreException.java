@@ -0,0 +1,18 @@
+/**
+ * An error of the Core program: a syntax error, a semantic error, or a runtime error (like an array out of range).
+ * It stops running the program. Main prints the message (like "ERROR: ...!!!") and exits,
+ * and the batch mode (see Batch.java) only stops the program which has the error.
+ *
+ * @author Zhao Liu
+ */
+public class CoreException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message the message printed for the error
+     */
+    public CoreException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run one program with many data files, like "java Main 1.code 1.data 2.data 3.data --threads=4".
+ * <p>
+ * The program is parsed, checked, and optimized only once (see Main.compile()), and nothing in the parse tree
+ * (or the IR) changes when it is executed, so every data file runs it at the same time in a thread pool.
+ * Every data file has its own Memory, which has the variables, the memoized calls, and a buffer for everything printed.
+ * The outputs are printed in the order of the data files, each one as soon as it and all the ones before it have ended,
+ * so the output is the same as running the data files one by one. The same goes for the standard error:
+ * "--memoize-stats" and "--gc-stats" print into a second buffer of the data file, printed after its output.
+ * <p>
+ * An error only stops its own data file: the message is the last line of its output, the same as running it alone.
+ * "--specialize" rewrites the parse tree and "--profile-write" counts in the shared profile when executing,
+ * so they can not be used with more than one data file, neither can "--partial-evaluate" and "--cache".
+ *
+ * @author Zhao Liu
+ */
+public class DataShards {
+    // A thread of the pool gets a stack at least as large as the main thread, for deep recursion of Core functions.
+    private static final long STACK_SIZE = 256L * 1024 * 1024;
+
+    private String programFileName;
+    private List<String> dataFileNames;
+    private Options options;
+
+    /**
+     * The output of one data file.
+     */
+    private static final class Shard {
+        private String output;
+        private String statsOutput;
+        private boolean failed;
+    }
+
+    /**
+     * @param programFileName the .code file
+     * @param dataFileNames   the .data files
+     * @param options         the options for all the data files
+     */
+    public DataShards(String programFileName, List<String> dataFileNames, Options options) {
+        if (options.isSpecialize() || options.getProfileWrite() != null || options.isPartialEvaluate()
+                || options.getCacheDirectory() != null) {
+            throw new CoreException("ERROR: options --specialize, --profile-write, --partial-evaluate, and --cache "
+                    + "can not be used with more than one data file!!!");
+        }
+        this.programFileName = programFileName;
+        this.dataFileNames = dataFileNames;
+        this.options = options;
+    }
+
+    /**
+     * Compile the program, run it with all the data files, and print the outputs in order.
+     *
+     * @return the number of data files stopped by an error
+     */
+    public int run() {
+        List<Queue<Integer>> inputs = new ArrayList<>();
+        for (String dataFileName : dataFileNames) {
+            inputs.add(Main.readData(dataFileName));
+        }
+        Main.Program program = Main.compile(programFileName, null, options);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.getThreads(), inputs.size()),
+                runnable -> new Thread(null, runnable, "shard", STACK_SIZE));
+        List<Future<Shard>> shards = new ArrayList<>();
+        for (Queue<Integer> input : inputs) {
+            shards.add(pool.submit(() -> execute(program, input)));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        for (Future<Shard> future : shards) {
+            Shard shard;
+            try {
+                shard = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                shard = new Shard();
+                shard.output = "ERROR: " + e + "!!!" + System.lineSeparator();
+                shard.statsOutput = "";
+                shard.failed = true;
+            }
+            System.out.print(shard.output);
+            System.out.flush();
+            System.err.print(shard.statsOutput);
+            System.err.flush();
+            if (shard.failed) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Execute the program with one data file.
+     *
+     * @return everything printed, with the message of the error at the end if it stops by an error
+     */
+    private Shard execute(Main.Program program, Queue<Integer> input) {
+        Shard shard = new Shard();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(sink, false);
+        ByteArrayOutputStream statsSink = new ByteArrayOutputStream();
+        PrintStream statsOutput = new PrintStream(statsSink, false);
+        try {
+            Main.execute(program, input, output, statsOutput, options);
+        } catch (CoreException e) {
+            output.println(e.getMessage());
+            shard.failed = true;
+        } catch (RuntimeException | StackOverflowError e) {
+            // a bug of the interpreter only stops this data file
+            output.println("ERROR: " + e + "!!!");
+            shard.failed = true;
+        }
+        output.flush();
+        shard.output = sink.toString();
+        statsOutput.flush();
+        shard.statsOutput = statsSink.toString();
+        return shard;
+    }
+}
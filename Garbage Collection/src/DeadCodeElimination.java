@@ -0,0 +1,91 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dead code elimination: remove the instructions whose values are never used and which have no side effects,
+ * then merge a block into its only predecessor when the predecessor always jumps to it.
+ * <p>
+ * The instructions which are not pure (Memory, input/output, calls, and the last instruction of each block)
+ * are always live, and so are the operands of a live instruction.
+ *
+ * @author Zhao Liu
+ */
+public class DeadCodeElimination extends IrPass {
+
+    @Override
+    public String getName() {
+        return "dce";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        removeDeadInstructions(function);
+        function.removeUnreachableBlocks();
+        mergeBlocks(function);
+    }
+
+    private void removeDeadInstructions(IrFunction function) {
+        Set<IrInstruction> live = new HashSet<>();
+        Deque<IrInstruction> workList = new ArrayDeque<>();
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                if (!instruction.isPure() && live.add(instruction)) {
+                    workList.add(instruction);
+                }
+            }
+        }
+
+        while (!workList.isEmpty()) {
+            for (IrInstruction operand : workList.poll().getOperands()) {
+                if (live.add(operand)) {
+                    workList.add(operand);
+                }
+            }
+        }
+
+        for (IrBlock block : function.getBlocks()) {
+            block.getPhis().removeIf(phi -> !live.contains(phi));
+            block.getInstructions().removeIf(instruction -> !live.contains(instruction));
+        }
+    }
+
+    /**
+     * Merge "b1: ... jump b2" and "b2: ..." into one block, when b1 is the only predecessor of b2.
+     */
+    private void mergeBlocks(IrFunction function) {
+        List<IrBlock> removed = new ArrayList<>();
+        for (IrBlock block : function.reversePostorder()) {
+            if (removed.contains(block)) {
+                continue;
+            }
+            IrInstruction terminator = block.getTerminator();
+            while (terminator.getOpcode() == IrInstruction.Opcode.JUMP) {
+                IrBlock successor = terminator.getTargets().get(0);
+                if (successor == block || successor.getPredecessors().size() != 1 || !successor.getPhis().isEmpty()) {
+                    break;
+                }
+
+                block.getInstructions().remove(block.getInstructions().size() - 1);
+                for (IrInstruction instruction : successor.getInstructions()) {
+                    block.addInstruction(instruction);
+                }
+                // the phis of the successors of the successor now come from this block
+                for (IrBlock next : successor.getSuccessors()) {
+                    for (IrInstruction phi : next.getPhis()) {
+                        phi.getPhiBlocks().replaceAll(predecessor -> predecessor == successor ? block : predecessor);
+                    }
+                    next.getPredecessors().replaceAll(predecessor -> predecessor == successor ? block : predecessor);
+                }
+                removed.add(successor);
+                terminator = block.getTerminator();
+            }
+        }
+
+        function.getBlocks().removeAll(removed);
+        function.computePredecessors();
+    }
+}
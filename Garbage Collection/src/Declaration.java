@@ -1,5 +1,6 @@
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -12,7 +13,7 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class Declaration {
+public final class Declaration implements Statement {
     private DeclarationInteger declarationInteger;
     private DeclarationArray declarationArray;
 
@@ -63,6 +64,136 @@ public class Declaration {
     }
 
 
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        if (declarationInteger != null) {
+            return 1 + declarationInteger.countNodes();
+        }
+        return 1 + declarationArray.countNodes();
+    }
+
+    /**
+     * A new variable may hide another variable with the same name, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        if (declarationInteger != null) {
+            loop.addWrite(declarationInteger.getVariable());
+        } else {
+            loop.addWrite(declarationArray.getVariable());
+        }
+    }
+
+    /**
+     * Common subexpression elimination, a new variable may hide another variable with the same name.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        if (declarationInteger != null) {
+            available.killVariable(declarationInteger.getVariable());
+        } else {
+            available.killVariable(declarationArray.getVariable());
+        }
+    }
+
+    /**
+     * Build the IR of "<decl>", see IrBuilder.java
+     *
+     * @param builder  the IR builder
+     * @param isGlobal true if it is in "<decl-seq>"
+     */
+    public void lower(IrBuilder builder, boolean isGlobal) {
+        if (declarationInteger == null) {
+            builder.declareMemory(Core.ARRAY, declarationArray.getVariable());
+        } else if (isGlobal) {
+            builder.declareMemory(Core.INTEGER, declarationInteger.getVariable());
+        } else {
+            builder.declareInteger(declarationInteger.getVariable());
+        }
+    }
+
+    /**
+     * Build the IR of "<decl>" in a body, see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        lower(builder, false);
+    }
+
+    /**
+     * @return true, it is "<stmt> ==> <decl>"
+     */
+    public boolean isDeclaration() {
+        return true;
+    }
+
+    /**
+     * A variable declared again with the same name stays in Memory,
+     * so Memory.allocate() still reports it if it is doubly-declared when running, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        String variable = declarationInteger != null ? declarationInteger.getVariable() : declarationArray.getVariable();
+        if (!declaredVariables.add(variable)) {
+            sharedVariables.add(variable);
+        }
+    }
+
+    /**
+     * Record what this statement declares, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        if (declarationInteger != null) {
+            analysis.addDeclaration(declarationInteger.getVariable());
+        } else {
+            analysis.addDeclaration(declarationArray.getVariable());
+        }
+    }
+
+    /**
+     * Partial evaluation: the declaration stays in the residual program, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        declare(evaluator);
+        evaluator.emit(this);
+    }
+
+    /**
+     * Partial evaluation: a new integer is static with value 0, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void declare(PartialEvaluator evaluator) {
+        if (declarationInteger != null) {
+            evaluator.declare(declarationInteger.getVariable(), true);
+        } else {
+            evaluator.declare(declarationArray.getVariable(), false);
+        }
+    }
+
+    /**
+     * Create "integer id ;" for partial evaluation
+     *
+     * @param variable the variable
+     * @return the new declaration
+     */
+    public static Declaration fromInteger(String variable) {
+        Declaration declaration = new Declaration();
+        declaration.declarationInteger = DeclarationInteger.fromVariable(variable);
+        return declaration;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -22,8 +22,7 @@ public class DeclarationArray {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionCheckingMap) {
         if (tokenQueue.poll() != Core.ARRAY) {
-            System.out.println("ERROR: missing keyword 'array' for declaration statement.");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'array' for declaration statement.");
         }
         arrayKeyword = Core.ARRAY;
 
@@ -31,8 +30,7 @@ public class DeclarationArray {
         variable = (String) tokenQueue.poll();
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';' for declaration statement.");
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';' for declaration statement.");
         }
         semicolon = Core.SEMICOLON;
     }
@@ -51,8 +49,7 @@ public class DeclarationArray {
     public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionMap) {
         for (Variable temp : variableStack) {
             if (temp.getName().equals(variable)) {
-                System.out.println("ERROR: Array variable " + variable + " has been doubly-declared!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: Array variable " + variable + " has been doubly-declared!!!");
             }
         }
 
@@ -72,6 +69,17 @@ public class DeclarationArray {
         memory.allocate(Core.ARRAY, variable);
     }
 
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
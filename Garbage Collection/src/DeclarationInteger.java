@@ -22,8 +22,7 @@ public class DeclarationInteger {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.INTEGER) {
-            System.out.println("ERROR: missing keyword 'integer' for declaration statement.");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'integer' for declaration statement.");
         }
         integerKeyword = Core.INTEGER;
 
@@ -31,8 +30,7 @@ public class DeclarationInteger {
         variable = (String) tokenQueue.poll();
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';' for declaration statement.");
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';' for declaration statement.");
         }
         semicolon = Core.SEMICOLON;
     }
@@ -51,8 +49,7 @@ public class DeclarationInteger {
     public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
         for (Variable temp : variableStack) {
             if (temp.getName().equals(variable)) {
-                System.out.println("ERROR: Integer variable " + variable + " has been doubly-declared!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: Integer variable " + variable + " has been doubly-declared!!!");
             }
         }
 
@@ -72,6 +69,31 @@ public class DeclarationInteger {
         memory.allocate(Core.INTEGER, variable);
     }
 
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Create "integer id ;" for partial evaluation
+     *
+     * @param variable the variable
+     * @return the new declaration
+     */
+    public static DeclarationInteger fromVariable(String variable) {
+        DeclarationInteger declaration = new DeclarationInteger();
+        declaration.integerKeyword = Core.INTEGER;
+        declaration.variable = variable;
+        declaration.semicolon = Core.SEMICOLON;
+        return declaration;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -1,5 +1,7 @@
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -92,6 +94,185 @@ public class DeclarationSequence {
     }
 
 
+    /**
+     * Constant folding for all the functions.
+     */
+    public void fold() {
+        if (function != null) {
+            function.fold();
+        }
+        if (declarationSequence != null) {
+            declarationSequence.fold();
+        }
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        int count = 1;
+        if (function != null) {
+            count += function.countNodes();
+        } else {
+            count += declaration.countNodes();
+        }
+        if (declarationSequence != null) {
+            count += declarationSequence.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Loop-invariant code motion for all the functions.
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(TemporarySlots slots) {
+        if (function != null) {
+            function.hoist(slots);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.hoist(slots);
+        }
+    }
+
+    /**
+     * Common subexpression elimination for all the functions.
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void eliminateCommonSubexpressions(TemporarySlots slots) {
+        if (function != null) {
+            function.eliminateCommonSubexpressions(slots);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.eliminateCommonSubexpressions(slots);
+        }
+    }
+
+    /**
+     * Build the IR of all the functions, see IrBuilder.java
+     *
+     * @param builder         the IR builder
+     * @param globalVariables the names of all the global variables
+     */
+    public void lowerFunctions(IrBuilder builder, Set<String> globalVariables) {
+        if (function != null) {
+            function.lower(builder, globalVariables);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.lowerFunctions(builder, globalVariables);
+        }
+    }
+
+    /**
+     * Build the IR of all the global variable declarations.
+     *
+     * @param builder the IR builder
+     */
+    public void lowerDeclarations(IrBuilder builder) {
+        if (declaration != null) {
+            declaration.lower(builder, true);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.lowerDeclarations(builder);
+        }
+    }
+
+    /**
+     * @param globalVariables the names of all the global variables are added
+     */
+    public void collectGlobalVariables(Set<String> globalVariables) {
+        if (declaration != null) {
+            declaration.collectVariables(new HashSet<>(), globalVariables);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.collectGlobalVariables(globalVariables);
+        }
+    }
+
+    /**
+     * Find the functions whose formal parameters do not need to be counted, see Function.markBalancedParameters()
+     *
+     * @param functionMap all the functions
+     */
+    public void elideReferenceCounts(Map<String, Function> functionMap) {
+        if (function != null) {
+            function.markBalancedParameters(functionMap);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.elideReferenceCounts(functionMap);
+        }
+    }
+
+    /**
+     * Escape analysis in all the functions, see Function.markFrameAllocations()
+     *
+     * @param globalVariables the names of all the global variables
+     */
+    public void markFrameAllocations(Set<String> globalVariables) {
+        if (function != null) {
+            function.markFrameAllocations(globalVariables);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.markFrameAllocations(globalVariables);
+        }
+    }
+
+    /**
+     * Liveness-based early release in all the functions, see StatementSequence.markLastUses()
+     */
+    public void markLastUses() {
+        if (function != null) {
+            function.markLastUses();
+        }
+        if (declarationSequence != null) {
+            declarationSequence.markLastUses();
+        }
+    }
+
+    /**
+     * Find the functions whose calls can be memoized, see Function.markMemoizable()
+     *
+     * @param globalVariables all the global variables
+     */
+    public void memoize(Set<String> globalVariables) {
+        if (function != null) {
+            function.markMemoizable(globalVariables);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.memoize(globalVariables);
+        }
+    }
+
+    /**
+     * Decide which calls can be inlined in all the functions.
+     *
+     * @param functionMap all the functions
+     */
+    public void inline(Map<String, Function> functionMap) {
+        if (function != null) {
+            function.inline(functionMap);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.inline(functionMap);
+        }
+    }
+
+    /**
+     * Partial evaluation: the global integer variables are static with value 0, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        if (declaration != null) {
+            declaration.declare(evaluator);
+        }
+        if (declarationSequence != null) {
+            declarationSequence.partialEvaluate(evaluator);
+        }
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deferred reference counting, option "--gc=deferred".
+ * <p>
+ * Only the references from global variables are counted. The references from the frames change at every call
+ * (binding the formal parameters and popping the frame), so they are not counted at all, and a store into a global
+ * variable only puts its increment and decrement into a buffer. An array whose count is 0 may still be reachable
+ * from a frame, so it is kept in the zero count table.
+ * <p>
+ * At a reconciliation point, the buffered increments and then the decrements are applied, and an array whose count
+ * becomes 0 joins the table. Then the frames are scanned (see Memory.findStackRoots()), and every array in the table
+ * which no frame points to is freed, printing "gc:n". So every "gc:" line still has the number of arrays reachable
+ * at that point. The reconciliation points are:
+ * a frame pop which removes an array or has buffered updates to apply, a safepoint every "--gc-threshold=N"
+ * allocations or buffered updates, and the end of the program.
+ *
+ * @author Zhao Liu
+ */
+public class DeferredReferenceCountingCollector implements Collector {
+    private int threshold;
+    private int totalObjects = 0;
+    private int allocationsSinceReconciliation = 0;
+    // the buffered updates of the counts, by the stores into global variables
+    private List<Memory.Value> increments = new ArrayList<>();
+    private List<Memory.Value> decrements = new ArrayList<>();
+    // the arrays not pointed to by any global variable, in the order they joined
+    private Set<Memory.Value> zeroCountTable = new LinkedHashSet<>();
+
+    /**
+     * @param threshold the number of allocations or buffered updates between two safepoints
+     */
+    public DeferredReferenceCountingCollector(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * A new array is not pointed to by any global variable yet, so it joins the zero count table.
+     */
+    public void allocate(Memory memory, Memory.Value value) {
+        allocationsSinceReconciliation++;
+        if (allocationsSinceReconciliation >= threshold) {
+            reconcile(memory);
+        }
+        totalObjects++;
+        memory.getOutput().println("gc:" + totalObjects);
+        zeroCountTable.add(value);
+    }
+
+    /**
+     * A global variable never points to an array allocated in a frame, so it never joins the zero count table.
+     */
+    public void allocateInFrame(Memory memory, Memory.Value value) {
+        totalObjects++;
+        memory.getOutput().println("gc:" + totalObjects);
+    }
+
+    public void releaseFrame(Memory memory, List<Memory.Value> values) {
+        totalObjects -= values.size();
+        memory.getOutput().println("gc:" + totalObjects);
+    }
+
+    public void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal) {
+        if (!isGlobal) {
+            return;
+        }
+        if (newValue != null) {
+            increments.add(newValue);
+        }
+        if (oldValue != null) {
+            decrements.add(oldValue);
+        }
+        if (increments.size() + decrements.size() >= threshold) {
+            reconcile(memory);
+        }
+    }
+
+    /**
+     * The global variables are only removed at the end of the program, so their decrements wait for collect().
+     */
+    public void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal) {
+        boolean isArrayRemoved = false;
+        for (Map<String, Memory.Value> scope : scopes) {
+            for (Memory.Value value : scope.values()) {
+                if (value != null && value.type == Core.ARRAY) {
+                    isArrayRemoved = true;
+                    if (isGlobal) {
+                        decrements.add(value);
+                    }
+                }
+            }
+        }
+        if (!isGlobal && (isArrayRemoved || !increments.isEmpty() || !decrements.isEmpty())) {
+            reconcile(memory);
+        }
+    }
+
+    public void collect(Memory memory) {
+        reconcile(memory);
+    }
+
+    private void reconcile(Memory memory) {
+        allocationsSinceReconciliation = 0;
+
+        // The increments first, so an array moved from one global variable to another one never reaches 0
+        for (Memory.Value value : increments) {
+            value.referenceCount++;
+        }
+        for (Memory.Value value : decrements) {
+            value.referenceCount--;
+            if (value.referenceCount == 0) {
+                zeroCountTable.add(value);
+            }
+        }
+        increments.clear();
+        decrements.clear();
+        if (zeroCountTable.isEmpty()) {
+            return;
+        }
+
+        List<Memory.Value> roots = new ArrayList<>();
+        memory.findStackRoots(roots);
+        for (Memory.Value root : roots) {
+            root.marked = true;
+        }
+        Iterator<Memory.Value> iterator = zeroCountTable.iterator();
+        while (iterator.hasNext()) {
+            Memory.Value value = iterator.next();
+            if (value.referenceCount > 0) {
+                // a global variable points to it now
+                iterator.remove();
+            } else if (!value.marked) {
+                iterator.remove();
+                memory.free(value);
+                totalObjects--;
+                memory.getOutput().println("gc:" + totalObjects);
+            }
+        }
+        for (Memory.Value root : roots) {
+            root.marked = false;
+        }
+    }
+}
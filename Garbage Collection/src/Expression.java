@@ -1,5 +1,8 @@
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -11,40 +14,74 @@ import java.util.Stack;
  * The first token has to be "<term>".
  * If the second token is symbol "+", then it is "<expr> ==> <term> + <expr>"
  * If the second token is symbol "-", then it is "<expr> ==> <term> - <expr>"
+ * <p>
+ * Each type is its own final class (TermExpression, AddExpression, and SubtractExpression),
+ * so the operator is decided by one virtual call, the same as Factor.java.
+ * Unlike a factor, every type of expression has the same slots for "--specialize", "--licm", and "--cse",
+ * so they live here, and "+" and "-" share BinaryExpression.java.
+ * Constant folding gives back the expression which replaces this one, see fold().
  *
  * @author Zhao Liu
  */
-public class Expression {
-    private Core add;
-    private Core subtract;
-    private Term term;
-    private Expression expression;
+public abstract sealed class Expression permits TermExpression, BinaryExpression {
+    private final Term term;
+
+    // for "--specialize", see SpecializedNode.java
+    private SpecializedNode.Read specializedNode;
+    private int executionCount;
+    // the innermost loop around this node when it is parsed, see Profile.getSpecializeThreshold()
+    private int loopProfileId = Profile.getInstance().getEnclosingLoop();
+    private boolean isSpecializeTried;
+
+    // for "--licm", see LoopAnalysis.java
+    private int hoistSlot = -1;
+    private int hoistLoopSlot = -1;
+
+    // for "--cse", see AvailableExpressions.java
+    private int cseSlot = -1;
+    private boolean isCseDefinition;
+
+    /**
+     * @param term the first "<term>", which has been parsed
+     */
+    protected Expression(Term term) {
+        this.term = term;
+    }
 
     /**
      * The grammar is: <expr> ==> <term> | <term> + <expr> | <term> - <expr>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
+     * @return the expression
      */
-    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
-        term = new Term();
+    public static Expression parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+        Term term = new Term();
         term.parse(tokenQueue, functionMap);
 
         if (tokenQueue.peek() == Core.ADD) {
             // If the second token is symbol "+", then it is "<expr> ==> <term> + <expr>"
             tokenQueue.poll();
-            add = Core.ADD;
-
-            expression = new Expression();
-            expression.parse(tokenQueue, functionMap);
+            return new AddExpression(term, parse(tokenQueue, functionMap));
         } else if (tokenQueue.peek() == Core.SUBTRACT) {
             // If the second token is symbol "-", then it is "<expr> ==> <term> - <expr>"
             tokenQueue.poll();
-            subtract = Core.SUBTRACT;
-
-            expression = new Expression();
-            expression.parse(tokenQueue, functionMap);
+            return new SubtractExpression(term, parse(tokenQueue, functionMap));
         }
+        return new TermExpression(term);
+    }
+
+    /**
+     * Create "<expr> ::= const" for constant folding
+     *
+     * @param value the value of constant
+     * @return the new expression
+     */
+    public static Expression fromConstant(int value) {
+        return new TermExpression(Term.fromConstant(value));
+    }
 
+    protected Term getTerm() {
+        return term;
     }
 
     /**
@@ -58,45 +95,252 @@ public class Expression {
      */
     public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
         term.semanticChecking(variableStack, functionCheckingMap);
-
-        if (expression != null) {
-            expression.semanticChecking(variableStack, functionCheckingMap);
-        }
     }
 
     /**
      * Using the recursive descent approach to walk over the parse tree.
      * This function will execute its children and perform any action needed on the result of that execution.
-     * <p>
-     * There are three cases "<expr> ::= <term> | <term> + <expr> | <term> - <expr>"
-     * If variable "add" != null, it indicates "<expr> ::= <term> + <expr>"
-     * If variable "subtract" != null, it indicates "<expr> ::= <term> - <expr>"
-     * Otherwise, it indicates "<expr> ::= <term>"
      *
      * @param memory simulating memory (Stack and Heap) for local and global variables
      * @return the result of "<expr>"
      */
-    public int execute(Memory memory, Map<String, Function> functionMap) {
-        int result = 0;
+    public final int execute(Memory memory, Map<String, Function> functionMap) {
+        if (cseSlot >= 0 && !isCseDefinition) {
+            // The same value has been computed before in this straight-line part.
+            return memory.getTemporary(cseSlot);
+        }
 
-        int termValue = term.execute(memory, functionMap);
-        if (add != null) {
-            // Handle case for "<expr> ::= <term> + <expr>"
-            int expressionValue = expression.execute(memory, functionMap);
-            result = termValue + expressionValue;
+        int result;
+        if (hoistSlot >= 0) {
+            // It is loop-invariant, so it is only executed once for each time entering the loop.
+            int loopTag = memory.getTemporary(hoistLoopSlot);
+            if (memory.isTemporaryValid(hoistSlot, loopTag)) {
+                result = memory.getTemporary(hoistSlot);
+            } else {
+                result = executeNode(memory, functionMap);
+                memory.setTemporary(hoistSlot, loopTag, result);
+            }
+        } else {
+            result = executeNode(memory, functionMap);
+        }
 
-        } else if (subtract != null) {
-            // Handle case for "<expr> ::= <term> - <expr>"
-            int expressionValue = expression.execute(memory, functionMap);
-            result = termValue - expressionValue;
+        if (isCseDefinition) {
+            memory.setTemporary(cseSlot, 0, result);
+        }
+        return result;
+    }
 
-        } else {
-            // Handle case for "<expr> ::= <term>"
-            result = termValue;
+    /**
+     * Execute this node without the loop-invariant value or the common subexpression value.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<expr>"
+     */
+    private int executeNode(Memory memory, Map<String, Function> functionMap) {
+        if (specializedNode != null) {
+            return specializedNode.execute(memory, functionMap);
+        }
+
+        int result = executeGeneric(memory, functionMap);
+
+        Options options = Options.getInstance();
+        if (options.isSpecialize() && !isSpecializeTried) {
+            executionCount++;
+            if (executionCount >= Profile.getInstance().getSpecializeThreshold(loopProfileId)) {
+                specializedNode = specialize();
+                isSpecializeTried = true;
+            }
         }
+
         return result;
     }
 
+    /**
+     * The generic version of execute(), which runs the children every time.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<expr>"
+     */
+    protected abstract int executeGeneric(Memory memory, Map<String, Function> functionMap);
+
+    /**
+     * Rewrite this node into a specialized node.
+     * The children specialize themselves, so this node never deoptimizes.
+     *
+     * @return the specialized node, or null if it can not be specialized
+     */
+    protected abstract SpecializedNode.Read specialize();
+
+    /**
+     * @return the factor if it is "<expr> ::= <term>" and "<term> ::= <factor>", otherwise null
+     */
+    public Factor getSingleFactor() {
+        return null;
+    }
+
+    /**
+     * Wrap this expression for a specialized node. If it is a single factor, the factor will be run directly.
+     *
+     * @return a specialized node running this expression
+     */
+    public SpecializedNode.Read toRead() {
+        Factor singleFactor = getSingleFactor();
+        if (singleFactor != null) {
+            return new SpecializedNode.FactorRead(singleFactor);
+        }
+        return new SpecializedNode.ExpressionRead(this);
+    }
+
+    /**
+     * Constant folding and algebraic simplification for "<expr>", see BinaryExpression.fold()
+     *
+     * @return the expression replacing this one, or this expression itself
+     */
+    public abstract Expression fold();
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + term.countNodes();
+    }
+
+    /**
+     * Check whether the value of "<expr>" never changes inside the loop.
+     *
+     * @param loop information about the loop
+     * @return true if it is loop-invariant
+     */
+    public boolean isInvariant(LoopAnalysis loop) {
+        return term.isInvariant(loop);
+    }
+
+    /**
+     * Loop-invariant code motion. If "<expr>" is invariant in one of the loops,
+     * it will only be executed once for each time entering the outermost one of these loops.
+     * A single "<factor>" is handled by the factor itself, since specialized nodes may run the factor directly.
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    public void hoist(List<LoopAnalysis> loops) {
+        if (getSingleFactor() == null) {
+            for (LoopAnalysis loop : loops) {
+                if (isInvariant(loop)) {
+                    hoistLoopSlot = loop.getLoopSlot();
+                    hoistSlot = loop.newTemporarySlot();
+                    return;
+                }
+            }
+        }
+        hoistChildren(loops);
+    }
+
+    /**
+     * Loop-invariant code motion for the children, when this node is not invariant itself.
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    protected void hoistChildren(List<LoopAnalysis> loops) {
+        term.hoist(loops);
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        term.markBoundsChecks(loop);
+    }
+
+    /**
+     * @param variable an integer variable
+     * @return true if it is "variable + const" or "const + variable", where const is positive
+     */
+    public boolean isIncrementOf(String variable) {
+        return false;
+    }
+
+    /**
+     * Common subexpression elimination. If "<expr>" has an operator and the same expression has been computed before,
+     * the value is read from Memory and the children are never executed, see AvailableExpressions.java
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        term.eliminateCommonSubexpressions(available);
+    }
+
+    /**
+     * Look up this expression in the expressions computed before, see eliminateCommonSubexpressions()
+     *
+     * @param available the expressions computed before in this straight-line part
+     * @return true if the value is read from Memory, so the children do not need to be looked up
+     */
+    protected boolean findCommonSubexpression(AvailableExpressions available) {
+        StringBuilder key = new StringBuilder();
+        appendKey(key);
+        Set<String> variables = new HashSet<>();
+        boolean readsArray = collectReads(variables);
+        cseSlot = available.find(key.toString(), variables, readsArray, slot -> {
+            cseSlot = slot;
+            isCseDefinition = true;
+        });
+        return cseSlot >= 0;
+    }
+
+    /**
+     * Write "<expr>" as a key for common subexpression elimination, like "(x-(y*2))".
+     *
+     * @param key the key
+     */
+    public void appendKey(StringBuilder key) {
+        term.appendKey(key);
+    }
+
+    /**
+     * @param variables all the variables read by "<expr>" are added
+     * @return true if any array element is read
+     */
+    public boolean collectReads(Set<String> variables) {
+        return term.collectReads(variables);
+    }
+
+    /**
+     * Build the IR of "<expr>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     * @return the value of "<expr>"
+     */
+    public abstract IrInstruction lower(IrBuilder builder);
+
+    /**
+     * Partial evaluation: copy this node, where every static variable is replaced by its value, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual expression
+     */
+    public abstract Expression substitute(PartialEvaluator evaluator);
+
+    /**
+     * Partial evaluation: the residual expression after constant folding,
+     * it is a single constant if the value only depends on static variables and constants.
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual expression
+     */
+    public Expression partialEvaluate(PartialEvaluator evaluator) {
+        return substitute(evaluator).fold();
+    }
+
+    /**
+     * @return true if it is "<expr> ::= const"
+     */
+    public boolean isConstant() {
+        Factor singleFactor = getSingleFactor();
+        return singleFactor != null && singleFactor.isConstant();
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -104,13 +348,6 @@ public class Expression {
      */
     public void print(int indent) {
         term.print(0);
-        if (add != null) {
-            System.out.print("+");
-            expression.print(0);
-        } else if (subtract != null) {
-            System.out.print("-");
-            expression.print(0);
-        }
     }
 
 }
@@ -1,5 +1,7 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -14,69 +16,69 @@ import java.util.Stack;
  * <p>
  * If the first token is "const", then it only matches "const"
  * If the first token is symbol "(", then it only matches "( <expr> )"
+ * <p>
+ * Each type is its own final class (VariableFactor, ArrayFactor, ConstFactor, and ParenthesizedFactor),
+ * so a factor is run by one virtual call, the same as Statement.java and Condition.java.
+ * Constant folding gives back the factor which replaces this one, see fold().
  *
  * @author Zhao Liu
  */
-public class Factor {
-    private String variable;
-    private String constant;
-    private Core leftBracket;
-    private Core rightBracket;
-    private Core leftParenthesis;
-    private Core rightParenthesis;
-    private Expression expression;
+public sealed interface Factor permits VariableFactor, ArrayFactor, ConstFactor, ParenthesizedFactor {
 
     /**
      * The grammar is: <factor> ==> id | id [ <expr> ] | const | ( <expr> )
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
+     * @return the factor
      */
-    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+    static Factor parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.peek() == Core.ID) {
             // If the first token is "ID", then it will match "id" or "id [ <expr> ]".
             tokenQueue.poll();
-            variable = (String) tokenQueue.poll();
+            String variable = (String) tokenQueue.poll();
 
             if (tokenQueue.peek() == Core.LBRACE) {
                 // if the third token is symbol "[", then it will match "id [ <expr> ]"
                 tokenQueue.poll();
-                leftBracket = Core.LBRACE;
-
-                expression = new Expression();
-                expression.parse(tokenQueue, functionMap);
+                Expression expression = Expression.parse(tokenQueue, functionMap);
 
                 if (tokenQueue.poll() != Core.RBRACE) {
-                    System.out.println("ERROR: missing symbol ']'!!!");
-                    System.exit(1);
+                    throw new CoreException("ERROR: missing symbol ']'!!!");
                 }
-                rightBracket = Core.RBRACE;
+                return new ArrayFactor(variable, expression);
             }
+            return new VariableFactor(variable);
 
         } else if (tokenQueue.peek() == Core.CONST) {
             // If the first token is "const", then it only matches "const"
             tokenQueue.poll();
-            constant = String.valueOf(tokenQueue.poll());
+            return new ConstFactor((Integer) tokenQueue.poll());
 
         } else if (tokenQueue.peek() == Core.LPAREN) {
             // If the first token is symbol "(", then it only matches "( <expr> )"
             tokenQueue.poll();
-            leftParenthesis = Core.LPAREN;
-
-            expression = new Expression();
-            expression.parse(tokenQueue, functionMap);
+            Expression expression = Expression.parse(tokenQueue, functionMap);
 
             if (tokenQueue.poll() != Core.RPAREN) {
-                System.out.println("ERROR: missing symbol ')'!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: missing symbol ')'!!!");
             }
-            rightParenthesis = Core.RPAREN;
+            return new ParenthesizedFactor(expression);
 
         } else {
-            System.out.println("ERROR: There are some unacceptable chars in the '<factor>' statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: There are some unacceptable chars in the '<factor>' statement!!!");
         }
     }
 
+    /**
+     * Create "<factor> ::= const" for constant folding
+     *
+     * @param value the value of constant
+     * @return the new factor
+     */
+    static Factor fromConstant(int value) {
+        return new ConstFactor(value);
+    }
+
     /**
      * It will perform a Semantic Checking.
      * There are several types of Semantic Errors need to be checked.
@@ -88,93 +90,126 @@ public class Factor {
      *
      * @param variableStack contains all declared variables
      */
-    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
-        if (constant != null || leftParenthesis != null) {
-            return;
-        }
-
-        boolean isVariableExist = false;
-        Variable variableAttribute = null;
-        for (Variable temp : variableStack) {
-            if (temp.getName().equals(variable)) {
-                isVariableExist = true;
-                variableAttribute = temp;
-                break;
-            }
-        }
-        if (!isVariableExist) {
-            System.out.println("ERROR: the variable " + variable + " has not been declared before!!!");
-            System.exit(1);
-        }
-
-        if (variableAttribute.getType() == Core.INTEGER && leftBracket != null) {
-            System.out.println("ERROR: the variable " + variable + " has to be Array type to use symbol '[]'!!!");
-            System.exit(1);
-        }
-
-        if (expression != null) {
-            expression.semanticChecking(variableStack, functionCheckingMap);
-        }
-    }
+    void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap);
 
     /**
      * Using the recursive descent approach to walk over the parse tree.
      * This function will execute its children and perform any action needed on the result of that execution.
-     * <p>
-     * There are four cases "<factor> ::= id | id [ <expr> ] | const | ( <expr> )"
-     * If variable "constant" != null, it indicates "<factor> ::= const"
-     * If variable "leftParenthesis" != null, it indicates "<factor> ::= ( <expr> )"
-     * If variable "leftBracket" != null, it indicates "<factor> ::= id [ <expr> ]"
-     * Otherwise, it will be "<factor> ::= id"
      *
      * @param memory simulating memory (Stack and Heap) for local and global variables
      * @return the result of "<factor>"
      */
-    public int execute(Memory memory, Map<String, Function> functionMap) {
-        int result = 0;
-        if (constant != null) {
-            // Handle case for "<factor> ::= const"
-            result = Integer.parseInt(constant);
+    int execute(Memory memory, Map<String, Function> functionMap);
 
-        } else if (leftParenthesis != null) {
-            // Handle case for "<factor> ::= ( <expr> )"
-            result = expression.execute(memory, functionMap);
+    /**
+     * @return true if it is "<factor> ::= const"
+     */
+    default boolean isConstant() {
+        return false;
+    }
 
-        } else if (leftBracket != null) {
-            // Handle case for "<factor> ::= id [ <expr> ]"
-            int index = expression.execute(memory, functionMap);
-            result = memory.findArrayByIndex(variable, index);
+    /**
+     * @return the value of "<factor> ::= const", only called when isConstant() is true
+     */
+    default int getConstantValue() {
+        throw new IllegalStateException("not a constant: " + getClass().getName());
+    }
 
-        } else {
-            // Handle case for "<factor> ::= id"
-            result = memory.find(variable);
-        }
+    /**
+     * Constant folding: "( <expr> )" becomes "const" if the expression has been folded into a constant.
+     *
+     * @return the factor replacing this one, or this factor itself
+     */
+    Factor fold();
 
-        return result;
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    default int countNodes() {
+        return 1;
     }
 
     /**
-     * produce "pretty" code with the appropriate indentation
+     * Check whether the value of "<factor>" never changes inside the loop.
      *
-     * @param indent the number of spaces which need to be print
+     * @param loop information about the loop
+     * @return true if it is loop-invariant
      */
-    public void print(int indent) {
-        if (variable != null) {
-            System.out.print(variable);
-            if (leftBracket != null) {
-                System.out.print("[");
-                expression.print(0);
-                System.out.print("]");
-            }
+    boolean isInvariant(LoopAnalysis loop);
 
-        } else if (constant != null) {
-            System.out.print(constant);
-        } else {
-            System.out.print("(");
-            expression.print(0);
-            System.out.print(")");
-        }
+    /**
+     * Loop-invariant code motion. If the variable read is invariant in one of the loops,
+     * it will only be executed once for each time entering the outermost one of these loops.
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    default void hoist(List<LoopAnalysis> loops) {
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop, so the range check can be done once when entering the loop.
+     *
+     * @param loop information about the loop
+     */
+    default void markBoundsChecks(LoopAnalysis loop) {
+    }
 
+    /**
+     * @param name variable name
+     * @return true if it is "<factor> ::= id", where id is the given integer variable
+     */
+    default boolean isIntegerVariable(String name) {
+        return false;
     }
 
+    /**
+     * @return the variable name if it is "<factor> ::= id" and id is an integer variable, otherwise null
+     */
+    default String getIntegerVariable() {
+        return null;
+    }
+
+    /**
+     * Common subexpression elimination for "id [ <expr> ]", see Expression.eliminateCommonSubexpressions()
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    default void eliminateCommonSubexpressions(AvailableExpressions available) {
+    }
+
+    /**
+     * Write "<factor>" as a key for common subexpression elimination, like "a[(i+1)]".
+     *
+     * @param key the key
+     */
+    void appendKey(StringBuilder key);
+
+    /**
+     * @param variables all the variables read by "<factor>" are added
+     * @return true if any array element is read
+     */
+    boolean collectReads(Set<String> variables);
+
+    /**
+     * Build the IR of "<factor>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     * @return the value of "<factor>"
+     */
+    IrInstruction lower(IrBuilder builder);
+
+    /**
+     * Partial evaluation: copy this node, where every static variable is replaced by its value, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual factor
+     */
+    Factor substitute(PartialEvaluator evaluator);
+
+    /**
+     * produce "pretty" code with the appropriate indentation
+     *
+     * @param indent the number of spaces which need to be print
+     */
+    void print(int indent);
 }
@@ -18,6 +18,31 @@ public class Function {
     private StatementSequence statementSequence;
     private Core endKeyword;
 
+    // for "--inline", see InlineAnalysis.java
+    private InlineAnalysis inlineAnalysis;
+    // for "--memoize": the indexes of the formal parameters written by the body, null if the calls can not be memoized
+    private int[] writtenParameters;
+    // for "--tail-calls": true if the frame is rebound by the tail calls of this function
+    private boolean isFrameReused;
+    // for "--elide-counts": true if binding and releasing the formal parameters does not change any reference count
+    private boolean isParameterCountElided;
+    // for "--inline": true if the body runs in the frame of a caller at some call site
+    private boolean isInlined;
+
+    /**
+     * Thrown by a tail call after the frame has been rebound, caught by execute() to run the body again.
+     * There is only one instance without stack trace, so throwing it is cheap.
+     */
+    public static final class TailCall extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private TailCall() {
+            super("tail call", null, false, false);
+        }
+    }
+
+    public static final TailCall TAIL_CALL = new TailCall();
+
     /**
      * The grammar is: <function> ::= procedure ID ( <parameters> ) is <stmt-seq> end
      *
@@ -25,54 +50,46 @@ public class Function {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.PROCEDURE) {
-            System.out.println("ERROR: missing keyword 'procedure'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'procedure'!!!");
         }
         functionKeyword = Core.PROCEDURE;
 
         if (tokenQueue.poll() != Core.ID) {
-            System.out.println("ERROR: missing procedure name!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing procedure name!!!");
         }
         functionName = String.valueOf(tokenQueue.poll());
 
         functionMap.put(functionName, null);
 
         if (tokenQueue.poll() != Core.LPAREN) {
-            System.out.println("ERROR: missing symbol '('!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol '('!!!");
         }
 
         if (tokenQueue.peek() == Core.RPAREN) {
-            System.out.println("ERROR: function " + functionName + " is missing formal parameter!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: function " + functionName + " is missing formal parameter!!!");
         }
 
         parameter = new Parameter();
         parameter.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.RPAREN) {
-            System.out.println("ERROR: missing symbol ')'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol ')'!!!");
         }
 
         if (tokenQueue.poll() != Core.IS) {
-            System.out.println("ERROR: missing keyword 'is'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'is'!!!");
         }
         isKeyword = Core.IS;
 
         if (tokenQueue.peek() == Core.END) {
-            System.out.println("ERROR: function " + functionName + " is missing method body. There is no <stmt-seq>!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: function " + functionName + " is missing method body. There is no <stmt-seq>!!!");
         }
 
         statementSequence = new StatementSequence();
         statementSequence.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.END) {
-            System.out.println("ERROR: missing keyword 'end'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'end'!!!");
         }
         endKeyword = Core.END;
     }
@@ -89,8 +106,7 @@ public class Function {
     public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
         for (String existFunctionName : functionCheckingMap.keySet()) {
             if (existFunctionName.equals(functionName)) {
-                System.out.println("ERROR: function should have a unique name. Function name " + functionName + " has been used!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: function should have a unique name. Function name " + functionName + " has been used!!!");
             }
         }
 
@@ -103,6 +119,10 @@ public class Function {
         if (statementSequence != null) {
             statementSequence.semanticChecking(variableStack, functionCheckingMap);
         }
+
+        if (Options.getInstance().isTailCalls()) {
+            markTailCalls();
+        }
     }
 
     /**
@@ -113,12 +133,269 @@ public class Function {
      */
     public void execute(Memory memory, Queue<String> argumentQueue, Map<String, Function> functionMap) {
         memory.setInitializeFormalParams(true);
+        memory.setParameterCountElided(isParameterCountElided);
         parameter.execute(memory, argumentQueue, functionMap, false);
         memory.setInitializeFormalParams(false);
+        memory.setParameterCountElided(false);
+
+        while (true) {
+            try {
+                statementSequence.execute(memory, functionMap);
+                return;
+            } catch (TailCall e) {
+                // The frame has been rebound by a tail call, run the body again.
+            }
+        }
+    }
+
+
+    /**
+     * Constant folding for the function body.
+     */
+    public void fold() {
+        statementSequence.fold();
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + parameter.countNodes() + statementSequence.countNodes();
+    }
+
+    /**
+     * Loop-invariant code motion for all the loops in the function body.
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(TemporarySlots slots) {
+        statementSequence.hoist(new ArrayList<>(), slots);
+    }
+
+    /**
+     * Common subexpression elimination for the function body.
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void eliminateCommonSubexpressions(TemporarySlots slots) {
+        statementSequence.eliminateCommonSubexpressions(new AvailableExpressions(slots));
+    }
+
+    /**
+     * Build the IR of the function body, see IrBuilder.java
+     * A local variable with the same name as a global variable or a formal parameter stays in Memory.
+     *
+     * @param builder         the IR builder
+     * @param globalVariables the names of all the global variables
+     */
+    public void lower(IrBuilder builder, Set<String> globalVariables) {
+        IrFunction irFunction = builder.getProgram().getFunction(functionName);
+        irFunction.getParameters().addAll(parameter.getNames());
+
+        Set<String> sharedVariables = new HashSet<>();
+        Set<String> declaredVariables = new HashSet<>(globalVariables);
+        declaredVariables.addAll(parameter.getNames());
+        statementSequence.collectVariables(sharedVariables, declaredVariables);
+
+        builder.beginFunction(irFunction, sharedVariables);
+        statementSequence.lower(builder);
+        builder.endFunction();
+    }
+
+    /**
+     * Decide which calls in the function body can be inlined, the local variables are the formal parameters
+     * and all the variables declared in the body.
+     *
+     * @param functionMap all the functions
+     */
+    public void inline(Map<String, Function> functionMap) {
+        Set<String> localVariables = new HashSet<>(getInlineAnalysis().getDeclaredVariables());
+        localVariables.addAll(parameter.getNames());
+        statementSequence.inline(functionMap, localVariables);
+    }
+
+    /**
+     * Liveness-based early release of the local variables, see StatementSequence.markLastUses()
+     */
+    public void markLastUses() {
+        statementSequence.markLastUses();
+    }
+
+    /**
+     * @return information about the function body, it is computed at the first time
+     */
+    public InlineAnalysis getInlineAnalysis() {
+        if (inlineAnalysis == null) {
+            inlineAnalysis = new InlineAnalysis();
+            for (String name : parameter.getNames()) {
+                inlineAnalysis.addName(name);
+            }
+            statementSequence.collectInlineInfo(inlineAnalysis);
+        }
+        return inlineAnalysis;
+    }
+
+    /**
+     * @param threshold the largest number of nodes in the body which can be inlined
+     * @return true if the body is small enough and can be run in the frame of the caller, see InlineAnalysis.java
+     */
+    public boolean isInlinable(int threshold) {
+        return getInlineAnalysis().isInlinable() && statementSequence.countNodes() <= threshold;
+    }
 
-        statementSequence.execute(memory,functionMap);
+    /**
+     * Run the body of an inlined call, the formal parameters have been bound by Call.execute()
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    public void executeInlined(Memory memory, Map<String, Function> functionMap) {
+        statementSequence.execute(memory, functionMap);
     }
 
+    /**
+     * Memoization (option "--memoize"): the calls of this function are memoized if its result only depends on
+     * the contents of its arguments, see InlineAnalysis.isMemoizable() and Memoization.java
+     *
+     * @param globalVariables all the global variables
+     */
+    public void markMemoizable(Set<String> globalVariables) {
+        List<String> parameterNames = parameter.getNames();
+        InlineAnalysis analysis = getInlineAnalysis();
+        if (!analysis.isMemoizable(parameterNames, globalVariables)) {
+            return;
+        }
+
+        List<Integer> written = new ArrayList<>();
+        for (int i = 0; i < parameterNames.size(); i++) {
+            if (analysis.getWrittenVariables().contains(parameterNames.get(i))) {
+                written.add(i);
+            }
+        }
+        writtenParameters = new int[written.size()];
+        for (int i = 0; i < writtenParameters.length; i++) {
+            writtenParameters[i] = written.get(i);
+        }
+    }
+
+    public boolean isMemoizable() {
+        return writtenParameters != null;
+    }
+
+    /**
+     * @return the indexes of the formal parameters written by the body, empty if the function is read-only
+     */
+    public int[] getWrittenParameters() {
+        return writtenParameters;
+    }
+
+    public List<String> getParameterNames() {
+        return parameter.getNames();
+    }
+
+    /**
+     * Tail-call elimination (option "--tail-calls"): a call of this function as the last statement of its body
+     * (or of a branch of the last "if") rebinds the formal parameters in the current frame and runs the body again,
+     * instead of pushing a new frame, see Memory.rebindFrame().
+     * <p>
+     * It is only done if the body never makes a variable point to another array, and the tail calls are its only calls.
+     * Then every array in the frame is still referenced by the caller, so popping the frame earlier never collects anything,
+     * and the "gc:" output is the same.
+     */
+    private void markTailCalls() {
+        List<Call> tailCalls = new ArrayList<>();
+        statementSequence.findTailCalls(functionName, tailCalls);
+        InlineAnalysis analysis = getInlineAnalysis();
+        if (tailCalls.isEmpty() || analysis.rebindsArrays() || analysis.getCallCount() != tailCalls.size()) {
+            return;
+        }
+
+        List<String> parameterNames = parameter.getNames();
+        for (Call call : tailCalls) {
+            if (call.getArgumentNames().size() != parameterNames.size()) {
+                return;
+            }
+        }
+        for (Call call : tailCalls) {
+            call.setTailCall(parameterNames);
+        }
+        isFrameReused = true;
+    }
+
+    /**
+     * Elision of reference counts (option "--elide-counts"): binding a formal parameter increases the count of
+     * the array of its argument, and popping the frame decreases it again. The pair is balanced, and both can be skipped
+     * without changing any "gc:" line, if nothing running in the call can make the argument lose its other reference:
+     * the argument is a variable of the caller (which does not run until the call returns) or a global variable,
+     * so this function and every function it calls (directly or not) must only make their own local variables
+     * point to new arrays (see InlineAnalysis.rebindsOnlyLocals()). Then every formal parameter still points to
+     * the array of its argument when the frame is popped, and the count of that array never reaches 0 during the call.
+     * A frame reused by tail calls is released by Memory.rebindFrame(), so it always counts its formal parameters.
+     *
+     * @param functionMap all the functions
+     */
+    public void markBalancedParameters(Map<String, Function> functionMap) {
+        if (isFrameReused) {
+            return;
+        }
+        Set<String> visited = new HashSet<>();
+        Deque<Function> pending = new ArrayDeque<>();
+        visited.add(functionName);
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            InlineAnalysis analysis = pending.pop().getInlineAnalysis();
+            if (!analysis.rebindsOnlyLocals()) {
+                return;
+            }
+            for (String calledFunction : analysis.getCalledFunctions()) {
+                if (visited.add(calledFunction)) {
+                    pending.push(functionMap.get(calledFunction));
+                }
+            }
+        }
+        isParameterCountElided = true;
+    }
+
+    /**
+     * @return the number of formal parameters at the bottom of the frame which are not counted, see markBalancedParameters()
+     */
+    public int getUncountedParameterCount() {
+        return isParameterCountElided ? parameter.getNames().size() : 0;
+    }
+
+    /**
+     * The body runs in the frame of a caller at some call site, see Call.inline()
+     */
+    public void markInlined() {
+        isInlined = true;
+    }
+
+    /**
+     * Escape analysis for "--frame-allocate": a local array variable escapes the frame if it is shared by "array id"
+     * (on either side) or passed to a call, because then another variable may still point to its array after the frame
+     * is popped. A variable declared twice, or with the same name as a formal parameter or a global variable, escapes too,
+     * since its name may refer to another variable. The arrays of the other local array variables die with the frame,
+     * so they are allocated in the frame (see Memory.initializeFrameArray()) without counting their references,
+     * and freed all at once when the frame is popped.
+     * An inlined body runs in the frame of its caller, which may live much longer, so it is never marked.
+     *
+     * @param globalVariables the names of all the global variables
+     */
+    public void markFrameAllocations(Set<String> globalVariables) {
+        if (isInlined) {
+            return;
+        }
+        Set<String> sharedVariables = new HashSet<>();
+        Set<String> declaredVariables = new HashSet<>(globalVariables);
+        declaredVariables.addAll(parameter.getNames());
+        statementSequence.collectVariables(sharedVariables, declaredVariables);
+
+        declaredVariables.removeAll(globalVariables);
+        declaredVariables.removeAll(parameter.getNames());
+        declaredVariables.removeAll(sharedVariables);
+        if (!declaredVariables.isEmpty()) {
+            statementSequence.markFrameAllocations(declaredVariables);
+        }
+    }
 
     /**
      * produce "pretty" code with the appropriate indentation
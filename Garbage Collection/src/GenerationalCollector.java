@@ -0,0 +1,220 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generational garbage collection, option "--gc=generational".
+ * <p>
+ * Most arrays are small and die young (created in a loop or a function body), and a few global arrays live until
+ * the end. A new array is put into the nursery, which has room for "--gc-threshold=N" arrays: allocating only bumps
+ * the top of the nursery. When the nursery is full, a minor collection marks the arrays reachable from the frames
+ * (see Memory.findStackRoots()) and from the remembered set, and frees the other young arrays, printing "gc:n".
+ * An array which has survived PROMOTION_AGE minor collections is promoted to the old space.
+ * <p>
+ * A minor collection does not scan the global variables. Instead, the remembered set counts the global variables
+ * pointing to each young array: every store into a global variable (by "new integer" or by "array id",
+ * see Memory.copyBySharing()) counts the new array and uncounts the old one, which leaves the set at 0.
+ * So a young array reachable from a global variable is never freed by a minor collection, and one which is not
+ * any more is freed by the next one.
+ * <p>
+ * When the old space has grown to twice its size after the last major collection, a major collection marks
+ * everything reachable (see Memory.findRoots()) and frees the unreachable arrays of both spaces. The numbers of minor
+ * and major collections and the promotion rate are printed by "--gc-stats".
+ *
+ * @author Zhao Liu
+ */
+public class GenerationalCollector implements Collector {
+    public static final int PROMOTION_AGE = 2;
+
+    // the nursery: the young arrays and the number of minor collections each one has survived
+    private Memory.Value[] nursery;
+    private int[] ages;
+    private int top = 0;
+    // the young arrays pointed to by global variables, and the number of those global variables
+    private Map<Memory.Value, Integer> rememberedSet = new HashMap<>();
+    private List<Memory.Value> oldSpace = new ArrayList<>();
+    // a major collection runs when the old space reaches this size
+    private int majorThreshold;
+    // the arrays allocated in the frames, alive but in neither space
+    private int frameObjects = 0;
+
+    private long minorCollections = 0;
+    private long majorCollections = 0;
+    private long allocated = 0;
+    private long promoted = 0;
+
+    /**
+     * @param threshold the number of arrays in the nursery
+     */
+    public GenerationalCollector(int threshold) {
+        nursery = new Memory.Value[threshold];
+        ages = new int[threshold];
+        majorThreshold = threshold;
+    }
+
+    /**
+     * Collect first if the nursery is full, so the arrays freed are printed before the new one.
+     * If every young array has survived, they are all promoted to make room.
+     */
+    public void allocate(Memory memory, Memory.Value value) {
+        if (top == nursery.length) {
+            minorCollection(memory);
+            if (top == nursery.length) {
+                for (int i = 0; i < top; i++) {
+                    promote(nursery[i]);
+                }
+                clearNursery(0);
+            }
+            if (oldSpace.size() >= majorThreshold) {
+                collect(memory);
+            }
+        }
+        nursery[top] = value;
+        ages[top] = 0;
+        top++;
+        allocated++;
+        memory.getOutput().println("gc:" + totalObjects());
+    }
+
+    public void allocateInFrame(Memory memory, Memory.Value value) {
+        frameObjects++;
+        memory.getOutput().println("gc:" + totalObjects());
+    }
+
+    public void releaseFrame(Memory memory, List<Memory.Value> values) {
+        frameObjects -= values.size();
+        memory.getOutput().println("gc:" + totalObjects());
+    }
+
+    /**
+     * The write barrier: only the young arrays stored into global variables need to be remembered.
+     */
+    public void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal) {
+        if (!isGlobal) {
+            return;
+        }
+        if (newValue != null && newValue.generation == 0) {
+            rememberedSet.merge(newValue, 1, Integer::sum);
+        }
+        if (oldValue != null && oldValue.generation == 0) {
+            rememberedSet.computeIfPresent(oldValue, (value, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    public void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal) {
+    }
+
+    /**
+     * A major collection.
+     */
+    public void collect(Memory memory) {
+        majorCollections++;
+        List<Memory.Value> roots = new ArrayList<>();
+        memory.findRoots(roots);
+        for (Memory.Value root : roots) {
+            root.marked = true;
+        }
+
+        int totalObjects = totalObjects();
+        List<Memory.Value> alive = new ArrayList<>();
+        for (Memory.Value value : oldSpace) {
+            if (value.marked) {
+                alive.add(value);
+            } else {
+                memory.free(value);
+                totalObjects--;
+                memory.getOutput().println("gc:" + totalObjects);
+            }
+        }
+        oldSpace = alive;
+        int survivors = 0;
+        for (int i = 0; i < top; i++) {
+            if (nursery[i].marked) {
+                nursery[survivors] = nursery[i];
+                ages[survivors] = ages[i];
+                survivors++;
+            } else {
+                rememberedSet.remove(nursery[i]);
+                memory.free(nursery[i]);
+                totalObjects--;
+                memory.getOutput().println("gc:" + totalObjects);
+            }
+        }
+        clearNursery(survivors);
+
+        for (Memory.Value root : roots) {
+            root.marked = false;
+        }
+        majorThreshold = Math.max(nursery.length, oldSpace.size() * 2);
+    }
+
+    /**
+     * Free the young arrays which are not reachable from the frames or the remembered set,
+     * and promote the ones which are old enough. The old space is not scanned.
+     */
+    private void minorCollection(Memory memory) {
+        minorCollections++;
+        List<Memory.Value> roots = new ArrayList<>(rememberedSet.keySet());
+        memory.findStackRoots(roots);
+        for (Memory.Value root : roots) {
+            root.marked = true;
+        }
+
+        int totalObjects = totalObjects();
+        int survivors = 0;
+        for (int i = 0; i < top; i++) {
+            Memory.Value value = nursery[i];
+            if (!value.marked) {
+                memory.free(value);
+                totalObjects--;
+                memory.getOutput().println("gc:" + totalObjects);
+            } else if (ages[i] + 1 >= PROMOTION_AGE) {
+                promote(value);
+            } else {
+                nursery[survivors] = value;
+                ages[survivors] = ages[i] + 1;
+                survivors++;
+            }
+        }
+        clearNursery(survivors);
+
+        for (Memory.Value root : roots) {
+            root.marked = false;
+        }
+    }
+
+    private void promote(Memory.Value value) {
+        value.generation = 1;
+        rememberedSet.remove(value);
+        oldSpace.add(value);
+        promoted++;
+    }
+
+    /**
+     * Only the first survivors of the nursery are still young, the rest is cleared for the JVM.
+     */
+    private void clearNursery(int survivors) {
+        for (int i = survivors; i < top; i++) {
+            nursery[i] = null;
+        }
+        top = survivors;
+    }
+
+    private int totalObjects() {
+        return top + oldSpace.size() + frameObjects;
+    }
+
+    /**
+     * Print the collections and the promotion rate,
+     * like "gc generational: 12 minor, 1 major, 30 of 800 arrays promoted (3.8%)"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        output.println("gc generational: " + minorCollections + " minor, " + majorCollections + " major, "
+                + promoted + " of " + allocated + " arrays promoted ("
+                + String.format("%.1f", allocated == 0 ? 0.0 : promoted * 100.0 / allocated) + "%)");
+    }
+}
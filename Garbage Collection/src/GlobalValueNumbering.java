@@ -0,0 +1,162 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Global value numbering: an instruction computing the same operation on the same values as an instruction
+ * which dominates it is replaced by that instruction.
+ * <p>
+ * The dominator tree is computed with "A Simple, Fast Dominance Algorithm" (Cooper, Harvey and Kennedy),
+ * and then walked from the entry with a scoped hash table: the instructions of a block can only be seen
+ * by the blocks it dominates.
+ * Since the IR is in SSA form, a value never changes after it is defined, so there is nothing to kill,
+ * unlike AvailableExpressions.java for "--cse". Loads from Memory are not numbered.
+ *
+ * @author Zhao Liu
+ */
+public class GlobalValueNumbering extends IrPass {
+
+    @Override
+    public String getName() {
+        return "gvn";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        List<IrBlock> order = function.reversePostorder();
+        Map<IrBlock, IrBlock> dominators = computeDominators(order);
+        Map<IrBlock, List<IrBlock>> children = new HashMap<>();
+        for (IrBlock block : order) {
+            IrBlock dominator = dominators.get(block);
+            if (dominator != block) {
+                children.computeIfAbsent(dominator, key -> new ArrayList<>()).add(block);
+            }
+        }
+
+        Map<String, IrInstruction> table = new HashMap<>();
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+        // each item is a block, and the keys it added to the table (null before its instructions are numbered)
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{function.getEntry(), null});
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            IrBlock block = (IrBlock) item[0];
+            if (item[1] != null) {
+                // all the blocks dominated by it are finished
+                for (Object key : (List<?>) item[1]) {
+                    table.remove(key);
+                }
+                continue;
+            }
+
+            List<String> keys = new ArrayList<>();
+            number(block.getPhis(), table, replacements, keys);
+            number(block.getInstructions(), table, replacements, keys);
+            item[1] = keys;
+            stack.push(item);
+            for (IrBlock child : children.getOrDefault(block, new ArrayList<>())) {
+                stack.push(new Object[]{child, null});
+            }
+        }
+
+        function.replaceOperands(replacements);
+    }
+
+    private void number(List<IrInstruction> instructions, Map<String, IrInstruction> table,
+                        Map<IrInstruction, IrInstruction> replacements, List<String> keys) {
+        List<IrInstruction> removed = new ArrayList<>();
+        for (IrInstruction instruction : instructions) {
+            if (instruction.getOpcode().ordinal() > IrInstruction.Opcode.PHI.ordinal()) {
+                continue;
+            }
+            String key = getKey(instruction, replacements);
+            IrInstruction same = table.get(key);
+            if (same != null) {
+                replacements.put(instruction, same);
+                removed.add(instruction);
+            } else {
+                table.put(key, instruction);
+                keys.add(key);
+            }
+        }
+        instructions.removeAll(removed);
+    }
+
+    /**
+     * @return a string which is the same for two instructions computing the same value, like "add v1 v2"
+     */
+    private String getKey(IrInstruction instruction, Map<IrInstruction, IrInstruction> replacements) {
+        StringBuilder key = new StringBuilder(instruction.getOpcode().toString());
+        if (instruction.getOpcode() == IrInstruction.Opcode.CONST) {
+            key.append(' ').append(instruction.getConstant());
+        }
+
+        List<Integer> operands = new ArrayList<>();
+        for (IrInstruction operand : instruction.getOperands()) {
+            operands.add(IrFunction.resolve(replacements, operand).getId());
+        }
+        if (instruction.isCommutative()) {
+            operands.sort(null);
+        }
+        for (int operand : operands) {
+            key.append(" v").append(operand);
+        }
+
+        if (instruction.getOpcode() == IrInstruction.Opcode.PHI) {
+            // Two phis are the same only in the same block, with the same value from each predecessor.
+            key.append(" b").append(instruction.getBlock().getId());
+            for (IrBlock predecessor : instruction.getPhiBlocks()) {
+                key.append(" b").append(predecessor.getId());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param order all the reachable blocks in reverse postorder, the entry first
+     * @return the immediate dominator of every block, the entry is its own dominator
+     */
+    private Map<IrBlock, IrBlock> computeDominators(List<IrBlock> order) {
+        Map<IrBlock, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            indexes.put(order.get(i), i);
+        }
+
+        Map<IrBlock, IrBlock> dominators = new HashMap<>();
+        dominators.put(order.get(0), order.get(0));
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = false;
+            for (int i = 1; i < order.size(); i++) {
+                IrBlock block = order.get(i);
+                IrBlock dominator = null;
+                for (IrBlock predecessor : block.getPredecessors()) {
+                    if (!dominators.containsKey(predecessor)) {
+                        continue;
+                    }
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator, dominators, indexes);
+                }
+                if (dominators.get(block) != dominator) {
+                    dominators.put(block, dominator);
+                    isChanged = true;
+                }
+            }
+        }
+        return dominators;
+    }
+
+    private IrBlock intersect(IrBlock first, IrBlock second, Map<IrBlock, IrBlock> dominators, Map<IrBlock, Integer> indexes) {
+        while (first != second) {
+            while (indexes.get(first) > indexes.get(second)) {
+                first = dominators.get(first);
+            }
+            while (indexes.get(second) > indexes.get(first)) {
+                second = dominators.get(second);
+            }
+        }
+        return first;
+    }
+}
@@ -1,5 +1,7 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -12,7 +14,7 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class If {
+public final class If implements Statement {
     private Core ifKeyword;
     private Condition condition;
     private Core thenKeyword;
@@ -21,6 +23,9 @@ public class If {
     private StatementSequence elseStatementSequence;
     private Core endKeyword;
 
+    // for "--profile-write" and "--profile-use", see Profile.java
+    private int profileId;
+
     /**
      * The grammar is: <if> ==> if <cond> then <stmt-seq> end | if <cond> then <stmt-seq> else <stmt-seq> end
      *
@@ -28,17 +33,15 @@ public class If {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.IF) {
-            System.out.println("ERROR: missing keyword 'if' for if statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'if' for if statement!!!");
         }
         ifKeyword = Core.IF;
+        profileId = Profile.getInstance().newNode(Profile.IF);
 
-        condition = new Condition();
-        condition.parse(tokenQueue, functionMap);
+        condition = Condition.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.THEN) {
-            System.out.println("ERROR: missing keyword 'then' for if statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'then' for if statement!!!");
         }
         thenKeyword = Core.THEN;
 
@@ -53,8 +56,7 @@ public class If {
             elseStatementSequence.parse(tokenQueue, functionMap);
 
             if (tokenQueue.poll() != Core.END) {
-                System.out.println("ERROR: missing keyword 'end' for if statement!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: missing keyword 'end' for if statement!!!");
             }
             endKeyword = Core.END;
 
@@ -63,8 +65,7 @@ public class If {
             endKeyword = Core.END;
 
         } else {
-            System.out.println("ERROR: wrong if statement structure, missing keyword 'else' or 'end'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: wrong if statement structure, missing keyword 'else' or 'end'!!!");
         }
     }
 
@@ -113,6 +114,7 @@ public class If {
         int initialSize = memory.localSize();
 
         boolean conditionValue = condition.execute(memory, functionMap);
+        Profile.getInstance().count(profileId, conditionValue ? 0 : 1);
         if (elseKeyword == null) {
             // Handle case for "<if> ::= if <cond> then <stmt-seq> end"
             // If the result of "condition" is true, run "<stmt-seq>"
@@ -137,6 +139,297 @@ public class If {
 
     }
 
+    /**
+     * Constant folding and branch pruning.
+     * If the condition is a constant, the branch which can never run is removed,
+     * and the condition is replaced by "0 = 0" (always true) for the branch left.
+     * The scope of the branch is kept, so variables declared inside are still popped after "if".
+     */
+    public void fold() {
+        condition.fold();
+        statementSequence.fold();
+        if (elseStatementSequence != null) {
+            elseStatementSequence.fold();
+        }
+
+        if (!condition.isConstant()) {
+            return;
+        }
+
+        if (condition.getConstantValue()) {
+            condition = Condition.alwaysTrue();
+            elseKeyword = null;
+            elseStatementSequence = null;
+
+        } else if (elseStatementSequence != null) {
+            condition = Condition.alwaysTrue();
+            statementSequence = elseStatementSequence;
+            elseKeyword = null;
+            elseStatementSequence = null;
+        }
+    }
+
+    /**
+     * @return true if this "if" statement can never run any statement
+     */
+    public boolean isNoOp() {
+        return condition.isConstant() && !condition.getConstantValue() && elseStatementSequence == null;
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        int count = 1 + condition.countNodes() + statementSequence.countNodes();
+        if (elseStatementSequence != null) {
+            count += elseStatementSequence.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Record what the statements write, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        statementSequence.collectWrites(loop);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.collectWrites(loop);
+        }
+    }
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+        condition.hoist(loops);
+        statementSequence.hoist(loops, slots);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.hoist(loops, slots);
+        }
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        condition.markBoundsChecks(loop);
+        statementSequence.markBoundsChecks(loop);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.markBoundsChecks(loop);
+        }
+    }
+
+    /**
+     * Common subexpression elimination, "if" ends the straight-line part, and each branch starts a new one.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        available.clear();
+        statementSequence.eliminateCommonSubexpressions(available.newPart());
+        if (elseStatementSequence != null) {
+            elseStatementSequence.eliminateCommonSubexpressions(available.newPart());
+        }
+    }
+
+    /**
+     * Build the IR of "<if>", see IrBuilder.java
+     * The condition branches to the "then" block and the "else" block (or the block after "if"),
+     * and both of them jump to the block after "if".
+     * <p>
+     * The blocks are laid out hot first: with a profile (see Profile.java) where the then branch is taken less often,
+     * the else branch (or the block after "if") is created and lowered right after the condition,
+     * and the then branch is moved behind it.
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        IrInstruction mark = builder.enterScope();
+
+        boolean isThenCold = Profile.getInstance().isMostlyNotTaken(profileId);
+        IrBlock thenBlock;
+        IrBlock elseBlock = null;
+        IrBlock joinBlock;
+        if (isThenCold && elseKeyword == null) {
+            joinBlock = builder.newBlock();
+            thenBlock = builder.newBlock();
+        } else if (isThenCold) {
+            elseBlock = builder.newBlock();
+            thenBlock = builder.newBlock();
+            joinBlock = builder.newBlock();
+        } else {
+            thenBlock = builder.newBlock();
+            elseBlock = elseKeyword != null ? builder.newBlock() : null;
+            joinBlock = builder.newBlock();
+        }
+        condition.lowerBranch(builder, thenBlock, elseBlock != null ? elseBlock : joinBlock);
+
+        if (isThenCold && elseBlock != null) {
+            lowerBranch(builder, elseBlock, elseStatementSequence, joinBlock);
+            lowerBranch(builder, thenBlock, statementSequence, joinBlock);
+        } else {
+            lowerBranch(builder, thenBlock, statementSequence, joinBlock);
+            if (elseBlock != null) {
+                lowerBranch(builder, elseBlock, elseStatementSequence, joinBlock);
+            }
+        }
+
+        builder.seal(joinBlock);
+        builder.setBlock(joinBlock);
+        builder.exitScope(mark);
+        builder.popScope();
+    }
+
+    private static void lowerBranch(IrBuilder builder, IrBlock block, StatementSequence sequence, IrBlock joinBlock) {
+        builder.seal(block);
+        builder.setBlock(block);
+        sequence.lower(builder);
+        builder.jump(joinBlock);
+    }
+
+    /**
+     * Find the local integer variables which have to stay in Memory, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        statementSequence.collectVariables(sharedVariables, declaredVariables);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.collectVariables(sharedVariables, declaredVariables);
+        }
+    }
+
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        condition.collectReads(analysis.getNames());
+        statementSequence.collectInlineInfo(analysis);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.collectInlineInfo(analysis);
+        }
+    }
+
+    /**
+     * Decide which calls can be inlined, see Call.inline()
+     *
+     * @param functionMap    all the functions
+     * @param localVariables the local variables of the caller
+     */
+    public void inline(Map<String, Function> functionMap, Set<String> localVariables) {
+        statementSequence.inline(functionMap, localVariables);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.inline(functionMap, localVariables);
+        }
+    }
+
+    /**
+     * The last statements of both branches are in tail position, see StatementSequence.findTailCalls()
+     *
+     * @param functionName the function whose body contains this statement
+     * @param tailCalls    the tail calls found are added
+     */
+    public void markFrameAllocations(Set<String> variables) {
+        statementSequence.markFrameAllocations(variables);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.markFrameAllocations(variables);
+        }
+    }
+
+    public void markLastUses() {
+        statementSequence.markLastUses();
+        if (elseStatementSequence != null) {
+            elseStatementSequence.markLastUses();
+        }
+    }
+
+    public void findTailCalls(String functionName, List<Call> tailCalls) {
+        statementSequence.findTailCalls(functionName, tailCalls);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.findTailCalls(functionName, tailCalls);
+        }
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     * With a static condition, only the branch taken is evaluated.
+     * Otherwise, the variables written in either branch become dynamic, and both branches are evaluated.
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        Condition residualCondition = condition.partialEvaluate(evaluator);
+        if (residualCondition.isConstant()) {
+            StatementSequence taken = residualCondition.getConstantValue() ? statementSequence : elseStatementSequence;
+            if (taken != null) {
+                evaluator.beginBlock();
+                taken.partialEvaluate(evaluator);
+                evaluator.emitBlock(evaluator.endBlock());
+            }
+            return;
+        }
+
+        LoopAnalysis writes = new LoopAnalysis(null);
+        statementSequence.collectWrites(writes);
+        if (elseStatementSequence != null) {
+            elseStatementSequence.collectWrites(writes);
+        }
+        evaluator.makeWritesDynamic(writes);
+
+        StatementSequence residualSequence = partialEvaluateBranch(evaluator, statementSequence);
+        StatementSequence residualElseSequence = null;
+        if (elseStatementSequence != null) {
+            residualElseSequence = partialEvaluateBranch(evaluator, elseStatementSequence);
+        }
+        evaluator.emit(fromBlock(residualCondition, residualSequence, residualElseSequence));
+    }
+
+    /**
+     * @param evaluator the partial evaluator
+     * @param sequence  one branch of this "if"
+     * @return the residual branch
+     */
+    private StatementSequence partialEvaluateBranch(PartialEvaluator evaluator, StatementSequence sequence) {
+        Map<String, Integer> entryValues = evaluator.enterDynamic();
+        evaluator.beginBlock();
+        sequence.partialEvaluate(evaluator);
+        List<Statement> block = evaluator.endBlock();
+        evaluator.exitDynamic(entryValues, block);
+        return evaluator.toSequence(block);
+    }
+
+    /**
+     * Create "if <cond> then <stmt-seq> else <stmt-seq> end" for partial evaluation
+     *
+     * @param condition             the condition
+     * @param statementSequence     the statements if the condition is true
+     * @param elseStatementSequence the statements if the condition is false, or null for no "else"
+     * @return the new if
+     */
+    public static If fromBlock(Condition condition, StatementSequence statementSequence, StatementSequence elseStatementSequence) {
+        If ifStmt = new If();
+        ifStmt.ifKeyword = Core.IF;
+        ifStmt.condition = condition;
+        ifStmt.thenKeyword = Core.THEN;
+        ifStmt.statementSequence = statementSequence;
+        if (elseStatementSequence != null) {
+            ifStmt.elseKeyword = Core.ELSE;
+            ifStmt.elseStatementSequence = elseStatementSequence;
+        }
+        ifStmt.endKeyword = Core.END;
+        return ifStmt;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
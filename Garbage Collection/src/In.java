@@ -10,13 +10,16 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class In {
+public final class In implements Statement {
     private Core inKeyword;
     private Core leftParenthesis;
     private Core rightParenthesis;
     private String variable;
     private Core semicolon;
 
+    // for "--licm", see LoopAnalysis.java
+    private Core variableType;
+
     /**
      * The grammar is: <in> ==> in ( id ) ;
      *
@@ -24,14 +27,12 @@ public class In {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionCheckingMap) {
         if (tokenQueue.poll() != Core.IN) {
-            System.out.println("ERROR: missing keyword 'in'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'in'!!!");
         }
         inKeyword = Core.IN;
 
         if (tokenQueue.poll() != Core.LPAREN) {
-            System.out.println("ERROR: missing symbol '('!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol '('!!!");
         }
         leftParenthesis = Core.LPAREN;
 
@@ -39,14 +40,12 @@ public class In {
         variable = (String) tokenQueue.poll();
 
         if (tokenQueue.poll() != Core.RPAREN) {
-            System.out.println("ERROR: missing symbol ')'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol ')'!!!");
         }
         rightParenthesis = Core.RPAREN;
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';'");
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';'");
         }
         semicolon = Core.SEMICOLON;
     }
@@ -65,12 +64,12 @@ public class In {
         for (Variable temp : variableStack) {
             if (temp.getName().equals(variable)) {
                 isLHSVariableExist = true;
+                variableType = temp.getType();
                 break;
             }
         }
         if (!isLHSVariableExist) {
-            System.out.println("ERROR: the variable " + variable + " has not been declared before!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: the variable " + variable + " has not been declared before!!!");
         }
     }
 
@@ -85,13 +84,92 @@ public class In {
         Integer value = inputDataQueue.poll();
 
         if (value == null) {
-            System.out.println("ERROR: all values in the .data file have already been used!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: all values in the .data file have already been used!!!");
         }
 
         memory.update(variable, value);
     }
 
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1;
+    }
+
+    /**
+     * Record what this statement writes, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        if (variableType == Core.ARRAY) {
+            // "in(id)" writes "id[0]" when id is an array.
+            loop.addArrayWrite();
+        } else {
+            loop.addWrite(variable);
+        }
+    }
+
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        if (variableType == Core.ARRAY) {
+            available.killArrayElements();
+        } else {
+            available.killVariable(variable);
+        }
+    }
+
+    /**
+     * Build the IR of "<in>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        IrInstruction value = builder.emit(IrInstruction.Opcode.IN);
+        if (builder.isLocalInteger(variable)) {
+            builder.writeLocal(variable, value);
+        } else {
+            builder.emitMemory(IrInstruction.Opcode.STORE, variable, value);
+        }
+    }
+
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        analysis.addName(variable);
+        analysis.addInput();
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     * A value of the known input is used here, so the residual program reads the input after it.
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        Integer value = evaluator.readInput();
+        if (value == null) {
+            evaluator.forget(variable);
+            evaluator.emit(this);
+            return;
+        }
+
+        if (variableType == Core.ARRAY) {
+            // "in(id)" writes "id[0]" when id is an array.
+            evaluator.emit(Assign.fromConstant(variable, value));
+        } else {
+            evaluator.setValue(variable, value);
+        }
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -0,0 +1,187 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental tri-color mark and sweep, option "--gc=incremental".
+ * <p>
+ * "--gc=mark-sweep" stops the program for a whole collection. Here a collection (a cycle) is cut into small slices:
+ * a cycle starts when "--gc-threshold=N" arrays have been allocated since the last one, and then every allocation
+ * and every frame pop does at most "--gc-budget=N" units of work (marking or sweeping one array each) until it ends.
+ * <p>
+ * An array is white (not marked), gray (marked and waiting in the work list), or black (marked and done).
+ * The start of a cycle shades the arrays the frames and the global variables point to (see Memory.findRoots()),
+ * then the marking slices turn gray arrays black. An array has no references to other arrays, so blackening is cheap.
+ * While marking, the program may make a variable point to a white array which was not a root at the start,
+ * so the write barrier in store() shades every array stored into a variable (by "new integer", "array id",
+ * or binding a formal parameter), and the arrays allocated during a cycle are black. So no black array and no
+ * variable points to a white array when the marking ends, and the sweeping slices free the white arrays,
+ * printing "gc:n", and clear the marks of the others.
+ * <p>
+ * The time of every slice is recorded, and "--gc-stats" prints the numbers of cycles and slices
+ * and the maximum and 99th percentile slice time.
+ *
+ * @author Zhao Liu
+ */
+public class IncrementalCollector implements Collector {
+    private enum Phase {IDLE, MARKING, SWEEPING}
+
+    private int threshold;
+    private int budget;
+    private Phase phase = Phase.IDLE;
+    private int allocationsSinceCycle = 0;
+    private List<Memory.Value> heap = new ArrayList<>();
+    private Deque<Memory.Value> grayArrays = new ArrayDeque<>();
+    // sweeping: the arrays before sweepRead have been swept, and the live ones are moved down to before sweepWrite
+    private int sweepRead;
+    private int sweepWrite;
+    // the arrays allocated in the frames, alive but not in the heap
+    private int frameObjects = 0;
+
+    private long cycles = 0;
+    private long[] sliceNanos = new long[64];
+    private int slices = 0;
+
+    /**
+     * @param threshold the number of allocations between two cycles
+     * @param budget    the number of arrays marked or swept by one slice
+     */
+    public IncrementalCollector(int threshold, int budget) {
+        this.threshold = threshold;
+        this.budget = budget;
+    }
+
+    /**
+     * Do a slice first, so the arrays freed are printed before the new one.
+     * A new array is black during a cycle, and white otherwise.
+     */
+    public void allocate(Memory memory, Memory.Value value) {
+        allocationsSinceCycle++;
+        long start = System.nanoTime();
+        if (phase != Phase.IDLE) {
+            step(memory, budget);
+            recordSlice(start);
+        } else if (allocationsSinceCycle >= threshold) {
+            startCycle(memory);
+            recordSlice(start);
+        }
+        value.marked = phase != Phase.IDLE;
+        heap.add(value);
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    public void allocateInFrame(Memory memory, Memory.Value value) {
+        frameObjects++;
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    public void releaseFrame(Memory memory, List<Memory.Value> values) {
+        frameObjects -= values.size();
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    /**
+     * The write barrier (insertion): while marking, the array a variable points to now is shaded.
+     */
+    public void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal) {
+        if (phase == Phase.MARKING && newValue != null) {
+            shade(newValue);
+        }
+    }
+
+    public void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal) {
+        if (phase != Phase.IDLE) {
+            long start = System.nanoTime();
+            step(memory, budget);
+            recordSlice(start);
+        }
+    }
+
+    /**
+     * Finish the cycle in progress, then run a whole cycle, so every unreachable array is freed.
+     */
+    public void collect(Memory memory) {
+        if (phase != Phase.IDLE) {
+            step(memory, Integer.MAX_VALUE);
+        }
+        startCycle(memory);
+        step(memory, Integer.MAX_VALUE);
+    }
+
+    private void startCycle(Memory memory) {
+        cycles++;
+        allocationsSinceCycle = 0;
+        phase = Phase.MARKING;
+        List<Memory.Value> roots = new ArrayList<>();
+        memory.findRoots(roots);
+        for (Memory.Value root : roots) {
+            shade(root);
+        }
+    }
+
+    private void shade(Memory.Value value) {
+        if (!value.marked) {
+            value.marked = true;
+            grayArrays.add(value);
+        }
+    }
+
+    /**
+     * Mark or sweep at most "work" arrays.
+     */
+    private void step(Memory memory, int work) {
+        while (work > 0 && phase == Phase.MARKING) {
+            if (grayArrays.isEmpty()) {
+                phase = Phase.SWEEPING;
+                sweepRead = 0;
+                sweepWrite = 0;
+            } else {
+                // an array does not point to any other array, so it is black now
+                grayArrays.poll();
+                work--;
+            }
+        }
+
+        while (work > 0 && phase == Phase.SWEEPING) {
+            if (sweepRead == heap.size()) {
+                heap.subList(sweepWrite, heap.size()).clear();
+                phase = Phase.IDLE;
+            } else {
+                Memory.Value value = heap.get(sweepRead++);
+                if (value.marked) {
+                    value.marked = false;
+                    heap.set(sweepWrite++, value);
+                } else {
+                    memory.free(value);
+                    memory.getOutput().println("gc:" + (heap.size() - (sweepRead - sweepWrite) + frameObjects));
+                }
+                work--;
+            }
+        }
+    }
+
+    private void recordSlice(long start) {
+        if (slices == sliceNanos.length) {
+            sliceNanos = Arrays.copyOf(sliceNanos, slices * 2);
+        }
+        sliceNanos[slices++] = System.nanoTime() - start;
+    }
+
+    /**
+     * Print the cycles and the slice times, like "gc incremental: 3 cycles, 120 slices, max 85 us, p99 40 us"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        long[] sorted = Arrays.copyOf(sliceNanos, slices);
+        Arrays.sort(sorted);
+        long max = slices == 0 ? 0 : sorted[slices - 1];
+        long p99 = slices == 0 ? 0 : sorted[(int) Math.ceil(slices * 0.99) - 1];
+        output.println("gc incremental: " + cycles + " cycles, " + slices + " slices, max " + max / 1000
+                + " us, p99 " + p99 / 1000 + " us");
+    }
+}
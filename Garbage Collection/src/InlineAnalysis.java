@@ -0,0 +1,149 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Store the information about one function body for "--inline" (procedure inlining).
+ * It is filled by collectInlineInfo() of all the statements in the body.
+ * <p>
+ * An inlined call runs the function body in the frame of the caller, with a new scope binding each formal parameter
+ * to the value of its argument (see Memory.bindParameters()), instead of pushing a new frame.
+ * So a function can only be inlined if:
+ * 1. it does not call any function, so it is never recursive;
+ * 2. it does not make a formal parameter or a global variable point to another array ("new integer" or "array id"),
+ * so no array of the caller can be collected inside the body;
+ * 3. none of the names it uses is a local variable of the caller, because a name is looked up in the whole frame
+ * (this one is checked at each call site, see Call.inline()).
+ * <p>
+ * It is also used by "--tail-calls": the frame of a function can be reused by its tail calls
+ * only if the function never makes any variable point to another array, see Function.markTailCalls().
+ * And "--partial-evaluate" needs to know whether a call may read the input, see Call.partialEvaluate().
+ * <p>
+ * It is also the effects analysis for "--memoize": the result of a function only depends on the contents
+ * of its arguments, and it only changes the formal parameters it writes, if:
+ * 1. it does not call any function, and does not read the input or print anything;
+ * 2. it does not make any variable point to another array, so it never allocates or collects an array ("gc:");
+ * 3. every name it uses is a formal parameter or a local variable, so it never reads or writes a global variable.
+ * A function writing none of its formal parameters is read-only. See Function.markMemoizable().
+ * <p>
+ * And "--elide-counts" needs to know which functions a body calls, and whether it only makes its own local variables
+ * point to new arrays, see Function.markBalancedParameters().
+ *
+ * @author Zhao Liu
+ */
+public class InlineAnalysis {
+    // all the variable names used in the body, including formal parameters and global variables
+    private Set<String> names = new HashSet<>();
+    private Set<String> declaredVariables = new HashSet<>();
+    // the variables assigned by "id := new integer [ <expr> ];"
+    private Set<String> newArrayVariables = new HashSet<>();
+    private int callCount = 0;
+    // the names of the functions called by the body
+    private Set<String> calledFunctions = new HashSet<>();
+    private boolean hasShare = false;
+    private boolean hasInput = false;
+    private boolean hasOutput = false;
+    // the variables assigned by "<assign>", including the elements of arrays
+    private Set<String> writtenVariables = new HashSet<>();
+
+    /**
+     * @return true if the body can be run in the frame of the caller
+     */
+    public boolean isInlinable() {
+        return callCount == 0 && rebindsOnlyLocals();
+    }
+
+    /**
+     * @return true if only the local variables declared in the body are made to point to new arrays,
+     * so no formal parameter and no global variable ever points to another array
+     */
+    public boolean rebindsOnlyLocals() {
+        return !hasShare && declaredVariables.containsAll(newArrayVariables);
+    }
+
+    /**
+     * @return true if any variable is made to point to another array, by "new integer" or "array id"
+     */
+    public boolean rebindsArrays() {
+        return hasShare || !newArrayVariables.isEmpty();
+    }
+
+    /**
+     * @return true if the body may read the input, by "in" or by calling another function
+     */
+    public boolean readsInput() {
+        return hasInput || callCount > 0;
+    }
+
+    /**
+     * @param parameters      the formal parameters of the function
+     * @param globalVariables all the global variables
+     * @return true if the result of the function only depends on the contents of its arguments
+     */
+    public boolean isMemoizable(List<String> parameters, Set<String> globalVariables) {
+        if (callCount > 0 || hasInput || hasOutput || rebindsArrays()
+                || !Collections.disjoint(declaredVariables, globalVariables)) {
+            return false;
+        }
+        Set<String> localNames = new HashSet<>(declaredVariables);
+        localNames.addAll(parameters);
+        return localNames.containsAll(names);
+    }
+
+    public void addName(String variable) {
+        names.add(variable);
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public void addDeclaration(String variable) {
+        names.add(variable);
+        declaredVariables.add(variable);
+    }
+
+    public Set<String> getDeclaredVariables() {
+        return declaredVariables;
+    }
+
+    public void addNewArray(String variable) {
+        names.add(variable);
+        newArrayVariables.add(variable);
+    }
+
+    public void addCall(String functionName) {
+        callCount++;
+        calledFunctions.add(functionName);
+    }
+
+    public Set<String> getCalledFunctions() {
+        return calledFunctions;
+    }
+
+    public int getCallCount() {
+        return callCount;
+    }
+
+    public void addShare() {
+        hasShare = true;
+    }
+
+    public void addInput() {
+        hasInput = true;
+    }
+
+    public void addOutput() {
+        hasOutput = true;
+    }
+
+    public void addWrite(String variable) {
+        names.add(variable);
+        writtenVariables.add(variable);
+    }
+
+    public Set<String> getWrittenVariables() {
+        return writtenVariables;
+    }
+}
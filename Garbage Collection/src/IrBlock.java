@@ -0,0 +1,82 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A basic block of the IR: "phi" instructions first, then the other instructions,
+ * and the last one is always "jump", "branch", or "return". See IrFunction.java
+ *
+ * @author Zhao Liu
+ */
+public class IrBlock {
+    private int id;
+    private List<IrInstruction> phis = new ArrayList<>();
+    private List<IrInstruction> instructions = new ArrayList<>();
+    private List<IrBlock> predecessors = new ArrayList<>();
+
+    // for building SSA form, see IrBuilder.java
+    private boolean sealed;
+
+    public IrBlock(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the blocks which may run after this block
+     */
+    public List<IrBlock> getSuccessors() {
+        IrInstruction terminator = getTerminator();
+        if (terminator == null) {
+            return new ArrayList<>();
+        }
+        return terminator.getTargets();
+    }
+
+    /**
+     * @return the last instruction, or null if the block has not been finished
+     */
+    public IrInstruction getTerminator() {
+        if (instructions.isEmpty()) {
+            return null;
+        }
+        IrInstruction last = instructions.get(instructions.size() - 1);
+        return last.isTerminator() ? last : null;
+    }
+
+    public void addPhi(IrInstruction phi) {
+        phi.setBlock(this);
+        phis.add(phi);
+    }
+
+    public void addInstruction(IrInstruction instruction) {
+        instruction.setBlock(this);
+        instructions.add(instruction);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public List<IrInstruction> getPhis() {
+        return phis;
+    }
+
+    public List<IrInstruction> getInstructions() {
+        return instructions;
+    }
+
+    public List<IrBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    public void setSealed(boolean sealed) {
+        this.sealed = sealed;
+    }
+}
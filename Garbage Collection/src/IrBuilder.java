@@ -0,0 +1,292 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build the IR from the parse tree. Every class of the parse tree has a lower() method which calls this builder,
+ * in the same order as execute() would run.
+ * <p>
+ * Local integer variables are turned into SSA values while the IR is built, with the algorithm from
+ * "Simple and Efficient Construction of Static Single Assignment Form" (Braun et al.):
+ * the current value of every variable is remembered for each block, and a phi is created
+ * when a variable is read in a block with several predecessors.
+ * A block is "sealed" when all its predecessors are known, before that its phis are incomplete.
+ * <p>
+ * A local integer variable stays in Memory if it is given to a function call or to "id := array id ;",
+ * because then another variable may share its value.
+ *
+ * @author Zhao Liu
+ */
+public class IrBuilder {
+
+    /**
+     * A local integer variable. Two declarations with the same name in different scopes are different variables.
+     */
+    private static class LocalVariable {
+        private final String name;
+
+        private LocalVariable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private IrProgram program;
+    private IrFunction function;
+    private IrBlock block;
+
+    // the local integer variables visible in each scope, the innermost scope is the first one
+    private Deque<Map<String, LocalVariable>> scopes = new ArrayDeque<>();
+    // whether each scope has declared any variable which lives in Memory
+    private Deque<Boolean> scopeUsesMemory = new ArrayDeque<>();
+    // the local integer variables which have to stay in Memory
+    private Set<String> sharedVariables;
+
+    private Map<IrBlock, Map<LocalVariable, IrInstruction>> currentDefinitions = new HashMap<>();
+    private Map<IrBlock, Map<LocalVariable, IrInstruction>> incompletePhis = new HashMap<>();
+
+    public IrBuilder(String procedureName) {
+        program = new IrProgram(procedureName);
+    }
+
+    /**
+     * Start building a function, its entry block becomes the current block.
+     *
+     * @param irFunction      the function to build
+     * @param sharedVariables the local integer variables which have to stay in Memory
+     */
+    public void beginFunction(IrFunction irFunction, Set<String> sharedVariables) {
+        function = irFunction;
+        this.sharedVariables = sharedVariables;
+        scopes.clear();
+        scopeUsesMemory.clear();
+        currentDefinitions.clear();
+        incompletePhis.clear();
+
+        block = function.newBlock();
+        block.setSealed(true);
+        scopes.push(new HashMap<>());
+        scopeUsesMemory.push(false);
+    }
+
+    /**
+     * Finish building the current function.
+     */
+    public void endFunction() {
+        emit(IrInstruction.Opcode.RETURN);
+        function.removeTrivialPhis();
+    }
+
+    /**
+     * Add a new instruction at the end of the current block.
+     *
+     * @param opcode   opcode
+     * @param operands operands
+     * @return the new instruction
+     */
+    public IrInstruction emit(IrInstruction.Opcode opcode, IrInstruction... operands) {
+        IrInstruction instruction = function.newInstruction(opcode);
+        for (IrInstruction operand : operands) {
+            instruction.addOperand(operand);
+        }
+        block.addInstruction(instruction);
+        return instruction;
+    }
+
+    /**
+     * Add a new instruction working on a variable in Memory, like "load x".
+     *
+     * @param opcode   opcode
+     * @param variable variable name
+     * @param operands operands
+     * @return the new instruction
+     */
+    public IrInstruction emitMemory(IrInstruction.Opcode opcode, String variable, IrInstruction... operands) {
+        IrInstruction instruction = emit(opcode, operands);
+        instruction.setVariable(variable);
+        return instruction;
+    }
+
+    public IrInstruction constant(int value) {
+        IrInstruction instruction = emit(IrInstruction.Opcode.CONST);
+        instruction.setConstant(value);
+        return instruction;
+    }
+
+    /**
+     * Declare a variable in Memory, for global variables, arrays, and shared local integer variables.
+     *
+     * @param type     integer or array
+     * @param variable variable name
+     */
+    public void declareMemory(Core type, String variable) {
+        IrInstruction instruction = emitMemory(IrInstruction.Opcode.DECLARE, variable);
+        instruction.setType(type);
+        scopeUsesMemory.pop();
+        scopeUsesMemory.push(true);
+    }
+
+    /**
+     * Declare a local integer variable, it starts with 0.
+     *
+     * @param variable variable name
+     */
+    public void declareInteger(String variable) {
+        if (sharedVariables.contains(variable)) {
+            declareMemory(Core.INTEGER, variable);
+            return;
+        }
+        LocalVariable localVariable = new LocalVariable(variable);
+        scopes.peek().put(variable, localVariable);
+        writeVariable(localVariable, block, constant(0));
+    }
+
+    /**
+     * @param variable variable name
+     * @return true if the variable is a local integer variable turned into SSA values
+     */
+    public boolean isLocalInteger(String variable) {
+        return findLocal(variable) != null;
+    }
+
+    public IrInstruction readLocal(String variable) {
+        return readVariable(findLocal(variable), block);
+    }
+
+    public void writeLocal(String variable, IrInstruction value) {
+        writeVariable(findLocal(variable), block, value);
+    }
+
+    private LocalVariable findLocal(String variable) {
+        for (Map<String, LocalVariable> scope : scopes) {
+            LocalVariable localVariable = scope.get(variable);
+            if (localVariable != null) {
+                return localVariable;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start a scope of "if" or "while".
+     *
+     * @return the size of local variables in Memory when entering the scope
+     */
+    public IrInstruction enterScope() {
+        scopes.push(new HashMap<>());
+        scopeUsesMemory.push(false);
+        return emit(IrInstruction.Opcode.ENTER_SCOPE);
+    }
+
+    /**
+     * Remove the local variables in Memory declared inside the scope, like execute() of "if" and "while" does.
+     *
+     * @param mark the result of enterScope()
+     */
+    public void exitScope(IrInstruction mark) {
+        if (scopeUsesMemory.peek()) {
+            emit(IrInstruction.Opcode.EXIT_SCOPE, mark);
+        }
+    }
+
+    /**
+     * The variables declared inside the scope can not be seen any more.
+     */
+    public void popScope() {
+        scopes.pop();
+        scopeUsesMemory.pop();
+    }
+
+    public IrBlock newBlock() {
+        return function.newBlock();
+    }
+
+    public IrBlock getBlock() {
+        return block;
+    }
+
+    public void setBlock(IrBlock block) {
+        this.block = block;
+    }
+
+    public void jump(IrBlock target) {
+        IrInstruction instruction = emit(IrInstruction.Opcode.JUMP);
+        instruction.getTargets().add(target);
+        target.getPredecessors().add(block);
+    }
+
+    public void branch(IrInstruction condition, IrBlock trueTarget, IrBlock falseTarget) {
+        IrInstruction instruction = emit(IrInstruction.Opcode.BRANCH, condition);
+        instruction.getTargets().add(trueTarget);
+        instruction.getTargets().add(falseTarget);
+        trueTarget.getPredecessors().add(block);
+        falseTarget.getPredecessors().add(block);
+    }
+
+    /**
+     * All the predecessors of the block are known now, so its incomplete phis can be finished.
+     *
+     * @param target the block
+     */
+    public void seal(IrBlock target) {
+        Map<LocalVariable, IrInstruction> phis = incompletePhis.remove(target);
+        if (phis != null) {
+            for (Map.Entry<LocalVariable, IrInstruction> entry : phis.entrySet()) {
+                addPhiOperands(entry.getKey(), entry.getValue());
+            }
+        }
+        target.setSealed(true);
+    }
+
+    private void writeVariable(LocalVariable variable, IrBlock target, IrInstruction value) {
+        currentDefinitions.computeIfAbsent(target, key -> new HashMap<>()).put(variable, value);
+    }
+
+    private IrInstruction readVariable(LocalVariable variable, IrBlock target) {
+        Map<LocalVariable, IrInstruction> definitions = currentDefinitions.get(target);
+        if (definitions != null && definitions.containsKey(variable)) {
+            return definitions.get(variable);
+        }
+
+        IrInstruction value;
+        if (!target.isSealed()) {
+            value = newPhi(target);
+            incompletePhis.computeIfAbsent(target, key -> new HashMap<>()).put(variable, value);
+        } else if (target.getPredecessors().size() == 1) {
+            value = readVariable(variable, target.getPredecessors().get(0));
+        } else if (target.getPredecessors().isEmpty()) {
+            // never written before, it has the initial value 0.
+            value = function.newInstruction(IrInstruction.Opcode.CONST);
+            value.setBlock(function.getEntry());
+            function.getEntry().getInstructions().add(0, value);
+        } else {
+            value = newPhi(target);
+            writeVariable(variable, target, value);
+            addPhiOperands(variable, value);
+        }
+        writeVariable(variable, target, value);
+        return value;
+    }
+
+    private IrInstruction newPhi(IrBlock target) {
+        IrInstruction phi = function.newInstruction(IrInstruction.Opcode.PHI);
+        target.addPhi(phi);
+        return phi;
+    }
+
+    private void addPhiOperands(LocalVariable variable, IrInstruction phi) {
+        for (IrBlock predecessor : phi.getBlock().getPredecessors()) {
+            phi.addPhiOperand(readVariable(variable, predecessor), predecessor);
+        }
+    }
+
+    public IrProgram getProgram() {
+        return program;
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The IR of one function (or the main body of the procedure): a control-flow graph of basic blocks in SSA form.
+ * <p>
+ * It is built from the parse tree by lower() of every class (see IrBuilder.java), optimized by the passes
+ * in PassManager.java, and then executed by IrInterpreter.java instead of execute() of the parse tree.
+ *
+ * @author Zhao Liu
+ */
+public class IrFunction {
+    private String name;
+    private List<String> parameters = new ArrayList<>();
+    private List<IrBlock> blocks = new ArrayList<>();
+    private int instructionCount = 0;
+    private int blockCount = 0;
+
+    public IrFunction(String name) {
+        this.name = name;
+    }
+
+    public IrInstruction newInstruction(IrInstruction.Opcode opcode) {
+        return new IrInstruction(opcode, instructionCount++);
+    }
+
+    public IrBlock newBlock() {
+        IrBlock block = new IrBlock(blockCount++);
+        blocks.add(block);
+        return block;
+    }
+
+    public IrBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    /**
+     * Find the predecessors of all the blocks again from the last instruction of each block.
+     */
+    public void computePredecessors() {
+        for (IrBlock block : blocks) {
+            block.getPredecessors().clear();
+        }
+        for (IrBlock block : blocks) {
+            for (IrBlock successor : block.getSuccessors()) {
+                successor.getPredecessors().add(block);
+            }
+        }
+    }
+
+    /**
+     * @return all the blocks reachable from the entry, in reverse postorder (a block comes before its successors, except back edges)
+     */
+    public List<IrBlock> reversePostorder() {
+        List<IrBlock> order = new ArrayList<>();
+        Set<IrBlock> visited = new HashSet<>();
+        Deque<IrBlock> stack = new ArrayDeque<>();
+        Deque<Iterator<IrBlock>> iterators = new ArrayDeque<>();
+
+        visited.add(getEntry());
+        stack.push(getEntry());
+        iterators.push(getEntry().getSuccessors().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<IrBlock> iterator = iterators.peek();
+            if (iterator.hasNext()) {
+                IrBlock successor = iterator.next();
+                if (visited.add(successor)) {
+                    stack.push(successor);
+                    iterators.push(successor.getSuccessors().iterator());
+                }
+            } else {
+                order.add(stack.pop());
+                iterators.pop();
+            }
+        }
+
+        Collections.reverse(order);
+        return order;
+    }
+
+    /**
+     * Remove all the blocks which can never run, and the phi operands coming from them.
+     */
+    public void removeUnreachableBlocks() {
+        Set<IrBlock> reachable = new HashSet<>(reversePostorder());
+        blocks.removeIf(block -> !reachable.contains(block));
+        for (IrBlock block : blocks) {
+            for (IrInstruction phi : block.getPhis()) {
+                for (int i = phi.getPhiBlocks().size() - 1; i >= 0; i--) {
+                    if (!reachable.contains(phi.getPhiBlocks().get(i))) {
+                        phi.getPhiBlocks().remove(i);
+                        phi.getOperands().remove(i);
+                    }
+                }
+            }
+        }
+        computePredecessors();
+    }
+
+    /**
+     * Remove the phi instructions which always produce the same value, like "phi [v1, b0], [v1, b2]" or "v5 = phi [v1, b0], [v5, b2]".
+     */
+    public void removeTrivialPhis() {
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = false;
+            for (IrBlock block : blocks) {
+                Iterator<IrInstruction> iterator = block.getPhis().iterator();
+                while (iterator.hasNext()) {
+                    IrInstruction phi = iterator.next();
+                    IrInstruction same = null;
+                    boolean isTrivial = true;
+                    for (IrInstruction operand : phi.getOperands()) {
+                        operand = resolve(replacements, operand);
+                        if (operand == phi || operand == same) {
+                            continue;
+                        }
+                        if (same != null) {
+                            isTrivial = false;
+                            break;
+                        }
+                        same = operand;
+                    }
+                    if (!isTrivial) {
+                        continue;
+                    }
+
+                    if (same == null) {
+                        // The variable is never written on any path, it has the initial value 0.
+                        same = newInstruction(IrInstruction.Opcode.CONST);
+                        same.setBlock(getEntry());
+                        getEntry().getInstructions().add(0, same);
+                    }
+                    replacements.put(phi, same);
+                    iterator.remove();
+                    isChanged = true;
+                }
+            }
+        }
+        replaceOperands(replacements);
+    }
+
+    /**
+     * Replace the operands of all the instructions.
+     *
+     * @param replacements the old value and the new value
+     */
+    public void replaceOperands(Map<IrInstruction, IrInstruction> replacements) {
+        if (replacements.isEmpty()) {
+            return;
+        }
+        for (IrBlock block : blocks) {
+            for (IrInstruction phi : block.getPhis()) {
+                phi.getOperands().replaceAll(operand -> resolve(replacements, operand));
+            }
+            for (IrInstruction instruction : block.getInstructions()) {
+                instruction.getOperands().replaceAll(operand -> resolve(replacements, operand));
+            }
+        }
+    }
+
+    /**
+     * @param replacements the old value and the new value
+     * @param value        a value
+     * @return the value after all the replacements
+     */
+    public static IrInstruction resolve(Map<IrInstruction, IrInstruction> replacements, IrInstruction value) {
+        IrInstruction result = value;
+        while (replacements.containsKey(result)) {
+            result = replacements.get(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of instructions left in all the blocks
+     */
+    public int countInstructions() {
+        int count = 0;
+        for (IrBlock block : blocks) {
+            count += block.getPhis().size() + block.getInstructions().size();
+        }
+        return count;
+    }
+
+    /**
+     * Print the IR like:
+     * function Sum(a, r)
+     *   b0:
+     *     v0 = const 0
+     *     jump b1
+     */
+    public void print() {
+        System.out.println("function " + name + "(" + String.join(", ", parameters) + ")");
+        for (IrBlock block : blocks) {
+            StringBuilder header = new StringBuilder("  b" + block.getId() + ":");
+            if (!block.getPredecessors().isEmpty()) {
+                List<String> predecessors = new ArrayList<>();
+                for (IrBlock predecessor : block.getPredecessors()) {
+                    predecessors.add("b" + predecessor.getId());
+                }
+                header.append("    ; from ").append(String.join(", ", predecessors));
+            }
+            System.out.println(header);
+            for (IrInstruction phi : block.getPhis()) {
+                System.out.println("    " + phi);
+            }
+            for (IrInstruction instruction : block.getInstructions()) {
+                System.out.println("    " + instruction);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    public List<IrBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the number of values, every instruction id is less than it
+     */
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One instruction of the intermediate representation (IR), see IrFunction.java
+ * <p>
+ * The IR is in SSA form: every instruction producing a value is the value itself,
+ * and it is defined only once. Local integer variables become values, merged by "phi" instructions.
+ * Global variables and arrays are still read and written through Memory by name ("load", "store"),
+ * so function calls, call-by-sharing, and the reference counting work the same as the parse tree.
+ *
+ * @author Zhao Liu
+ */
+public class IrInstruction {
+
+    public enum Opcode {
+        // values without side effects
+        CONST, ADD, SUB, MUL, DIV, EQUAL, LESS, NOT, AND, OR, PHI, ENTER_SCOPE,
+        // Memory and input/output
+        LOAD, LOAD_INDEX, STORE, STORE_INDEX, NEW_ARRAY, SHARE, DECLARE, END_DECLARATIONS, EXIT_SCOPE, IN, OUT, CALL,
+        // the last instruction of a block
+        JUMP, BRANCH, RETURN
+    }
+
+    private Opcode opcode;
+    private List<IrInstruction> operands = new ArrayList<>();
+    private int constant;
+    // the variable in Memory, or the function name for CALL
+    private String variable;
+    // the right-hand side variable of SHARE
+    private String otherVariable;
+    // the type of DECLARE
+    private Core type;
+    // the arguments of CALL
+    private List<String> arguments;
+    // the targets of JUMP and BRANCH (true target first)
+    private List<IrBlock> targets = new ArrayList<>();
+    // the predecessor for each operand of PHI
+    private List<IrBlock> phiBlocks = new ArrayList<>();
+    private IrBlock block;
+    private int id;
+
+    public IrInstruction(Opcode opcode, int id) {
+        this.opcode = opcode;
+        this.id = id;
+    }
+
+    /**
+     * @return true if it only computes a value from its operands, so it can be removed or merged with the same instruction
+     */
+    public boolean isPure() {
+        switch (opcode) {
+            case CONST:
+            case ADD:
+            case SUB:
+            case MUL:
+            case EQUAL:
+            case LESS:
+            case NOT:
+            case AND:
+            case OR:
+            case PHI:
+            case ENTER_SCOPE:
+                return true;
+            case DIV:
+                // Dividing by a constant which is not 0 can never report an error.
+                IrInstruction divisor = operands.get(1);
+                return divisor.opcode == Opcode.CONST && divisor.constant != 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if it produces a value which can be used by other instructions
+     */
+    public boolean hasValue() {
+        return opcode.ordinal() <= Opcode.ENTER_SCOPE.ordinal()
+                || opcode == Opcode.LOAD || opcode == Opcode.LOAD_INDEX || opcode == Opcode.IN;
+    }
+
+    /**
+     * @return true if it is the last instruction of a block
+     */
+    public boolean isTerminator() {
+        return opcode == Opcode.JUMP || opcode == Opcode.BRANCH || opcode == Opcode.RETURN;
+    }
+
+    /**
+     * @return true if the order of the two operands does not matter
+     */
+    public boolean isCommutative() {
+        return opcode == Opcode.ADD || opcode == Opcode.MUL || opcode == Opcode.EQUAL
+                || opcode == Opcode.AND || opcode == Opcode.OR;
+    }
+
+    /**
+     * Change this instruction into "const value", keeping its id, so all the users see the constant.
+     *
+     * @param value the constant
+     */
+    public void becomeConstant(int value) {
+        opcode = Opcode.CONST;
+        constant = value;
+        operands.clear();
+        phiBlocks.clear();
+    }
+
+    /**
+     * Remove the operand of PHI coming from the block
+     *
+     * @param predecessor the predecessor block
+     */
+    public void removePhiOperand(IrBlock predecessor) {
+        int index = phiBlocks.indexOf(predecessor);
+        if (index >= 0) {
+            phiBlocks.remove(index);
+            operands.remove(index);
+        }
+    }
+
+    public void addPhiOperand(IrInstruction value, IrBlock predecessor) {
+        operands.add(value);
+        phiBlocks.add(predecessor);
+    }
+
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    public void setOpcode(Opcode opcode) {
+        this.opcode = opcode;
+    }
+
+    public List<IrInstruction> getOperands() {
+        return operands;
+    }
+
+    public IrInstruction getOperand(int index) {
+        return operands.get(index);
+    }
+
+    public void addOperand(IrInstruction operand) {
+        operands.add(operand);
+    }
+
+    public int getConstant() {
+        return constant;
+    }
+
+    public void setConstant(int constant) {
+        this.constant = constant;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public void setVariable(String variable) {
+        this.variable = variable;
+    }
+
+    public String getOtherVariable() {
+        return otherVariable;
+    }
+
+    public void setOtherVariable(String otherVariable) {
+        this.otherVariable = otherVariable;
+    }
+
+    public Core getType() {
+        return type;
+    }
+
+    public void setType(Core type) {
+        this.type = type;
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    public void setArguments(List<String> arguments) {
+        this.arguments = arguments;
+    }
+
+    public List<IrBlock> getTargets() {
+        return targets;
+    }
+
+    public List<IrBlock> getPhiBlocks() {
+        return phiBlocks;
+    }
+
+    public IrBlock getBlock() {
+        return block;
+    }
+
+    public void setBlock(IrBlock block) {
+        this.block = block;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the instruction like "v3 = add v1, v2"
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (hasValue()) {
+            text.append('v').append(id).append(" = ");
+        }
+        text.append(opcode.toString().toLowerCase());
+
+        List<String> items = new ArrayList<>();
+        if (opcode == Opcode.CONST) {
+            items.add(String.valueOf(constant));
+        }
+        if (opcode == Opcode.DECLARE) {
+            items.add(type.toString().toLowerCase());
+        }
+        if (variable != null) {
+            items.add(variable);
+        }
+        if (otherVariable != null) {
+            items.add(otherVariable);
+        }
+        if (arguments != null) {
+            items.add("(" + String.join(", ", arguments) + ")");
+        }
+        for (int i = 0; i < operands.size(); i++) {
+            if (opcode == Opcode.PHI) {
+                items.add("[v" + operands.get(i).id + ", b" + phiBlocks.get(i).getId() + "]");
+            } else {
+                items.add("v" + operands.get(i).id);
+            }
+        }
+        for (IrBlock target : targets) {
+            items.add("b" + target.getId());
+        }
+
+        if (!items.isEmpty()) {
+            text.append(' ').append(String.join(", ", items));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Execute the IR of the program (option "--ir"), instead of execute() of the parse tree.
+ * <p>
+ * Every call of a function has its own array of values, indexed by instruction ids.
+ * Global variables, arrays, and shared local variables are still kept in Memory, and a function call
+ * works the same as Call.java, Function.java, and Parameter.java, so the output (including "gc:") does not change.
+ *
+ * @author Zhao Liu
+ */
+public class IrInterpreter {
+    private IrProgram program;
+    private Memory memory;
+
+    public IrInterpreter(IrProgram program, Memory memory) {
+        this.program = program;
+        this.memory = memory;
+    }
+
+    /**
+     * Run the main body of the procedure, then collect all the variables like Procedure.execute()
+     */
+    public void run() {
+        execute(program.getMain());
+        memory.emptyMemory();
+    }
+
+    private void execute(IrFunction function) {
+        int[] values = new int[function.getInstructionCount()];
+        IrBlock previous = null;
+        IrBlock block = function.getEntry();
+
+        while (true) {
+            // All the phis of a block read their operands before any of them is written.
+            List<IrInstruction> phis = block.getPhis();
+            if (!phis.isEmpty()) {
+                int[] phiValues = new int[phis.size()];
+                for (int i = 0; i < phis.size(); i++) {
+                    IrInstruction phi = phis.get(i);
+                    phiValues[i] = values[phi.getOperand(phi.getPhiBlocks().indexOf(previous)).getId()];
+                }
+                for (int i = 0; i < phis.size(); i++) {
+                    values[phis.get(i).getId()] = phiValues[i];
+                }
+            }
+
+            IrBlock next = null;
+            for (IrInstruction instruction : block.getInstructions()) {
+                switch (instruction.getOpcode()) {
+                    case JUMP:
+                        next = instruction.getTargets().get(0);
+                        break;
+                    case BRANCH:
+                        next = instruction.getTargets().get(values[instruction.getOperand(0).getId()] != 0 ? 0 : 1);
+                        break;
+                    case RETURN:
+                        return;
+                    default:
+                        executeInstruction(instruction, values);
+                }
+            }
+
+            previous = block;
+            block = next;
+        }
+    }
+
+    private void executeInstruction(IrInstruction instruction, int[] values) {
+        List<IrInstruction> operands = instruction.getOperands();
+        String variable = instruction.getVariable();
+        int result = 0;
+
+        switch (instruction.getOpcode()) {
+            case CONST:
+                result = instruction.getConstant();
+                break;
+            case ADD:
+            case SUB:
+            case MUL:
+            case EQUAL:
+            case LESS:
+            case AND:
+            case OR:
+                result = ConstantPropagation.compute(instruction.getOpcode(),
+                        values[operands.get(0).getId()], values[operands.get(1).getId()]);
+                break;
+            case DIV:
+                int divisor = values[operands.get(1).getId()];
+                if (divisor == 0) {
+                    throw new CoreException("ERROR: can not divided by 0!!!");
+                }
+                result = values[operands.get(0).getId()] / divisor;
+                break;
+            case NOT:
+                result = values[operands.get(0).getId()] == 0 ? 1 : 0;
+                break;
+            case ENTER_SCOPE:
+                result = memory.localSize();
+                break;
+            case EXIT_SCOPE:
+                // the same as the end of If.execute() and Loop.execute()
+                int initialSize = values[operands.get(0).getId()];
+                while (memory.localSize() > initialSize) {
+                    memory.popLocalElement();
+                }
+                return;
+            case LOAD:
+                result = memory.find(variable);
+                break;
+            case LOAD_INDEX:
+                result = memory.findArrayByIndex(variable, values[operands.get(0).getId()]);
+                break;
+            case STORE:
+                memory.update(variable, values[operands.get(0).getId()]);
+                return;
+            case STORE_INDEX:
+                memory.updateArray(variable, values[operands.get(0).getId()], values[operands.get(1).getId()]);
+                return;
+            case NEW_ARRAY:
+                memory.initializeArray(variable, values[operands.get(0).getId()]);
+                return;
+            case SHARE:
+                memory.copyBySharing(variable, instruction.getOtherVariable());
+                return;
+            case DECLARE:
+                memory.allocate(instruction.getType(), variable);
+                return;
+            case END_DECLARATIONS:
+                memory.setDeclSeqFinished(true);
+                return;
+            case IN:
+                Queue<Integer> inputDataQueue = memory.getInputDataQueue();
+                Integer value = inputDataQueue.poll();
+                if (value == null) {
+                    throw new CoreException("ERROR: all values in the .data file have already been used!!!");
+                }
+                result = value;
+                break;
+            case OUT:
+                memory.getOutput().println(values[operands.get(0).getId()]);
+                return;
+            case CALL:
+                call(instruction);
+                return;
+            default:
+                throw new IllegalStateException(instruction.toString());
+        }
+
+        values[instruction.getId()] = result;
+    }
+
+    /**
+     * The same steps as Call.execute() and Function.execute()
+     */
+    private void call(IrInstruction instruction) {
+        IrFunction function = program.getFunction(instruction.getVariable());
+        List<String> arguments = instruction.getArguments();
+
+        memory.setExecutingFunction(true);
+        memory.pushNewVariableStack();
+
+        memory.setInitializeFormalParams(true);
+        List<String> parameters = function.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            memory.allocate(Core.ARRAY, parameters.get(i));
+            memory.copyBySharing(parameters.get(i), i < arguments.size() ? arguments.get(i) : null);
+        }
+        memory.setInitializeFormalParams(false);
+
+        execute(function);
+
+        memory.setExecutingFunction(false);
+        memory.popVariableStack();
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * An optimization pass on the IR, run by PassManager.java on every function.
+ *
+ * @author Zhao Liu
+ */
+public abstract class IrPass {
+
+    /**
+     * @return the name of the pass used by "--ir-passes=" and "--dump-ir", like "gvn"
+     */
+    public abstract String getName();
+
+    /**
+     * Optimize the function.
+     *
+     * @param function the function
+     */
+    public abstract void run(IrFunction function);
+}
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The IR of the whole program: one IrFunction for every function, and one for the main body of the procedure.
+ *
+ * @author Zhao Liu
+ */
+public class IrProgram {
+    private IrFunction main;
+    private Map<String, IrFunction> functions = new LinkedHashMap<>();
+
+    public IrProgram(String procedureName) {
+        main = new IrFunction(procedureName);
+    }
+
+    /**
+     * @param name function name
+     * @return the function, it is created at the first time
+     */
+    public IrFunction getFunction(String name) {
+        return functions.computeIfAbsent(name, IrFunction::new);
+    }
+
+    /**
+     * @return all the functions, and the main body at last
+     */
+    public List<IrFunction> getAllFunctions() {
+        List<IrFunction> result = new ArrayList<>(functions.values());
+        result.add(main);
+        return result;
+    }
+
+    public IrFunction getMain() {
+        return main;
+    }
+
+    /**
+     * Print the IR of all the functions.
+     */
+    public void print() {
+        for (IrFunction function : getAllFunctions()) {
+            function.print();
+        }
+    }
+}
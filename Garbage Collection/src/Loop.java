@@ -1,5 +1,8 @@
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -10,13 +13,25 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class Loop {
+public final class Loop implements Statement {
     private Core whileKeyword;
     private Condition condition;
     private Core doKeyword;
     private StatementSequence statementSequence;
     private Core endKeyword;
 
+    // for "--profile-write" and "--profile-use", see Profile.java
+    private int profileId;
+
+    // for "--licm", see LoopAnalysis.java
+    // The slot in Memory saving the tag of current loop entry, -1 if nothing is hoisted out of this loop.
+    private int loopSlot = -1;
+    // The slot in Memory saving the tag of the loop entry whose range check has passed, -1 if there is no range check.
+    private int boundsSlot = -1;
+    private String inductionVariable;
+    private Expression boundsExpression;
+    private String[] boundsCheckedArrays;
+
     /**
      * The grammar is: <loop> ==> while <cond> do <stmt-seq> end
      *
@@ -24,26 +39,26 @@ public class Loop {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.WHILE) {
-            System.out.println("ERROR: missing keyword 'while' for while statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'while' for while statement!!!");
         }
         whileKeyword = Core.WHILE;
+        profileId = Profile.getInstance().newNode(Profile.LOOP);
 
-        condition = new Condition();
-        condition.parse(tokenQueue, functionMap);
+        // the nodes of the condition and the body are inside this loop, see Profile.getSpecializeThreshold()
+        Profile.getInstance().enterLoop(profileId);
+        condition = Condition.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.DO) {
-            System.out.println("ERROR: missing keyword 'do' for while statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'do' for while statement!!!");
         }
         doKeyword = Core.DO;
 
         statementSequence = new StatementSequence();
         statementSequence.parse(tokenQueue, functionMap);
+        Profile.getInstance().exitLoop();
 
         if (tokenQueue.poll() != Core.END) {
-            System.out.println("ERROR: missing keyword 'end' for while statement!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'end' for while statement!!!");
         }
         endKeyword = Core.END;
     }
@@ -80,9 +95,22 @@ public class Loop {
     public void execute(Memory memory, Map<String, Function> functionMap) {
         int initialSize = memory.localSize();
 
+        if (loopSlot >= 0) {
+            // Every time entering the loop, the loop-invariant values are computed again.
+            int loopTag = memory.newTemporaryTag();
+            memory.setTemporary(loopSlot, 0, loopTag);
+            if (boundsSlot >= 0) {
+                memory.setTemporary(boundsSlot, 0, checkBounds(memory, functionMap) ? loopTag : 0);
+            }
+        }
+
+        Profile profile = Profile.getInstance();
+        profile.count(profileId, 0);
+
         boolean conditionValue = condition.execute(memory, functionMap);
         // repeat run "<stmt-seq>", if the result of "<cond>" is true.
         while (conditionValue) {
+            profile.count(profileId, 1);
             statementSequence.execute(memory, functionMap);
 
             while (memory.localSize() > initialSize) {
@@ -95,6 +123,267 @@ public class Loop {
         while (memory.localSize() > initialSize) {
             memory.popLocalElement();
         }
+
+        if (loopSlot >= 0) {
+            // The loop-invariant values can not be used outside the loop.
+            memory.setTemporary(loopSlot, 0, memory.newTemporaryTag());
+        }
+    }
+
+    /**
+     * The range check of all "a[i]" in the loop body, done once when entering the loop.
+     * "i" starts from its current value, only grows, and is less than the bound whenever the body runs,
+     * so every "a[i]" is in range if the current value is not negative and the bound is not larger than the size of "a".
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return true if all the arrays pass the range check
+     */
+    private boolean checkBounds(Memory memory, Map<String, Function> functionMap) {
+        if (memory.find(inductionVariable) < 0) {
+            return false;
+        }
+        int bound = boundsExpression.execute(memory, functionMap);
+        for (String array : boundsCheckedArrays) {
+            if (bound > memory.findArrayLength(array)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Constant folding for the condition and the body.
+     */
+    public void fold() {
+        condition.fold();
+        statementSequence.fold();
+    }
+
+    /**
+     * @return true if the condition is always false, so the body can never run
+     */
+    public boolean isNoOp() {
+        return condition.isConstant() && !condition.getConstantValue();
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + condition.countNodes() + statementSequence.countNodes();
+    }
+
+    /**
+     * Record what the loop body writes, see LoopAnalysis.java
+     *
+     * @param loop information about the outer loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        statementSequence.collectWrites(loop);
+    }
+
+    /**
+     * Loop-invariant code motion. Expressions which are invariant in this loop (or an outer loop) are marked,
+     * then the range checks of "a[i]" are moved to the loop entry if "i" is the induction variable.
+     *
+     * @param loops all the loops around this loop, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+        LoopAnalysis analysis = new LoopAnalysis(slots);
+        statementSequence.collectWrites(analysis);
+
+        // With a profile, a hot loop is always optimized, and a cold loop is never optimized.
+        Profile profile = Profile.getInstance();
+        boolean isOptimized = !analysis.hasCall()
+                && (profile.isHot(profileId) || (Options.getInstance().isLicm() && !profile.isCold(profileId)));
+
+        List<LoopAnalysis> innerLoops = new ArrayList<>(loops);
+        if (isOptimized) {
+            innerLoops.add(analysis);
+        }
+        condition.hoist(innerLoops);
+        statementSequence.hoist(innerLoops, slots);
+
+        if (isOptimized) {
+            findInductionVariable(analysis);
+        }
+
+        if (analysis.isLoopSlotUsed()) {
+            loopSlot = analysis.getLoopSlot();
+        }
+    }
+
+    /**
+     * Find the loop "while i < <expr> do ... i := i + const; end",
+     * where "i" is only written by the last statement and "<expr>" is loop-invariant.
+     *
+     * @param analysis information about this loop
+     */
+    private void findInductionVariable(LoopAnalysis analysis) {
+        Compare compare = condition.getSingleCompare();
+        if (compare == null || !compare.isLessThan()) {
+            return;
+        }
+        Factor left = compare.getLeftExpression().getSingleFactor();
+        if (left == null || left.getIntegerVariable() == null) {
+            return;
+        }
+        String variable = left.getIntegerVariable();
+        if (analysis.getWriteCount(variable) != 1 || !statementSequence.getLastStatement().isIncrementOf(variable)
+                || !compare.getRightExpression().isInvariant(analysis)) {
+            return;
+        }
+
+        analysis.setInductionVariable(variable);
+        statementSequence.markBoundsChecks(analysis);
+        if (!analysis.getBoundsCheckedArrays().isEmpty()) {
+            inductionVariable = variable;
+            boundsExpression = compare.getRightExpression();
+            boundsCheckedArrays = analysis.getBoundsCheckedArrays().toArray(new String[0]);
+            boundsSlot = analysis.getBoundsSlot();
+        }
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the outer loop.
+     *
+     * @param loop information about the outer loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        condition.markBoundsChecks(loop);
+        statementSequence.markBoundsChecks(loop);
+    }
+
+    /**
+     * Common subexpression elimination, "while" ends the straight-line part, and the loop body starts a new one.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        available.clear();
+        statementSequence.eliminateCommonSubexpressions(available.newPart());
+    }
+
+    /**
+     * Build the IR of "<loop>", see IrBuilder.java
+     * The header block computes the condition, and branches to the body or the block after the loop.
+     * The body jumps back to the header, so the header can only be sealed after the body is built.
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        IrInstruction mark = builder.enterScope();
+        IrBlock header = builder.newBlock();
+        IrBlock body = builder.newBlock();
+        IrBlock exit = builder.newBlock();
+        builder.jump(header);
+
+        builder.setBlock(header);
+        condition.lowerBranch(builder, body, exit);
+
+        builder.seal(body);
+        builder.setBlock(body);
+        statementSequence.lower(builder);
+        builder.exitScope(mark);
+        builder.jump(header);
+        builder.seal(header);
+
+        builder.seal(exit);
+        builder.setBlock(exit);
+        builder.exitScope(mark);
+        builder.popScope();
+    }
+
+    /**
+     * Find the local integer variables which have to stay in Memory, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        statementSequence.collectVariables(sharedVariables, declaredVariables);
+    }
+
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        condition.collectReads(analysis.getNames());
+        statementSequence.collectInlineInfo(analysis);
+    }
+
+    public void markLastUses() {
+        statementSequence.markLastUses();
+    }
+
+    /**
+     * Decide which calls can be inlined, see Call.inline()
+     *
+     * @param functionMap    all the functions
+     * @param localVariables the local variables of the caller
+     */
+    public void inline(Map<String, Function> functionMap, Set<String> localVariables) {
+        statementSequence.inline(functionMap, localVariables);
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     * While the condition is static, the loop is unrolled: every iteration is evaluated one by one.
+     * If the condition becomes dynamic, or the loop is too large to unroll, the unrolling is undone.
+     * Then the variables written in the body become dynamic, and the body is evaluated once for the residual loop.
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        PartialEvaluator.State state = evaluator.saveState();
+        int iterations = 0;
+        while (!evaluator.isUnrollingTooLarge(state, iterations)) {
+            Condition residualCondition = condition.partialEvaluate(evaluator);
+            if (!residualCondition.isConstant()) {
+                break;
+            }
+            if (!residualCondition.getConstantValue()) {
+                return;
+            }
+
+            evaluator.beginBlock();
+            statementSequence.partialEvaluate(evaluator);
+            evaluator.emitBlock(evaluator.endBlock());
+            iterations++;
+        }
+        evaluator.restoreState(state);
+
+        LoopAnalysis writes = new LoopAnalysis(null);
+        statementSequence.collectWrites(writes);
+        evaluator.makeWritesDynamic(writes);
+
+        Map<String, Integer> entryValues = evaluator.enterDynamic();
+        Condition residualCondition = condition.partialEvaluate(evaluator);
+        evaluator.beginBlock();
+        statementSequence.partialEvaluate(evaluator);
+        List<Statement> block = evaluator.endBlock();
+        evaluator.exitDynamic(entryValues, block);
+        evaluator.emit(fromBlock(residualCondition, evaluator.toSequence(block)));
+    }
+
+    /**
+     * Create "while <cond> do <stmt-seq> end" for partial evaluation
+     *
+     * @param condition         the condition
+     * @param statementSequence the body
+     * @return the new loop
+     */
+    public static Loop fromBlock(Condition condition, StatementSequence statementSequence) {
+        Loop loop = new Loop();
+        loop.whileKeyword = Core.WHILE;
+        loop.condition = condition;
+        loop.doKeyword = Core.DO;
+        loop.statementSequence = statementSequence;
+        loop.endKeyword = Core.END;
+        return loop;
     }
 
     /**
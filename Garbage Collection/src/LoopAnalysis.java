@@ -0,0 +1,122 @@
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store the information about one "while" loop for "--licm" (loop-invariant code motion).
+ * It is filled by collectWrites() of all the statements inside the loop body:
+ * which variables are written, whether any array element is written, and whether there is any function call.
+ * <p>
+ * An expression is loop-invariant if it does not read any written variable,
+ * and it does not read any array element when some array element is written (arrays may share the same object).
+ * A function call may change global variables and arrays, so nothing is invariant in a loop with a function call.
+ * <p>
+ * If the loop looks like "while i < n do ... i := i + 1; end", "i" is the induction variable.
+ * Inside the body, "i" is always between its value when entering the loop and "n",
+ * so the range check of "a[i]" can be done once when entering the loop, instead of every time "a[i]" is used.
+ *
+ * @author Zhao Liu
+ */
+public class LoopAnalysis {
+    // how many times each variable is written (assigned, declared, or read by "in") inside the loop
+    private Map<String, Integer> writeCounts = new HashMap<>();
+    private boolean hasArrayWrite = false;
+    private boolean hasCall = false;
+    // where the slots of the temporary values come from, null if it only collects the writes
+    private TemporarySlots slots;
+
+    // The slot in Memory saving the tag of current loop entry, -1 if no expression is hoisted out of this loop.
+    private int loopSlot = -1;
+
+    // for the range check of "a[i]", "i" is the induction variable
+    private String inductionVariable;
+    private int boundsSlot = -1;
+    private Set<String> boundsCheckedArrays = new LinkedHashSet<>();
+
+    /**
+     * @param slots the slots of the temporary values of this compile, null if it only collects the writes
+     *              (like for "--partial-evaluate")
+     */
+    public LoopAnalysis(TemporarySlots slots) {
+        this.slots = slots;
+    }
+
+    public void addWrite(String variable) {
+        writeCounts.merge(variable, 1, Integer::sum);
+    }
+
+    public int getWriteCount(String variable) {
+        return writeCounts.getOrDefault(variable, 0);
+    }
+
+    public boolean isWritten(String variable) {
+        return writeCounts.containsKey(variable);
+    }
+
+    public void addArrayWrite() {
+        hasArrayWrite = true;
+    }
+
+    public boolean hasArrayWrite() {
+        return hasArrayWrite;
+    }
+
+    public void addCall() {
+        hasCall = true;
+    }
+
+    public boolean hasCall() {
+        return hasCall;
+    }
+
+    /**
+     * @return the slot in Memory saving the tag of current loop entry, it is created at the first time
+     */
+    public int getLoopSlot() {
+        if (loopSlot < 0) {
+            loopSlot = slots.newSlot();
+        }
+        return loopSlot;
+    }
+
+    /**
+     * @return a new slot in Memory for a value hoisted out of this loop
+     */
+    public int newTemporarySlot() {
+        return slots.newSlot();
+    }
+
+    /**
+     * @return true if any expression is hoisted out of this loop
+     */
+    public boolean isLoopSlotUsed() {
+        return loopSlot >= 0;
+    }
+
+    public String getInductionVariable() {
+        return inductionVariable;
+    }
+
+    public void setInductionVariable(String inductionVariable) {
+        this.inductionVariable = inductionVariable;
+    }
+
+    /**
+     * @return the slot in Memory saving the tag of the loop entry whose range check has passed, it is created at the first time
+     */
+    public int getBoundsSlot() {
+        if (boundsSlot < 0) {
+            boundsSlot = slots.newSlot();
+        }
+        return boundsSlot;
+    }
+
+    public void addBoundsCheckedArray(String variable) {
+        boundsCheckedArrays.add(variable);
+    }
+
+    public Set<String> getBoundsCheckedArrays() {
+        return boundsCheckedArrays;
+    }
+}
@@ -1,3 +1,4 @@
+import java.io.PrintStream;
 import java.util.*;
 
 class Main {
@@ -14,10 +15,105 @@ class Main {
         //Scanner dataScanner = new Scanner(dataFileName);
         // !!!! for test
 
-        Scanner programScanner = new Scanner(args[0]);
-        Scanner dataScanner = new Scanner(args[1]);
+        // Options after the program file and the data file, like "--specialize"
+        Options options = Options.getInstance();
+
+        try {
+            if (args[0].equals("--batch")) {
+                options.parse(args, 2);
+                // Run all the cases of the manifest in this JVM, see Batch.java
+                int failed = new Batch(args[1]).run(options);
+                System.exit(failed > 0 ? 1 : 0);
+            }
+
+            // All the arguments before the options are data files, like "java Main 1.code 1.data 2.data --threads=4"
+            int firstOption = 2;
+            while (firstOption < args.length && !args[firstOption].startsWith("--")) {
+                firstOption++;
+            }
+            options.parse(args, firstOption);
+            if (firstOption > 2) {
+                // Run the program with every data file at the same time, see DataShards.java
+                List<String> dataFileNames = Arrays.asList(args).subList(1, firstOption);
+                int failed = new DataShards(args[0], dataFileNames, options).run();
+                System.exit(failed > 0 ? 1 : 0);
+            }
+
+            // The output of the same program with the same data is saved, see ResultCache.java
+            // (not with "--profile-write" and "--partial-evaluate", which write files besides the output)
+            ResultCache cache = null;
+            if (options.getCacheDirectory() != null && options.getProfileWrite() == null
+                    && !options.isPartialEvaluate()) {
+                cache = new ResultCache(options.getCacheDirectory(), options.getCacheSize());
+                if (cache.replay(args)) {
+                    return;
+                }
+            }
+
+            run(args[0], args[1], options);
+
+            if (cache != null) {
+                cache.save();
+            }
+        } catch (CoreException e) {
+            // An error of the program, like "ERROR: ...!!!", stops running.
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse, check, optimize, and execute the program. Everything is printed into System.out,
+     * and an error of the program is thrown as CoreException.
+     * The profile of the last program is cleared first, see Batch.java
+     *
+     * @param programFileName the .code file
+     * @param dataFileName    the .data file
+     * @param options         the options
+     */
+    static void run(String programFileName, String dataFileName, Options options) {
+        Queue<Integer> inputDataQueue = readData(dataFileName);
+        Profile profile = Profile.getInstance();
+        Program program = compile(programFileName, inputDataQueue, options);
+        if (program == null) {
+            return;
+        }
+
+        if (options.getProfileWrite() != null) {
+            profile.startRecording();
+        }
+        execute(program, inputDataQueue, System.out, System.err, options);
+        if (options.getProfileWrite() != null) {
+            profile.save(options.getProfileWrite());
+        }
+    }
+
+    /**
+     * The parse tree of the checked and optimized program, and its IR with "--ir".
+     * Nothing in it changes when it is executed (except with "--specialize" and "--profile-write"),
+     * so it can be executed with different data files at the same time, see DataShards.java
+     */
+    static final class Program {
+        private Procedure procedure;
+        private Map<String, Function> functionMap;
+        private IrProgram irProgram;
+        // the number of temporary values given by "--licm" and "--cse", see TemporarySlots.java
+        private int temporarySlotCount;
+    }
+
+    /**
+     * Parse, check, and optimize the program.
+     *
+     * @param programFileName the .code file
+     * @param inputDataQueue  the values of the .data file, only used by "--partial-evaluate"
+     * @param options         the options
+     * @return the program, or null if the residual program has been printed by "--partial-evaluate"
+     */
+    static Program compile(String programFileName, Queue<Integer> inputDataQueue, Options options) {
+        Profile.getInstance().reset();
+
+        Scanner programScanner = new Scanner(programFileName);
         Queue<Object> tokenQueue = new LinkedList<>();
-        Queue<Integer> inputDataQueue = new LinkedList<>();
 
         // Print the token stream
         while (programScanner.currentToken() != Core.EOS && programScanner.currentToken() != Core.ERROR) {
@@ -40,14 +136,6 @@ class Main {
             programScanner.nextToken();
         }
 
-        // Read data from input file
-        while (dataScanner.currentToken() != Core.EOS && dataScanner.currentToken() != Core.ERROR) {
-            int value = dataScanner.getConst();
-            inputDataQueue.add(value);
-
-            dataScanner.nextToken();
-        }
-
         //System.out.println("===================Print Token Queue===================");
         //System.out.println(tokenQueue);
 
@@ -57,17 +145,127 @@ class Main {
         Procedure procedure = new Procedure();
         procedure.parse(tokenQueue, functionMap);
 
+        // Profile-guided optimization, see Profile.java
+        Profile profile = Profile.getInstance();
+        if (options.getProfileWrite() != null || options.getProfileUse() != null) {
+            profile.setProgram(programFileName);
+        }
+        if (options.getProfileUse() != null) {
+            profile.load(options.getProfileUse());
+        }
+
         //System.out.println("===================Semantic Check===================");
         Stack<Variable> variableStack = new Stack<>();
         Map<String, Function> functionCheckingMap = new HashMap<>();
         procedure.semanticChecking(variableStack, functionCheckingMap);
 
+        if (options.isPartialEvaluate()) {
+            // Print the program specialized against the .data file, instead of running it, see PartialEvaluator.java
+            List<Integer> residualInput = new ArrayList<>(inputDataQueue);
+            procedure.partialEvaluate(residualInput, functionMap).print();
+            PartialEvaluator.saveResidualInput(residualInput, options.getResidualData());
+            return null;
+        }
+
+        if (options.isOptimize()) {
+            int nodesBefore = procedure.countNodes();
+            procedure.fold();
+            int nodesAfter = procedure.countNodes();
+
+            if (options.isPrintOptimized()) {
+                System.out.println("Nodes before optimization: " + nodesBefore);
+                System.out.println("Nodes after optimization: " + nodesAfter);
+                procedure.print();
+            }
+        }
+
+        if (options.isInline() || profile.isLoaded()) {
+            procedure.inline(functionMap);
+        }
+        // the temporary values of "--licm" and "--cse" get their slots from this compile only
+        TemporarySlots slots = new TemporarySlots();
+        if (options.isLicm() || profile.isLoaded()) {
+            procedure.hoist(slots);
+        }
+        if (options.isCse()) {
+            procedure.eliminateCommonSubexpressions(slots);
+        }
+        if (options.isMemoize()) {
+            procedure.memoize();
+        }
+        if (options.isElideCounts()) {
+            procedure.elideReferenceCounts(functionMap);
+        }
+        if (options.isEarlyRelease()) {
+            procedure.markLastUses();
+        }
+        if (options.isFrameAllocate()) {
+            procedure.markFrameAllocations();
+        }
+
         //System.out.println("===================Print Parser Tree===================");
         //procedure.print();
 
+        Program program = new Program();
+        program.procedure = procedure;
+        program.functionMap = functionMap;
+        program.temporarySlotCount = slots.getCount();
+        if (options.isIr()) {
+            // Execute the optimized IR instead of the parse tree, see IrFunction.java
+            program.irProgram = procedure.lower();
+            new PassManager(options.getIrPasses(), options.isDumpIr()).run(program.irProgram);
+        }
+        return program;
+    }
+
+    /**
+     * Execute the program with a new Memory.
+     *
+     * @param program        the compiled program
+     * @param inputDataQueue the values of the .data file
+     * @param output         where the program prints
+     * @param statsOutput    where "--memoize-stats" and "--gc-stats" print
+     * @param options        the options
+     */
+    static void execute(Program program, Queue<Integer> inputDataQueue, PrintStream output, PrintStream statsOutput,
+                        Options options) {
         //System.out.println("===================Execute the Program===================");
-        Memory memory = Memory.getInstance();
+        Memory memory = new Memory(output, program.temporarySlotCount);
         memory.setInputDataQueue(inputDataQueue);
-        procedure.execute(memory, functionMap);
+        try {
+            if (program.irProgram != null) {
+                new IrInterpreter(program.irProgram, memory).run();
+            } else {
+                program.procedure.execute(memory, program.functionMap);
+            }
+
+            if (options.isMemoizeStats()) {
+                memory.getMemoization().printStats(statsOutput);
+            }
+            if (options.isCollectorStats()) {
+                memory.getCollector().printStats(statsOutput);
+                memory.printHeapStats(statsOutput);
+            }
+        } finally {
+            memory.close();
+        }
+    }
+
+    /**
+     * Read data from input file
+     *
+     * @param dataFileName the .data file
+     * @return all the values
+     */
+    static Queue<Integer> readData(String dataFileName) {
+        Scanner dataScanner = new Scanner(dataFileName);
+        Queue<Integer> inputDataQueue = new LinkedList<>();
+        while (dataScanner.currentToken() != Core.EOS && dataScanner.currentToken() != Core.ERROR) {
+            int value = dataScanner.getConst();
+            inputDataQueue.add(value);
+
+            dataScanner.nextToken();
+        }
+        return inputDataQueue;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracing garbage collection by mark and sweep, option "--gc=mark-sweep".
+ * <p>
+ * Storing a reference or removing a frame does not do anything, so calls and "id := array id ;" are cheaper
+ * than reference counting. All the allocated arrays are kept in a list, and when "--gc-threshold=N" arrays have been
+ * allocated since the last collection, the arrays reachable from the frames and the global variables are marked
+ * (see Memory.findRoots()), and all the others are freed, each one printing "gc:n".
+ * So an array is freed later than reference counting, and there are fewer "gc:" lines in the middle of the output,
+ * but every array is still freed before the program ends.
+ *
+ * @author Zhao Liu
+ */
+public class MarkSweepCollector implements Collector {
+    private int threshold;
+    private int allocationsSinceCollection = 0;
+    private List<Memory.Value> heap = new ArrayList<>();
+    // the arrays allocated in the frames, alive but not in the heap
+    private int frameObjects = 0;
+
+    /**
+     * @param threshold the number of allocations between two collections
+     */
+    public MarkSweepCollector(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Collect first if the threshold has been crossed, so the arrays freed are printed before the new one.
+     * The new array is not in the heap yet, so its mark (it is reachable) is cleared here instead of by the sweep.
+     */
+    public void allocate(Memory memory, Memory.Value value) {
+        allocationsSinceCollection++;
+        if (allocationsSinceCollection >= threshold) {
+            collect(memory);
+            value.marked = false;
+        }
+        heap.add(value);
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    public void allocateInFrame(Memory memory, Memory.Value value) {
+        frameObjects++;
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    public void releaseFrame(Memory memory, List<Memory.Value> values) {
+        frameObjects -= values.size();
+        memory.getOutput().println("gc:" + (heap.size() + frameObjects));
+    }
+
+    public void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal) {
+    }
+
+    public void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal) {
+    }
+
+    public void collect(Memory memory) {
+        allocationsSinceCollection = 0;
+
+        List<Memory.Value> roots = new ArrayList<>();
+        memory.findRoots(roots);
+        for (Memory.Value root : roots) {
+            root.marked = true;
+        }
+
+        // Sweep: keep the marked arrays in the same order, and clear the marks for the next collection
+        List<Memory.Value> alive = new ArrayList<>();
+        int totalObjects = heap.size() + frameObjects;
+        for (Memory.Value value : heap) {
+            if (value.marked) {
+                value.marked = false;
+                alive.add(value);
+            } else {
+                memory.free(value);
+                totalObjects--;
+                memory.getOutput().println("gc:" + totalObjects);
+            }
+        }
+        heap = alive;
+    }
+}
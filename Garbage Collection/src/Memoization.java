@@ -0,0 +1,213 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memoization of function calls, with option "--memoize".
+ * <p>
+ * A function whose result only depends on the contents of its arguments (see InlineAnalysis.isMemoizable()) can skip
+ * its body when it is called again with the same contents: the formal parameters it writes get the contents saved
+ * after the first call. The key of a call is the function name, the type and the contents of every argument,
+ * and which arguments share the same array (a function writing one array and reading another one gives
+ * a different result when both are the same array).
+ * <p>
+ * Every array keeps the hash of its contents, updated by each write (see Memory.Value.setElement()), so the hash of
+ * a call does not need to read the arrays. The contents are only compared when the hash matches.
+ * <p>
+ * At most "--memoize-size=N" calls are saved, and the least recently used one is removed first.
+ * The hits and misses of each function are counted, printed by "--memoize-stats".
+ * A function which has missed MAX_MISSES_WITHOUT_HIT times without any hit is not memoized any more,
+ * since copying its arguments only costs time.
+ * <p>
+ * Every execution has its own saved calls, see Memory.getMemoization(). So the functions which are not memoized any more
+ * are also kept here, instead of changing the parse tree shared by all the executions.
+ *
+ * @author Zhao Liu
+ */
+public class Memoization {
+    public static final int MAX_MISSES_WITHOUT_HIT = 256;
+
+    // the saved calls, in the order of the last time they are used
+    private Map<Key, int[][]> results;
+    // the hits and misses of each function
+    private Map<String, long[]> counters = new LinkedHashMap<>();
+    // the functions which are not memoized any more
+    private Set<String> stoppedFunctions = new HashSet<>();
+
+    /**
+     * The key of a call. The contents of a key made by newKey() are the arrays of the arguments,
+     * so it has to be copied by copy() before the arguments change.
+     */
+    public static final class Key {
+        private String functionName;
+        private Core[] types;
+        private int[][] contents;
+        // for each argument, the index of the first argument sharing the same value
+        private int[] shares;
+        private int hash;
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) object;
+            return hash == key.hash && functionName.equals(key.functionName) && Arrays.equals(types, key.types)
+                    && Arrays.equals(shares, key.shares) && Arrays.deepEquals(contents, key.contents);
+        }
+
+        /**
+         * @return a key with its own copy of the contents
+         */
+        public Key copy() {
+            Key key = new Key();
+            key.functionName = functionName;
+            key.types = types;
+            key.shares = shares;
+            key.hash = hash;
+            key.contents = new int[contents.length][];
+            for (int i = 0; i < contents.length; i++) {
+                key.contents[i] = contents[i] == null ? null : contents[i].clone();
+            }
+            return key;
+        }
+    }
+
+    /**
+     * @param maxEntries the largest number of saved calls
+     */
+    public Memoization(int maxEntries) {
+        results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[][]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param functionName a memoizable function, see Function.isMemoizable()
+     * @return true if its calls are still memoized
+     */
+    public boolean isMemoizing(String functionName) {
+        return !stoppedFunctions.contains(functionName);
+    }
+
+    /**
+     * Make the key of a call from the values of its arguments.
+     *
+     * @param functionName the function
+     * @param arguments    the values of the arguments, see Memory.findArguments()
+     * @return the key, sharing the arrays of the arguments
+     */
+    public Key newKey(String functionName, Memory.Value[] arguments) {
+        Key key = new Key();
+        key.functionName = functionName;
+        key.types = new Core[arguments.length];
+        key.contents = new int[arguments.length][];
+        key.shares = new int[arguments.length];
+        long hash = functionName.hashCode();
+        for (int i = 0; i < arguments.length; i++) {
+            Memory.Value value = arguments[i];
+            int share = i;
+            for (int j = 0; j < i; j++) {
+                if (arguments[j] == value) {
+                    share = j;
+                    break;
+                }
+            }
+            key.shares[i] = share;
+
+            if (value == null) {
+                // an array which has not been initialized
+                hash = hash * 31 + share;
+            } else if (value.type == Core.INTEGER) {
+                key.types[i] = Core.INTEGER;
+                key.contents[i] = new int[]{value.intValue};
+                hash = hash * 31 + value.intValue;
+            } else {
+                key.types[i] = Core.ARRAY;
+                key.contents[i] = value.getContents();
+                hash = (hash * 31 + value.contentHash) * 31 + value.length();
+            }
+            hash = hash * 31 + share;
+        }
+        key.hash = Long.hashCode(hash);
+        return key;
+    }
+
+    /**
+     * If the call has been saved, write the saved contents into the written formal parameters.
+     *
+     * @param key               the key of the call
+     * @param writtenParameters the indexes of the formal parameters written by the function
+     * @param arguments         the values of the arguments
+     * @return true if the call has been saved, so the function does not need to run
+     */
+    public boolean replay(Key key, int[] writtenParameters, Memory.Value[] arguments) {
+        int[][] result = results.get(key);
+        long[] functionCounters = counters.computeIfAbsent(key.functionName, name -> new long[2]);
+        if (result == null) {
+            functionCounters[1]++;
+            return false;
+        }
+        functionCounters[0]++;
+        for (int i = 0; i < writtenParameters.length; i++) {
+            Memory.Value value = arguments[writtenParameters[i]];
+            if (value == null) {
+                // an array which has not been initialized, so it has not been written
+                continue;
+            }
+            if (value.type == Core.INTEGER) {
+                value.intValue = result[i][0];
+            } else {
+                value.setContents(result[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save the contents of the written formal parameters after running the function.
+     *
+     * @param key       the key of the call, copied before running the function
+     * @param function  the function
+     * @param arguments the values of the arguments
+     */
+    public void save(Key key, Function function, Memory.Value[] arguments) {
+        int[] writtenParameters = function.getWrittenParameters();
+        int[][] result = new int[writtenParameters.length][];
+        for (int i = 0; i < writtenParameters.length; i++) {
+            Memory.Value value = arguments[writtenParameters[i]];
+            if (value != null) {
+                result[i] = value.type == Core.INTEGER ? new int[]{value.intValue} : value.getContents().clone();
+            }
+        }
+        results.put(key, result);
+
+        long[] functionCounters = counters.get(key.functionName);
+        if (functionCounters[0] == 0 && functionCounters[1] >= MAX_MISSES_WITHOUT_HIT) {
+            stoppedFunctions.add(key.functionName);
+        }
+    }
+
+    /**
+     * Print the hits and misses of each function, like "memoize f: 900 hits, 100 misses"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            output.println("memoize " + entry.getKey() + ": " + entry.getValue()[0] + " hits, "
+                    + entry.getValue()[1] + " misses");
+        }
+    }
+}
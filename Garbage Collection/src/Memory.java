@@ -1,3 +1,4 @@
+import java.io.PrintStream;
 import java.util.*;
 
 /**
@@ -14,71 +15,180 @@ public class Memory {
      * This is an inner class.
      * Class Value will represent Heap in our program.
      */
-    private static class Value {
+    static class Value {
         public Core type;
         public int intValue;
         public int[] arrayValue;
+        // for "--heap=arena" and "--heap=off-heap": the elements are in the heap instead of arrayValue, see ArrayHeap.java
+        public ArrayHeap heap;
+        public int handle;
+        // for the reference counting collectors, see ReferenceCountingCollector.java and DeferredReferenceCountingCollector.java
         public int referenceCount;
-    }
+        // for the collectors scanning the frames, see MarkSweepCollector.java
+        public boolean marked;
+        // for the generational collector: 0 in the nursery, 1 in the old space, see GenerationalCollector.java
+        public int generation;
+        // allocated in a frame and freed with it, without counting its references, see Memory.initializeFrameArray()
+        public boolean isFrameAllocated;
+        // the sum of every element times the weight of its index, updated by each write (see Memoization.java)
+        public long contentHash;
+
+        /**
+         * Write an element of the array, and update the hash of the contents.
+         *
+         * @param index    int, it has been checked
+         * @param newValue the value
+         */
+        public void setElement(int index, int newValue) {
+            if (heap == null) {
+                contentHash += ((long) newValue - arrayValue[index]) * weight(index);
+                arrayValue[index] = newValue;
+            } else {
+                contentHash += ((long) newValue - heap.get(handle, index)) * weight(index);
+                heap.set(handle, index, newValue);
+            }
+        }
 
-    // This is the only one Instantiation of this class.
-    private static Memory instance = null;
+        /**
+         * @param index int, it has been checked
+         * @return an element of the array
+         */
+        public int getElement(int index) {
+            return heap == null ? arrayValue[index] : heap.get(handle, index);
+        }
 
-    /**
-     * In order to implement Singleton pattern, make constructor private.
-     */
-    private Memory() {
+        /**
+         * @return the length of the array
+         */
+        public int length() {
+            return heap == null ? arrayValue.length : heap.length(handle);
+        }
+
+        /**
+         * @return true if the array has been allocated
+         */
+        public boolean hasElements() {
+            return arrayValue != null || heap != null;
+        }
+
+        /**
+         * @return the elements of the array, which may be the array itself, so it has to be copied before changing it
+         */
+        public int[] getContents() {
+            return heap == null ? arrayValue : heap.copy(handle);
+        }
+
+        /**
+         * Replace all the elements of the array, and compute the hash of the contents again.
+         *
+         * @param contents the new elements, with the same length
+         */
+        public void setContents(int[] contents) {
+            if (heap == null) {
+                System.arraycopy(contents, 0, arrayValue, 0, contents.length);
+            } else {
+                heap.fill(handle, contents);
+            }
+            contentHash = 0;
+            for (int i = 0; i < contents.length; i++) {
+                contentHash += contents[i] * weight(i);
+            }
+        }
+
+        // an odd number for each index, so a new array filled with 0 has hash 0
+        private static long weight(int index) {
+            return (index * 0x9E3779B97F4A7C15L) ^ 0xBF58476D1CE4E5B9L | 1;
+        }
     }
 
     /**
-     * Singleton pattern
+     * A new memory for one execution of the program, with the main frame.
+     * Every execution has its own memory, so the same parse tree can run with different data files at the same time.
      *
-     * @return the single instance
+     * @param output             where the program prints, "out" and "gc:"
+     * @param temporarySlotCount the number of temporary values of the program, see TemporarySlots.java
      */
-    public static synchronized Memory getInstance() {
-        if (instance == null) {
-            instance = new Memory();
-            Stack<Map<String, Value>> mainFrameVariablesStack = new Stack<>();
-            instance.localVariablesStack.push(mainFrameVariablesStack);
-        }
-        return instance;
+    public Memory(PrintStream output, int temporarySlotCount) {
+        this.output = output;
+        temporaryValues = new int[temporarySlotCount];
+        temporaryTags = new int[temporarySlotCount];
+        Stack<Map<String, Value>> mainFrameVariablesStack = new Stack<>();
+        localVariablesStack.push(mainFrameVariablesStack);
+        frameArrays.push(null);
     }
 
     private Map<String, Value> global = new HashMap<>();
     private Stack<Stack<Map<String, Value>>> localVariablesStack = new Stack<>();
+    // The arrays allocated in each frame by "--frame-allocate" (null if none), freed when the frame is popped
+    private Stack<List<Value>> frameArrays = new Stack<>();
     private Queue<Integer> inputDataQueue;
-    private int totalObjects = 0;
+    private PrintStream output;
+    // The garbage collector, chosen by option "--gc", see Collector.java
+    private Collector collector = Collector.newCollector(Options.getInstance());
+    // The heap holding all the arrays with option "--heap", null if every array is its own int[], see ArrayHeap.java
+    private ArrayHeap heap = ArrayHeap.newHeap(Options.getInstance());
+    // The freed arrays kept for reuse with option "--pool", null without it (or with another heap)
+    private ArrayPool pool = Options.getInstance().isPool() && heap == null
+            ? new ArrayPool(Options.getInstance().getPoolSize(), Options.getInstance().getPoolLimit()) : null;
+    // The saved calls of this execution, for "--memoize"
+    private Memoization memoization = new Memoization(Options.getInstance().getMemoizeSize());
+
+    // Where a variable lives, used by specialized nodes (see SpecializedNode.java)
+    public static final int REGION_NONE = 0;
+    public static final int REGION_LOCAL = 1;
+    public static final int REGION_GLOBAL = 2;
+    // It is increased every time a local variable hides a global variable with the same name.
+    // Specialized nodes reading global variables are only valid while it does not change.
+    private int shadowEpoch = 0;
+
+    // Temporary values computed by the optimizations (like "--licm"), indexed by slot numbers given before execution.
+    // A value is only valid when its tag matches, for example the tag of a loop entry.
+    // The slot numbers are given by each compile (see TemporarySlots.java), so the arrays have one element for each slot.
+    private int[] temporaryValues;
+    private int[] temporaryTags;
+    private int temporaryTagCounter = 0;
 
     // Use this flag to keep track of when we finish the DeclSeq
     private boolean declSeqFinished = false;
     private boolean executingFunction = false;
     private boolean initializeFormalParams = false;
+    // The formal parameters being initialized are not counted, see Function.markBalancedParameters()
+    private boolean parameterCountElided = false;
 
     public void pushNewVariableStack() {
         Stack<Map<String, Value>> newVariablesStack = new Stack<>();
         localVariablesStack.push(newVariablesStack);
+        frameArrays.push(null);
     }
 
     public void popVariableStack() {
+        popVariableStack(0);
+    }
+
+    /**
+     * Pop the top frame, whose first formal parameters may not be counted (see Function.markBalancedParameters()).
+     *
+     * @param uncountedParameters the number of formal parameters at the bottom of the frame which are not counted
+     */
+    public void popVariableStack(int uncountedParameters) {
+        // pop the top Stack/Frame
+        Stack<Map<String, Value>> topStack = localVariablesStack.pop();
+
         // Garbage collection all the Variables and Objects from the top Stack/Frame
-        Stack<Map<String, Value>> topStack = localVariablesStack.peek();
-        for (Map<String, Value> localVariableMap : topStack) {
-            for (Map.Entry<String, Value> entry : localVariableMap.entrySet()) {
-                Value tempValue = entry.getValue();
+        if (uncountedParameters == 0) {
+            collector.popFrame(this, topStack, false);
+        } else if (uncountedParameters < topStack.size()) {
+            collector.popFrame(this, topStack.subList(uncountedParameters, topStack.size()), false);
+        }
 
-                // for Garbage Collection.
-                if (tempValue != null && tempValue.type == Core.ARRAY) {
-                    tempValue.referenceCount--;
-                    if (tempValue.referenceCount == 0) {
-                        totalObjects--;
-                        System.out.println("gc:" + totalObjects);
-                    }
-                }
+        // The arrays allocated in the frame die with it
+        List<Value> arrays = frameArrays.pop();
+        if (arrays != null) {
+            collector.releaseFrame(this, arrays);
+            for (Value array : arrays) {
+                free(array);
             }
         }
-
-        // pop the top Stack/Frame
-        localVariablesStack.pop();
     }
 
     /**
@@ -93,8 +203,7 @@ public class Memory {
             isExist = isExistGlobalAndLocal(variable);
         }
         if (isExist) {
-            System.out.println("ERROR: Variable " + variable + " has been doubly-declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has been doubly-declared!!!");
         }
 
         Value valueHeap = null;
@@ -105,6 +214,10 @@ public class Memory {
         }
 
         if (declSeqFinished || executingFunction) {
+            if (global.containsKey(variable)) {
+                shadowEpoch++;
+            }
+
             Map<String, Value> item = new HashMap<>();
             item.put(variable, valueHeap);
 
@@ -118,6 +231,8 @@ public class Memory {
 
     /**
      * Initializing the array by input size.
+     * The variable stops pointing to its old array before the new one is allocated, so when the heap is full
+     * (see newArray()), the old array is not counted as alive any more.
      *
      * @param variable variable name
      * @param size     array size
@@ -125,8 +240,7 @@ public class Memory {
     public void initializeArray(String variable, int size) {
         boolean isExist = isExistGlobalAndLocal(variable);
         if (!isExist) {
-            System.out.println("ERROR: Variable " + variable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has not been declared!!!");
         }
 
         boolean isInitialized = false;
@@ -135,56 +249,116 @@ public class Memory {
         for (Map<String, Value> temp : localVariables) {
             boolean isContain = temp.containsKey(variable);
             if (isContain) {
-                // for Garbage Collection.
-                Value tempValue = temp.get(variable);
-                if (tempValue != null) {
-                    tempValue.referenceCount--;
-                    if (tempValue.referenceCount == 0) {
-                        totalObjects--;
-                        System.out.println("gc:" + totalObjects);
-                    }
-                }
-
-                Value newValue = new Value();
-                newValue.type = Core.ARRAY;
-                // for Garbage Collection
-                newValue.referenceCount = 1;
-                newValue.arrayValue = new int[size];
-                totalObjects++;
-
+                // for Garbage Collection, the old array is released before allocating,
+                // so it can be collected if the heap is full
+                Value tempValue = temp.replace(variable, null);
+                collector.store(this, tempValue, null, false);
+                Value newValue = newArray(size);
                 temp.replace(variable, newValue);
-
-                // for Garbage Collection
-                System.out.println("gc:" + totalObjects);
+                collector.store(this, null, newValue, false);
+                collector.allocate(this, newValue);
 
                 isInitialized = true;
                 break;
             }
         }
         if (!isInitialized) {
-            Value tempValue = global.get(variable);
+            // for Garbage Collection, the same as a local variable
+            Value tempValue = global.replace(variable, null);
+            collector.store(this, tempValue, null, true);
+            Value newValue = newArray(size);
+            global.replace(variable, newValue);
+            collector.store(this, null, newValue, true);
+            collector.allocate(this, newValue);
+        }
+    }
 
-            // for Garbage Collection.
-            if (tempValue != null) {
-                tempValue.referenceCount--;
-                if (tempValue.referenceCount == 0) {
-                    totalObjects--;
-                    System.out.println("gc:" + totalObjects);
+    /**
+     * Initializing a local array variable which never escapes the frame (see Function.markFrameAllocations()).
+     * The array is allocated in the frame: its references are never counted, and it is freed when the frame is popped.
+     *
+     * @param variable variable name
+     * @param size     array size
+     */
+    public void initializeFrameArray(String variable, int size) {
+        for (Map<String, Value> temp : localVariablesStack.peek()) {
+            if (temp.containsKey(variable)) {
+                Value tempValue = temp.get(variable);
+                Value newValue = newArray(size);
+                newValue.isFrameAllocated = true;
+                temp.replace(variable, newValue);
+                if (frameArrays.peek() == null) {
+                    frameArrays.set(frameArrays.size() - 1, new ArrayList<>());
                 }
+                frameArrays.peek().add(newValue);
+
+                // for Garbage Collection, the old array may be a counted one
+                collector.store(this, tempValue, null, false);
+                collector.allocateInFrame(this, newValue);
+                return;
             }
+        }
+        initializeArray(variable, size);
+    }
 
-            Value newValue = new Value();
-            newValue.type = Core.ARRAY;
-            // for Garbage Collection
-            newValue.referenceCount = 1;
-            newValue.arrayValue = new int[size];
-            totalObjects++;
+    /**
+     * An array has been freed by the collector, so its storage can be used again.
+     * Nothing points to it any more, and it is never read again.
+     *
+     * @param value the array
+     */
+    public void free(Value value) {
+        if (value.heap != null) {
+            value.heap.free(value.handle);
+        } else if (pool != null && value.arrayValue != null) {
+            pool.release(value.arrayValue);
+            value.arrayValue = null;
+        }
+    }
 
-            global.replace(variable, newValue);
+    /**
+     * Print the size of the heap to the standard error, for option "--gc-stats"
+     *
+     * @param output where the size is printed, the standard error or the buffer of one data file
+     */
+    public void printHeapStats(PrintStream output) {
+        if (heap != null) {
+            heap.printStats(output);
+        }
+        if (pool != null) {
+            pool.printStats(output);
+        }
+    }
+
+    /**
+     * Free the storage of the heap, when the execution ends (see ArrayHeap.close()).
+     */
+    public void close() {
+        if (heap != null) {
+            heap.close();
+        }
+    }
 
-            // for Garbage Collection
-            System.out.println("gc:" + totalObjects);
+    private Value newArray(int size) {
+        Value newValue = new Value();
+        newValue.type = Core.ARRAY;
+        if (heap == null) {
+            newValue.arrayValue = pool == null ? new int[size] : pool.allocate(size);
+        } else {
+            int handle = heap.allocate(size);
+            if (handle < 0) {
+                // the heap is full, so free the unreachable arrays now instead of at the next collection
+                collector.collect(this);
+                handle = heap.allocate(size);
+                if (handle < 0) {
+                    throw new CoreException("ERROR: the heap is full, an array of " + size
+                            + " integers does not fit in --heap-size=" + Options.getInstance().getHeapSize() + "!!!");
+                }
+            }
+            newValue.heap = heap;
+            newValue.handle = handle;
         }
+        return newValue;
     }
 
     /**
@@ -196,8 +370,7 @@ public class Memory {
     public void update(String variable, int value) {
         boolean isExist = isExistGlobalAndLocal(variable);
         if (!isExist) {
-            System.out.println("ERROR: Variable " + variable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has not been declared!!!");
         }
 
         boolean isUpdated = false;
@@ -227,8 +400,7 @@ public class Memory {
     public void updateArray(String variable, int index, int value) {
         boolean isExist = isExistGlobalAndLocal(variable);
         if (!isExist) {
-            System.out.println("ERROR: Variable " + variable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has not been declared!!!");
         }
 
         boolean isUpdated = false;
@@ -261,21 +433,18 @@ public class Memory {
             if (valueHeap.type == Core.INTEGER) {
                 valueHeap.intValue = value;
             } else {
-                if (valueHeap.arrayValue == null) {
-                    System.out.println("ERROR: Array has not been initialized!!!");
-                    System.exit(1);
+                if (!valueHeap.hasElements()) {
+                    throw new CoreException("ERROR: Array has not been initialized!!!");
                 }
-                int size = valueHeap.arrayValue.length;
+                int size = valueHeap.length();
                 if (index >= size) {
-                    System.out.println("ERROR: Array has reached out of range!!!");
-                    System.exit(1);
+                    throw new CoreException("ERROR: Array has reached out of range!!!");
                 }
 
-                valueHeap.arrayValue[index] = value;
+                valueHeap.setElement(index, value);
             }
         } else {
-            System.out.println("ERROR: Array has not been initialized!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Array has not been initialized!!!");
         }
     }
 
@@ -288,8 +457,7 @@ public class Memory {
     public int find(String variable) {
         boolean isExist = isExistGlobalAndLocal(variable);
         if (!isExist) {
-            System.out.println("ERROR: Variable " + variable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has not been declared!!!");
         }
 
         Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
@@ -309,11 +477,10 @@ public class Memory {
         if (value.type == Core.INTEGER) {
             result = value.intValue;
         } else {
-            if (value.arrayValue == null) {
-                System.out.println("ERROR: Array " + variable + " has not been initialized!!!");
-                System.exit(1);
+            if (!value.hasElements()) {
+                throw new CoreException("ERROR: Array " + variable + " has not been initialized!!!");
             }
-            result = value.arrayValue[0];
+            result = value.getElement(0);
         }
 
         return result;
@@ -329,8 +496,7 @@ public class Memory {
     public int findArrayByIndex(String variable, int index) {
         boolean isExist = isExistGlobalAndLocal(variable);
         if (!isExist) {
-            System.out.println("ERROR: Variable " + variable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variable " + variable + " has not been declared!!!");
         }
 
         Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
@@ -347,21 +513,234 @@ public class Memory {
             value = global.get(variable);
         }
 
-        if (value.arrayValue == null) {
-            System.out.println("ERROR: Array " + variable + " has not been initialized!!!");
-            System.exit(1);
+        if (!value.hasElements()) {
+            throw new CoreException("ERROR: Array " + variable + " has not been initialized!!!");
         }
-        int size = value.arrayValue.length;
+        int size = value.length();
         if (index >= size) {
-            System.out.println("ERROR: Array " + variable + "[" + index + "] has reached out of range!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Array " + variable + "[" + index + "] has reached out of range!!!");
         }
 
-        result = value.arrayValue[index];
+        result = value.getElement(index);
 
         return result;
     }
 
+    /**
+     * Find which region the variable lives in, REGION_LOCAL (current frame) or REGION_GLOBAL.
+     * The search order is the same with find(): local variables first, then global variables.
+     *
+     * @param variable variable name
+     * @return REGION_LOCAL, REGION_GLOBAL, or REGION_NONE if there is not any value for the variable yet
+     */
+    public int findRegion(String variable) {
+        if (lookup(variable, false) != null) {
+            return REGION_LOCAL;
+        }
+        if (global.get(variable) != null) {
+            return REGION_GLOBAL;
+        }
+        return REGION_NONE;
+    }
+
+    /**
+     * Find the type of the value of variable, integer or array
+     *
+     * @param variable variable name
+     * @return Core.INTEGER, Core.ARRAY, or null if there is not any value for the variable yet
+     */
+    public Core findType(String variable) {
+        Value value = lookup(variable, false);
+        if (value == null) {
+            value = global.get(variable);
+        }
+        if (value == null) {
+            return null;
+        }
+        return value.type;
+    }
+
+    /**
+     * Fast version of find() for specialized nodes, which already know the region and the type of the variable.
+     * If the variable is not an integer in that region, throw SpecializedNode.DEOPTIMIZE.
+     *
+     * @param variable variable name
+     * @param isGlobal true for global region, false for local region
+     * @return the value
+     */
+    public int readInteger(String variable, boolean isGlobal) {
+        Value value = lookup(variable, isGlobal);
+        if (value == null || value.type != Core.INTEGER) {
+            throw SpecializedNode.DEOPTIMIZE;
+        }
+        return value.intValue;
+    }
+
+    /**
+     * Fast version of findArrayByIndex() for specialized nodes, which already know the region and the type of the variable.
+     * If the variable is not an initialized array in that region or the index is out of range, throw SpecializedNode.DEOPTIMIZE,
+     * so the generic node will report the error.
+     *
+     * @param variable variable name
+     * @param index    int
+     * @param isGlobal true for global region, false for local region
+     * @return the value
+     */
+    public int readArray(String variable, int index, boolean isGlobal) {
+        Value value = lookup(variable, isGlobal);
+        if (value == null || value.type != Core.ARRAY || !value.hasElements()
+                || index < 0 || index >= value.length()) {
+            throw SpecializedNode.DEOPTIMIZE;
+        }
+        return value.getElement(index);
+    }
+
+    /**
+     * Fast version of update() for specialized nodes.
+     * Nothing is changed if it throws SpecializedNode.DEOPTIMIZE.
+     *
+     * @param variable variable name
+     * @param newValue the value
+     * @param isGlobal true for global region, false for local region
+     */
+    public void writeInteger(String variable, int newValue, boolean isGlobal) {
+        Value value = lookup(variable, isGlobal);
+        if (value == null || value.type != Core.INTEGER) {
+            throw SpecializedNode.DEOPTIMIZE;
+        }
+        value.intValue = newValue;
+    }
+
+    /**
+     * Fast version of updateArray() for specialized nodes.
+     * Nothing is changed if it throws SpecializedNode.DEOPTIMIZE.
+     *
+     * @param variable variable name
+     * @param index    int
+     * @param newValue the value
+     * @param isGlobal true for global region, false for local region
+     */
+    public void writeArray(String variable, int index, int newValue, boolean isGlobal) {
+        Value value = lookup(variable, isGlobal);
+        if (value == null || value.type != Core.ARRAY || !value.hasElements()
+                || index < 0 || index >= value.length()) {
+            throw SpecializedNode.DEOPTIMIZE;
+        }
+        value.setElement(index, newValue);
+    }
+
+    /**
+     * Look up the value of variable only in one region.
+     *
+     * @param variable variable name
+     * @param isGlobal true for global region, false for local region (the current frame)
+     * @return the value, or null if not found
+     */
+    private Value lookup(String variable, boolean isGlobal) {
+        if (isGlobal) {
+            return global.get(variable);
+        }
+
+        Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
+        for (Map<String, Value> temp : localVariables) {
+            Value tempValue = temp.get(variable);
+            if (tempValue != null) {
+                return tempValue;
+            }
+        }
+        return null;
+    }
+
+    public int getShadowEpoch() {
+        return shadowEpoch;
+    }
+
+    /**
+     * Same with findArrayByIndex(), but the caller has already proven that
+     * the array has been initialized and the index is in range (see "--licm" in Loop.java).
+     *
+     * @param variable variable name
+     * @param index    int
+     * @return the value from array based on variable name and index
+     */
+    public int findArrayByIndexUnchecked(String variable, int index) {
+        Value value = lookup(variable, false);
+        if (value == null) {
+            value = global.get(variable);
+        }
+        return value.getElement(index);
+    }
+
+    /**
+     * Same with updateArray(), but the caller has already proven that
+     * the array has been initialized and the index is in range (see "--licm" in Loop.java).
+     *
+     * @param variable variable name
+     * @param index    int
+     * @param newValue the value
+     */
+    public void updateArrayUnchecked(String variable, int index, int newValue) {
+        Value value = lookup(variable, false);
+        if (value == null) {
+            value = global.get(variable);
+        }
+        value.setElement(index, newValue);
+    }
+
+    /**
+     * Find the size of an array
+     *
+     * @param variable variable name
+     * @return the size of array, or -1 if it is not an initialized array
+     */
+    public int findArrayLength(String variable) {
+        Value value = lookup(variable, false);
+        if (value == null) {
+            value = global.get(variable);
+        }
+        if (value == null || value.type != Core.ARRAY || !value.hasElements()) {
+            return -1;
+        }
+        return value.length();
+    }
+
+    /**
+     * @return a tag which has never been used before
+     */
+    public int newTemporaryTag() {
+        temporaryTagCounter++;
+        return temporaryTagCounter;
+    }
+
+    /**
+     * @param slot slot number
+     * @return the temporary value in slot, 0 if nothing has been saved
+     */
+    public int getTemporary(int slot) {
+        return temporaryValues[slot];
+    }
+
+    /**
+     * @param slot slot number
+     * @param tag  the tag given when the value was saved
+     * @return true if the value in slot has been saved with the same tag
+     */
+    public boolean isTemporaryValid(int slot, int tag) {
+        return temporaryTags[slot] == tag;
+    }
+
+    /**
+     * Save a temporary value
+     *
+     * @param slot  slot number
+     * @param tag   the tag of this value
+     * @param value the value
+     */
+    public void setTemporary(int slot, int tag, int value) {
+        temporaryValues[slot] = value;
+        temporaryTags[slot] = tag;
+    }
+
     /**
      * the left-hand side will have the same reference value as the id on the right-hand side
      * both variables "point" to the same array
@@ -372,8 +751,7 @@ public class Memory {
     public void copyBySharing(String lhsVariable, String rhsVariable) {
         boolean isLhsExist = isExistGlobalAndLocal(lhsVariable);
         if (!isLhsExist) {
-            System.out.println("ERROR: Variables " + lhsVariable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variables " + lhsVariable + " has not been declared!!!");
         }
 
         boolean isCopied = false;
@@ -405,8 +783,7 @@ public class Memory {
             }
         }
         if (!isRhsExist) {
-            System.out.println("ERROR: Variables " + rhsVariable + " has not been declared!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: Variables " + rhsVariable + " has not been declared!!!");
         }
 
         for (Map<String, Value> temp : rightHandSideVariables) {
@@ -426,19 +803,12 @@ public class Memory {
         for (Map<String, Value> temp : localVariables) {
             boolean isContain = temp.containsKey(lhsVariable);
             if (isContain) {
-                // for Garbage Collection.
                 Value tempValue = temp.get(lhsVariable);
-                if (tempValue != null) {
-                    tempValue.referenceCount--;
-                    if (tempValue.referenceCount == 0) {
-                        totalObjects--;
-                        System.out.println("gc:" + totalObjects);
-                    }
-                }
-
                 temp.replace(lhsVariable, rhsValue);
-                if (rhsValue != null) {
-                    rhsValue.referenceCount++;
+
+                // for Garbage Collection.
+                if (!initializeFormalParams || !parameterCountElided) {
+                    collector.store(this, tempValue, rhsValue, false);
                 }
 
                 isCopied = true;
@@ -446,20 +816,11 @@ public class Memory {
             }
         }
         if (!isCopied) {
-            // for Garbage Collection.
             Value tempValue = global.get(lhsVariable);
-            if (tempValue != null) {
-                tempValue.referenceCount--;
-                if (tempValue.referenceCount == 0) {
-                    totalObjects--;
-                    System.out.println("gc:" + totalObjects);
-                }
-            }
-
             global.replace(lhsVariable, rhsValue);
-            if (rhsValue != null) {
-                rhsValue.referenceCount++;
-            }
+
+            // for Garbage Collection.
+            collector.store(this, tempValue, rhsValue, true);
         }
     }
 
@@ -469,21 +830,12 @@ public class Memory {
         }
 
         // Garbage collection all the Variables and Objects for the Global
-        for (Map.Entry<String, Value> entry : global.entrySet()) {
-            String variable = entry.getKey();
-            Value tempValue = entry.getValue();
-
-            // for Garbage Collection.
-            if (tempValue != null && tempValue.type == Core.ARRAY) {
-                tempValue.referenceCount--;
-                if (tempValue.referenceCount == 0) {
-                    totalObjects--;
-                    System.out.println("gc:" + totalObjects);
-                }
-            }
+        Map<String, Value> globalValues = new HashMap<>(global);
+        global.replaceAll((variable, value) -> null);
+        collector.popFrame(this, List.of(globalValues), true);
 
-            global.replace(variable, null);
-        }
+        // Nothing is reachable any more
+        collector.collect(this);
     }
 
     /**
@@ -545,6 +897,28 @@ public class Memory {
         return isFound;
     }
 
+    /**
+     * Find the values of the arguments of a memoized call (see Memoization.java), in the current frame or global.
+     *
+     * @param arguments the arguments
+     * @return the values, null for an array which has not been initialized
+     */
+    public Value[] findArguments(List<String> arguments) {
+        Value[] values = new Value[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            String argument = arguments.get(i);
+            if (!isExistGlobalAndLocal(argument)) {
+                throw new CoreException("ERROR: Variables " + argument + " has not been declared!!!");
+            }
+
+            values[i] = lookup(argument, false);
+            if (values[i] == null) {
+                values[i] = global.get(argument);
+            }
+        }
+        return values;
+    }
+
     public int localSize() {
         Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
         return localVariables.size();
@@ -554,6 +928,115 @@ public class Memory {
         return global.size();
     }
 
+    /**
+     * Bind the formal parameters of an inlined call (see Call.executeInlined()) in a new scope of the current frame.
+     * Each formal parameter shares the value of its argument, the same as copyBySharing() for a new frame.
+     *
+     * @param parameters the formal parameters
+     * @param arguments  the arguments, found in the current frame or global
+     */
+    public void bindParameters(List<String> parameters, List<String> arguments) {
+        Map<String, Value> scope = new LinkedHashMap<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            String argument = arguments.get(i);
+            if (!isExistGlobalAndLocal(argument)) {
+                throw new CoreException("ERROR: Variables " + argument + " has not been declared!!!");
+            }
+
+            Value value = lookup(argument, false);
+            if (value == null) {
+                value = global.get(argument);
+            }
+            collector.store(this, null, value, false);
+            if (global.containsKey(parameters.get(i))) {
+                shadowEpoch++;
+            }
+            scope.put(parameters.get(i), value);
+        }
+        localVariablesStack.peek().push(scope);
+    }
+
+    /**
+     * Remove the local variables of the current frame above the size, with the same garbage collection as popVariableStack().
+     *
+     * @param size the size of local variables to keep
+     */
+    public void releaseLocalElements(int size) {
+        Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
+        if (size >= localVariables.size()) {
+            return;
+        }
+        List<Map<String, Value>> released = new ArrayList<>(localVariables.subList(size, localVariables.size()));
+        while (localVariables.size() > size) {
+            localVariables.pop();
+        }
+        collector.popFrame(this, released, false);
+    }
+
+    /**
+     * Reuse the current frame for a tail call (see Function.markTailCalls()):
+     * the arguments are found in the current frame, then all the local variables are removed,
+     * and the formal parameters are allocated again sharing the values of the arguments.
+     * The reference counts are changed the same as pushing a new frame and popping the old one.
+     *
+     * @param parameters the formal parameters
+     * @param arguments  the arguments, found in the current frame or global
+     */
+    public void rebindFrame(List<String> parameters, List<String> arguments) {
+        Value[] values = new Value[parameters.size()];
+        for (int i = 0; i < values.length; i++) {
+            String argument = arguments.get(i);
+            if (!isExistGlobalAndLocal(argument)) {
+                throw new CoreException("ERROR: Variables " + argument + " has not been declared!!!");
+            }
+
+            values[i] = lookup(argument, false);
+            if (values[i] == null) {
+                values[i] = global.get(argument);
+            }
+            collector.store(this, null, values[i], false);
+        }
+
+        releaseLocalElements(0);
+
+        Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
+        for (int i = 0; i < values.length; i++) {
+            if (global.containsKey(parameters.get(i))) {
+                shadowEpoch++;
+            }
+            Map<String, Value> item = new HashMap<>();
+            item.put(parameters.get(i), values[i]);
+            localVariables.push(item);
+        }
+    }
+
+    /**
+     * Release the arrays of local variables in the current frame which are never used again
+     * (see StatementSequence.markLastUses()), with the same garbage collection as removing them.
+     * The variables stay declared until their scope is popped, pointing to nothing.
+     * Without "<decl-seq>", the variables declared in the main body are kept in the global map (see allocate()),
+     * and there is no function using them.
+     *
+     * @param variables the local variables
+     */
+    public void releaseVariables(List<String> variables) {
+        Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
+        for (String variable : variables) {
+            Map<String, Value> variableScope = global;
+            for (Map<String, Value> scope : localVariables) {
+                if (scope.containsKey(variable)) {
+                    variableScope = scope;
+                    break;
+                }
+            }
+            Value value = variableScope.get(variable);
+            if (value != null && value.type == Core.ARRAY) {
+                variableScope.put(variable, null);
+                collector.store(this, value, null, variableScope == global);
+            }
+        }
+    }
+
     public void popLocalElement() {
         Stack<Map<String, Value>> localVariables = localVariablesStack.peek();
         localVariables.pop();
@@ -579,6 +1062,10 @@ public class Memory {
         this.initializeFormalParams = initializeFormalParams;
     }
 
+    public void setParameterCountElided(boolean parameterCountElided) {
+        this.parameterCountElided = parameterCountElided;
+    }
+
     public void setExecutingFunction(boolean executingFunction) {
         this.executingFunction = executingFunction;
     }
@@ -590,4 +1077,51 @@ public class Memory {
     public void setInputDataQueue(Queue<Integer> inputDataQueue) {
         this.inputDataQueue = inputDataQueue;
     }
+
+    /**
+     * @return where the program prints
+     */
+    public PrintStream getOutput() {
+        return output;
+    }
+
+    public Collector getCollector() {
+        return collector;
+    }
+
+    public Memoization getMemoization() {
+        return memoization;
+    }
+
+    /**
+     * Find every array which can be reached from the frames and the global variables, for a tracing collector.
+     * An array does not have any reference to other arrays, so the roots are all the reachable arrays.
+     *
+     * @param roots the reachable arrays are added into it, an array may be added more than once
+     */
+    public void findRoots(List<Value> roots) {
+        findStackRoots(roots);
+        addRoots(global, roots);
+    }
+
+    /**
+     * Find every array which can be reached from the frames, but not from the global variables.
+     *
+     * @param roots the reachable arrays are added into it, an array may be added more than once
+     */
+    public void findStackRoots(List<Value> roots) {
+        for (Stack<Map<String, Value>> frame : localVariablesStack) {
+            for (Map<String, Value> scope : frame) {
+                addRoots(scope, roots);
+            }
+        }
+    }
+
+    private static void addRoots(Map<String, Value> scope, List<Value> roots) {
+        for (Value value : scope.values()) {
+            if (value != null && value.type == Core.ARRAY) {
+                roots.add(value);
+            }
+        }
+    }
 }
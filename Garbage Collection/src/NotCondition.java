@@ -0,0 +1,109 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <cond> ==> not <cond>
+ *
+ * @author Zhao Liu
+ */
+public final class NotCondition implements Condition {
+    private Core notKeyword;
+    private Condition condition;
+
+    // The result decided by constant folding, null if it is not a constant.
+    private Boolean constantValue;
+
+    /**
+     * The grammar is: <cond> ==> not <cond>
+     *
+     * @param tokenQueue a sequence of tokens as input to the parser.
+     */
+    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+        tokenQueue.poll();
+        notKeyword = Core.NOT;
+
+        condition = Condition.parse(tokenQueue, functionMap);
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        condition.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<cond> ::= not <cond>", negate the value of "<cond>"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<cond>"
+     */
+    public boolean execute(Memory memory, Map<String, Function> functionMap) {
+        if (constantValue != null) {
+            return constantValue;
+        }
+        return !condition.execute(memory, functionMap);
+    }
+
+    public void fold() {
+        condition.fold();
+        if (condition.isConstant()) {
+            constantValue = !condition.getConstantValue();
+        }
+    }
+
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    public boolean getConstantValue() {
+        return constantValue;
+    }
+
+    public int countNodes() {
+        return 1 + condition.countNodes();
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        condition.hoist(loops);
+    }
+
+    public void markBoundsChecks(LoopAnalysis loop) {
+        condition.markBoundsChecks(loop);
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        if (constantValue != null) {
+            return builder.constant(constantValue ? 1 : 0);
+        }
+        return builder.emit(IrInstruction.Opcode.NOT, condition.lower(builder));
+    }
+
+    /**
+     * No "NOT" is needed to branch, the targets are swapped.
+     */
+    public void lowerBranch(IrBuilder builder, IrBlock trueTarget, IrBlock falseTarget) {
+        if (constantValue != null) {
+            Condition.super.lowerBranch(builder, trueTarget, falseTarget);
+            return;
+        }
+        condition.lowerBranch(builder, falseTarget, trueTarget);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        return condition.collectReads(variables);
+    }
+
+    public Condition substitute(PartialEvaluator evaluator) {
+        NotCondition residual = new NotCondition();
+        residual.notKeyword = notKeyword;
+        residual.condition = condition.substitute(evaluator);
+        return residual;
+    }
+
+    public void print(int indent) {
+        System.out.print(notKeyword.toString().toLowerCase() + " ");
+        condition.print(0);
+    }
+
+}
@@ -0,0 +1,375 @@
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The off-heap arrays, option "--heap=off-heap": the elements of the arrays live in native memory segments
+ * (the incubator module jdk.incubator.foreign of Java 17), outside of the JVM heap, so the garbage collector of the JVM
+ * only sees the parse tree and the small objects of Memory. The module has to be added when compiling and running,
+ * like "java --add-modules jdk.incubator.foreign Main 1.code 1.data --heap=off-heap".
+ * <p>
+ * The storage is reserved in chunks of CHUNK_INTEGERS integers (or one chunk for a larger array), up to "--heap-size=N"
+ * integers in all. A new array is allocated by bumping the top of the last chunk,
+ * and it is referred to by a handle, like in the arena (see ArrayArena.java): the index of its entry in the handle table,
+ * which has its chunk, its offset, and its length. When the collector frees an array (see Memory.free()), its block is
+ * put into the free list of its length at once: with "--gc=rc", that is when its reference count reaches 0.
+ * A new array takes the smallest free block which is large enough, and the rest of the block stays free.
+ * When nothing is large enough and the last chunk is full, the free blocks next to each other are merged first,
+ * and a free block at the top of the last chunk lowers the top, before a new chunk is reserved.
+ * Only when "--heap-size=N" integers are reserved and the array still does not fit, the live arrays of each chunk are
+ * slid down together, like in the arena; they keep their handles.
+ * <p>
+ * Every chunk has its own confined ResourceScope, so it can only be used by the thread executing the program.
+ * A chunk other than the last one is released as soon as its last array is freed: its free blocks are removed,
+ * it no longer counts against "--heap-size=N", and its scope is closed, which frees its native memory at once.
+ * The last chunk is kept until a new chunk is reserved after it, and close() frees all the chunks left
+ * when the execution ends (see Main.execute()).
+ * <p>
+ * Everything above the top of the last chunk is always 0, and a free block is cleared when it is used again.
+ * "--gc-stats" prints the integers used and reserved, the numbers of chunks, frees, and compactions.
+ *
+ * @author Zhao Liu
+ */
+public class OffHeapArrays implements ArrayHeap {
+    // 4 MB for each chunk
+    public static final int CHUNK_INTEGERS = 1 << 20;
+    // the offsets in the handle table are ints
+    private static final int MAX_CHUNK_INTEGERS = Integer.MAX_VALUE;
+
+    private long maxSize;
+    // a released chunk is null, so the chunk indexes of the other chunks do not change
+    private List<MemorySegment> chunks = new ArrayList<>();
+    // the number of live arrays in each chunk
+    private int[] chunkArrays = new int[16];
+    private long releasedChunks = 0;
+    private long reservedIntegers = 0;
+    // the top of the last chunk
+    private int top = 0;
+    // the free blocks by length, each one is (chunk, offset) packed in a long
+    private TreeMap<Integer, ArrayDeque<Long>> freeBlocks = new TreeMap<>();
+
+    // the handle table, an entry with offset -1 is free
+    private int[] chunkIndexes = new int[256];
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int handleCount = 0;
+    private int[] freeHandles = new int[256];
+    private int freeHandleCount = 0;
+
+    private long usedIntegers = 0;
+    private long peakUsed = 0;
+    private long frees = 0;
+    private long compactions = 0;
+
+    /**
+     * @param maxSize the largest number of integers in all the chunks
+     */
+    public OffHeapArrays(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int allocate(int size) {
+        if (size < 0) {
+            // the same as "new int[size]" without the off-heap arrays
+            throw new NegativeArraySizeException(String.valueOf(size));
+        }
+        long block = takeFreeBlock(size);
+        if (block < 0 && !fitsInLastChunk(size)) {
+            mergeFreeBlocks();
+            block = takeFreeBlock(size);
+            if (block < 0 && !fitsInLastChunk(size) && !reserveChunk(size)) {
+                compact();
+                block = takeFreeBlock(size);
+                if (block < 0 && !fitsInLastChunk(size)) {
+                    return -1;
+                }
+            }
+        }
+        if (block < 0) {
+            block = ((long) (chunks.size() - 1) << 32) | top;
+            top += size;
+        } else {
+            clear(chunks.get((int) (block >>> 32)), (int) block, size);
+        }
+
+        int handle;
+        if (freeHandleCount > 0) {
+            handle = freeHandles[--freeHandleCount];
+        } else {
+            if (handleCount == offsets.length) {
+                chunkIndexes = Arrays.copyOf(chunkIndexes, handleCount * 2);
+                offsets = Arrays.copyOf(offsets, handleCount * 2);
+                lengths = Arrays.copyOf(lengths, handleCount * 2);
+            }
+            handle = handleCount++;
+        }
+        chunkIndexes[handle] = (int) (block >>> 32);
+        chunkArrays[chunkIndexes[handle]]++;
+        offsets[handle] = (int) block;
+        lengths[handle] = size;
+        usedIntegers += size;
+        peakUsed = Math.max(peakUsed, usedIntegers);
+        return handle;
+    }
+
+    /**
+     * The block of the array goes into the free list of its length, so the next allocation can use it.
+     * If it was the last array of a chunk other than the last one, the whole chunk is released instead.
+     */
+    public void free(int handle) {
+        frees++;
+        usedIntegers -= lengths[handle];
+        int chunkIndex = chunkIndexes[handle];
+        if (lengths[handle] > 0) {
+            addFreeBlock(((long) chunkIndex << 32) | offsets[handle], lengths[handle]);
+        }
+        if (--chunkArrays[chunkIndex] == 0 && chunkIndex != chunks.size() - 1) {
+            releaseChunk(chunkIndex);
+        }
+        offsets[handle] = -1;
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        }
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    public int get(int handle, int index) {
+        return MemoryAccess.getIntAtIndex(chunks.get(chunkIndexes[handle]), offsets[handle] + index);
+    }
+
+    public void set(int handle, int index, int value) {
+        MemoryAccess.setIntAtIndex(chunks.get(chunkIndexes[handle]), offsets[handle] + index, value);
+    }
+
+    public int length(int handle) {
+        return lengths[handle];
+    }
+
+    public int[] copy(int handle) {
+        int[] contents = new int[lengths[handle]];
+        MemorySegment.ofArray(contents).copyFrom(slice(chunks.get(chunkIndexes[handle]), offsets[handle], contents.length));
+        return contents;
+    }
+
+    public void fill(int handle, int[] contents) {
+        slice(chunks.get(chunkIndexes[handle]), offsets[handle], contents.length).copyFrom(MemorySegment.ofArray(contents));
+    }
+
+    private boolean fitsInLastChunk(int size) {
+        return !chunks.isEmpty() && capacity(chunks.get(chunks.size() - 1)) - top >= size;
+    }
+
+    /**
+     * Reserve a new chunk for an array which fits nowhere else. The rest of the last chunk becomes a free block.
+     *
+     * @return false if the chunk does not fit in "--heap-size=N" integers, or there is no native memory left
+     */
+    private boolean reserveChunk(int size) {
+        long capacity = Math.min(Math.max(CHUNK_INTEGERS, size), maxSize - reservedIntegers);
+        if (capacity < Math.max(size, 1) || size > MAX_CHUNK_INTEGERS) {
+            return false;
+        }
+        // a new native segment is filled with 0
+        ResourceScope scope = ResourceScope.newConfinedScope();
+        MemorySegment chunk;
+        try {
+            chunk = MemorySegment.allocateNative(Math.min(capacity, MAX_CHUNK_INTEGERS) * Integer.BYTES, Integer.BYTES, scope);
+        } catch (OutOfMemoryError e) {
+            scope.close();
+            return false;
+        }
+        if (!chunks.isEmpty() && capacity(chunks.get(chunks.size() - 1)) > top) {
+            addFreeBlock(((long) (chunks.size() - 1) << 32) | top, capacity(chunks.get(chunks.size() - 1)) - top);
+        }
+        chunks.add(chunk);
+        if (chunks.size() > chunkArrays.length) {
+            chunkArrays = Arrays.copyOf(chunkArrays, chunks.size() * 2);
+        }
+        reservedIntegers += capacity(chunk);
+        top = 0;
+        if (chunks.size() > 1 && chunkArrays[chunks.size() - 2] == 0) {
+            releaseChunk(chunks.size() - 2);
+        }
+        return true;
+    }
+
+    /**
+     * Release a chunk without any live array: its free blocks are removed, the chunk becomes null,
+     * and its scope is closed, so its native memory is freed right now.
+     *
+     * @param chunkIndex the chunk, never the last one
+     */
+    private void releaseChunk(int chunkIndex) {
+        freeBlocks.values().removeIf(blocks -> {
+            blocks.removeIf(block -> (int) (block >>> 32) == chunkIndex);
+            return blocks.isEmpty();
+        });
+        MemorySegment chunk = chunks.set(chunkIndex, null);
+        reservedIntegers -= capacity(chunk);
+        chunk.scope().close();
+        releasedChunks++;
+    }
+
+    /**
+     * Free all the chunks left, when the execution ends. The arrays can not be used after this.
+     */
+    public void close() {
+        for (int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+            if (chunks.get(chunkIndex) != null) {
+                chunks.set(chunkIndex, null).scope().close();
+            }
+        }
+        reservedIntegers = 0;
+    }
+
+    private void addFreeBlock(long block, int length) {
+        freeBlocks.computeIfAbsent(length, key -> new ArrayDeque<>()).push(block);
+    }
+
+    /**
+     * Take the smallest free block of at least "size" integers, and put the rest of it back.
+     *
+     * @return the block, or -1 if there is none
+     */
+    private long takeFreeBlock(int size) {
+        if (size == 0) {
+            return -1;
+        }
+        Map.Entry<Integer, ArrayDeque<Long>> entry = freeBlocks.ceilingEntry(size);
+        if (entry == null) {
+            return -1;
+        }
+        long block = entry.getValue().pop();
+        if (entry.getValue().isEmpty()) {
+            freeBlocks.remove(entry.getKey());
+        }
+        if (entry.getKey() > size) {
+            addFreeBlock(block + size, entry.getKey() - size);
+        }
+        return block;
+    }
+
+    /**
+     * Merge the free blocks next to each other, in the order of their chunks and offsets.
+     * A block ending at the top of the last chunk is cleared and lowers the top instead.
+     */
+    private void mergeFreeBlocks() {
+        if (freeBlocks.isEmpty()) {
+            return;
+        }
+        // sort the free blocks by address, as (block, length) pairs
+        List<long[]> blocks = new ArrayList<>();
+        for (Map.Entry<Integer, ArrayDeque<Long>> entry : freeBlocks.entrySet()) {
+            for (long block : entry.getValue()) {
+                blocks.add(new long[]{block, entry.getKey()});
+            }
+        }
+        blocks.sort((a, b) -> Long.compare(a[0], b[0]));
+        freeBlocks.clear();
+
+        long start = blocks.get(0)[0];
+        long end = start + blocks.get(0)[1];
+        for (int i = 1; i <= blocks.size(); i++) {
+            // a block in the same chunk starting where the last one ends is merged with it
+            if (i < blocks.size() && blocks.get(i)[0] == end) {
+                end += blocks.get(i)[1];
+                continue;
+            }
+            int chunkIndex = (int) (start >>> 32);
+            if (chunkIndex == chunks.size() - 1 && (int) end == top) {
+                top = (int) start;
+                clear(chunks.get(chunkIndex), top, (int) (end - start));
+            } else {
+                addFreeBlock(start, (int) (end - start));
+            }
+            if (i < blocks.size()) {
+                start = blocks.get(i)[0];
+                end = start + blocks.get(i)[1];
+            }
+        }
+    }
+
+    /**
+     * Slide the live arrays of every chunk down over the free blocks, in the order of their offsets.
+     * The rest of the last chunk is cleared, and the rest of every other chunk becomes one free block.
+     */
+    private void compact() {
+        if (freeBlocks.isEmpty()) {
+            return;
+        }
+        compactions++;
+        freeBlocks.clear();
+        long[] order = new long[handleCount - freeHandleCount];
+        for (int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+            // sort the handles of the chunk by offset, as (offset, handle) pairs packed in a long
+            int count = 0;
+            for (int handle = 0; handle < handleCount; handle++) {
+                if (offsets[handle] >= 0 && chunkIndexes[handle] == chunkIndex) {
+                    order[count++] = ((long) offsets[handle] << 32) | handle;
+                }
+            }
+            Arrays.sort(order, 0, count);
+
+            MemorySegment chunk = chunks.get(chunkIndex);
+            if (chunk == null) {
+                continue;
+            }
+            int newTop = 0;
+            for (int next = 0; next < count; next++) {
+                int handle = (int) order[next];
+                int offset = offsets[handle];
+                // copyFrom() is safe when the old and the new place of the array overlap
+                if (offset != newTop) {
+                    slice(chunk, newTop, lengths[handle]).copyFrom(slice(chunk, offset, lengths[handle]));
+                }
+                offsets[handle] = newTop;
+                newTop += lengths[handle];
+            }
+            if (chunkIndex == chunks.size() - 1) {
+                clear(chunk, newTop, top - newTop);
+                top = newTop;
+            } else if (newTop < capacity(chunk)) {
+                addFreeBlock(((long) chunkIndex << 32) | newTop, capacity(chunk) - newTop);
+            }
+        }
+    }
+
+    private static void clear(MemorySegment chunk, int offset, int length) {
+        slice(chunk, offset, length).fill((byte) 0);
+    }
+
+    /**
+     * @return the integers from offset to offset + length - 1 of the chunk
+     */
+    private static MemorySegment slice(MemorySegment chunk, int offset, int length) {
+        return chunk.asSlice((long) offset * Integer.BYTES, (long) length * Integer.BYTES);
+    }
+
+    /**
+     * @return the number of integers in the chunk
+     */
+    private static int capacity(MemorySegment chunk) {
+        return (int) (chunk.byteSize() / Integer.BYTES);
+    }
+
+    /**
+     * Print the size of the storage,
+     * like "heap off-heap: 1200 of 1048576 integers used (peak 2000), 1 chunks (2 released), 30 frees, 0 compactions"
+     *
+     * @param output where the counters are printed, the standard error or the buffer of one data file
+     */
+    public void printStats(PrintStream output) {
+        long usedChunks = chunks.stream().filter(chunk -> chunk != null).count();
+        output.println("heap off-heap: " + usedIntegers + " of " + reservedIntegers + " integers used (peak "
+                + peakUsed + "), " + usedChunks + " chunks (" + releasedChunks + " released), "
+                + frees + " frees, " + compactions + " compactions");
+    }
+}
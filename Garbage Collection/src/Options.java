@@ -0,0 +1,433 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Store all the command-line options for running the program.
+ * The options are given after the program file and the data file (or the data files), for example:
+ * java Main 1.code 1.data --specialize
+ * <p>
+ * Applying Singleton Pattern for this class.
+ *
+ * @author Zhao Liu
+ */
+public class Options {
+
+    // This is the only one Instantiation of this class.
+    // It is created eagerly, so nodes can read options on every execution without any locking.
+    private static final Options instance = new Options();
+
+    // The heaps for option "--heap"
+    public static final String HEAP_JVM = "jvm";
+    public static final String HEAP_ARENA = "arena";
+    public static final String HEAP_OFF_HEAP = "off-heap";
+
+    // Rewrite Factor, Assign, Compare, and Expression nodes into specialized nodes after they have been executed.
+    private boolean specialize = false;
+    // How many times a node has to be executed before it specializes itself.
+    private int specializeThreshold = 1;
+    // Run constant folding and algebraic simplification on the parse tree before executing.
+    private boolean optimize = false;
+    // Print the number of nodes before and after optimization, and the optimized program.
+    private boolean printOptimized = false;
+    // Loop-invariant code motion and range check hoisting for "while" loops, see LoopAnalysis.java
+    private boolean licm = false;
+    // Common subexpression elimination in straight-line statements, see AvailableExpressions.java
+    private boolean cse = false;
+    // Run the body of small functions in the frame of the caller, see InlineAnalysis.java
+    private boolean inline = false;
+    // The largest number of nodes in a function body which can be inlined.
+    private int inlineThreshold = 40;
+    // Reuse the frame for a call of a function at the end of its own body, see Function.markTailCalls()
+    private boolean tailCalls = false;
+    // Record the execution profile into this file, see Profile.java
+    private String profileWrite = null;
+    // Optimize with the execution profile in this file.
+    private String profileUse = null;
+    // Lower the program into the SSA-based IR, optimize it, and execute the IR, see IrFunction.java
+    private boolean ir = false;
+    // Print the IR after lowering and after every pass.
+    private boolean dumpIr = false;
+    // The IR passes to run, like "--ir-passes=gvn,dce", null for the default passes (see PassManager.java)
+    private List<String> irPasses = null;
+    // Specialize the program against the .data file as a known prefix of the input, and print the residual program,
+    // see PartialEvaluator.java
+    private boolean partialEvaluate = false;
+    // Write the values of the .data file not used by partial evaluation into this file, null for printing them as an error
+    private String residualData = null;
+    // "and" and "or" do not execute the right side when the left side decides the result, see AndCondition.java
+    private boolean shortCircuit = false;
+    // Save the output of the program into this directory, and print the saved output if it runs again, see ResultCache.java
+    private String cacheDirectory = null;
+    // The largest size of the cache directory in KB.
+    private int cacheSize = 64 * 1024;
+    // Skip the calls of functions which have been called with the same contents of the arguments, see Memoization.java
+    private boolean memoize = false;
+    // The largest number of calls saved by memoization.
+    private int memoizeSize = 1024;
+    // Print the hits and misses of memoization after running.
+    private boolean memoizeStats = false;
+    // The number of threads running the program with more than one data file, see DataShards.java
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // The garbage collector of the arrays, see Collector.java
+    private String collector = Collector.REFERENCE_COUNTING;
+    // The number of arrays allocated between two collections of a tracing collector.
+    private int collectorThreshold = 64;
+    // The number of arrays marked or swept by one slice of the incremental collector, see IncrementalCollector.java
+    private int collectorBudget = 16;
+    // Where the elements of the arrays live: every array is its own int[], all of them are in one arena (ArrayArena.java),
+    // or they are in native memory segments outside of the JVM heap (OffHeapArrays.java)
+    private String heap = HEAP_JVM;
+    // The largest number of integers in the arena or the off-heap chunks
+    private int heapSize = Integer.MAX_VALUE - 8;
+    // The percentage of freed integers in the arena which triggers a compaction
+    private int compactThreshold = 50;
+    // Keep the freed arrays for reuse, see ArrayPool.java
+    private boolean pool = false;
+    // The largest number of arrays of one length in the pool
+    private int poolSize = 16;
+    // The largest number of integers in the pool
+    private int poolLimit = 1 << 20;
+    // Print the counters of the collector, see Collector.printStats()
+    private boolean collectorStats = false;
+    // Skip the balanced reference counts of formal parameters, see Function.markBalancedParameters()
+    private boolean elideCounts = false;
+    // Release the array of a local variable after its last use, see StatementSequence.markLastUses()
+    private boolean earlyRelease = false;
+    // Allocate the arrays which never escape the frame of a function in the frame, see Function.markFrameAllocations()
+    private boolean frameAllocate = false;
+
+    /**
+     * In order to implement Singleton pattern, make constructor private.
+     */
+    private Options() {
+    }
+
+    /**
+     * Singleton pattern
+     *
+     * @return the single instance
+     */
+    public static Options getInstance() {
+        return instance;
+    }
+
+    /**
+     * Read all the options from command-line arguments.
+     *
+     * @param args  command-line arguments
+     * @param start the position of the first option, options before it are file names
+     */
+    public void parse(String[] args, int start) {
+        for (int i = start; i < args.length; i++) {
+            String option = args[i];
+
+            if (option.equals("--specialize")) {
+                specialize = true;
+
+            } else if (option.startsWith("--specialize-threshold=")) {
+                specialize = true;
+                specializeThreshold = parseNumber(option);
+
+            } else if (option.equals("--optimize")) {
+                optimize = true;
+
+            } else if (option.equals("--print-optimized")) {
+                optimize = true;
+                printOptimized = true;
+
+            } else if (option.equals("--licm")) {
+                licm = true;
+
+            } else if (option.equals("--cse")) {
+                cse = true;
+
+            } else if (option.equals("--inline")) {
+                inline = true;
+
+            } else if (option.startsWith("--inline-threshold=")) {
+                inline = true;
+                inlineThreshold = parseNumber(option);
+
+            } else if (option.equals("--tail-calls")) {
+                tailCalls = true;
+
+            } else if (option.startsWith("--profile-write=")) {
+                profileWrite = parseFileName(option);
+
+            } else if (option.startsWith("--profile-use=")) {
+                profileUse = parseFileName(option);
+
+            } else if (option.equals("--ir")) {
+                ir = true;
+
+            } else if (option.equals("--dump-ir")) {
+                ir = true;
+                dumpIr = true;
+
+            } else if (option.startsWith("--ir-passes=")) {
+                ir = true;
+                String passes = option.substring(option.indexOf('=') + 1);
+                irPasses = passes.isEmpty() ? new ArrayList<>() : Arrays.asList(passes.split(","));
+
+            } else if (option.equals("--partial-evaluate")) {
+                partialEvaluate = true;
+
+            } else if (option.startsWith("--residual-data=")) {
+                partialEvaluate = true;
+                residualData = parseFileName(option);
+
+            } else if (option.equals("--short-circuit")) {
+                shortCircuit = true;
+
+            } else if (option.startsWith("--cache=")) {
+                cacheDirectory = parseFileName(option);
+
+            } else if (option.startsWith("--cache-size=")) {
+                cacheSize = parseNumber(option);
+
+            } else if (option.equals("--memoize")) {
+                memoize = true;
+
+            } else if (option.startsWith("--memoize-size=")) {
+                memoize = true;
+                memoizeSize = parseNumber(option);
+
+            } else if (option.equals("--memoize-stats")) {
+                memoize = true;
+                memoizeStats = true;
+
+            } else if (option.startsWith("--threads=")) {
+                threads = Math.max(1, parseNumber(option));
+
+            } else if (option.startsWith("--gc=")) {
+                collector = option.substring(option.indexOf('=') + 1);
+                if (!Collector.NAMES.contains(collector)) {
+                    throw new CoreException("ERROR: unknown garbage collector " + collector + "!!!");
+                }
+
+            } else if (option.startsWith("--gc-threshold=")) {
+                collectorThreshold = Math.max(1, parseNumber(option));
+
+            } else if (option.startsWith("--gc-budget=")) {
+                collectorBudget = Math.max(1, parseNumber(option));
+
+            } else if (option.startsWith("--heap=")) {
+                heap = option.substring(option.indexOf('=') + 1);
+                if (!heap.equals(HEAP_JVM) && !heap.equals(HEAP_ARENA) && !heap.equals(HEAP_OFF_HEAP)) {
+                    throw new CoreException("ERROR: unknown heap " + heap + "!!!");
+                }
+
+            } else if (option.startsWith("--heap-size=")) {
+                heapSize = Math.max(1, parseNumber(option));
+
+            } else if (option.startsWith("--compact-threshold=")) {
+                compactThreshold = Math.max(1, Math.min(100, parseNumber(option)));
+
+            } else if (option.equals("--pool")) {
+                pool = true;
+
+            } else if (option.startsWith("--pool-size=")) {
+                pool = true;
+                poolSize = parseNumber(option);
+
+            } else if (option.startsWith("--pool-limit=")) {
+                pool = true;
+                poolLimit = parseNumber(option);
+
+            } else if (option.equals("--gc-stats")) {
+                collectorStats = true;
+
+            } else if (option.equals("--elide-counts")) {
+                elideCounts = true;
+
+            } else if (option.equals("--early-release")) {
+                earlyRelease = true;
+
+            } else if (option.equals("--frame-allocate")) {
+                frameAllocate = true;
+
+            } else {
+                throw new CoreException("ERROR: unknown option " + option + "!!!");
+            }
+        }
+    }
+
+    /**
+     * Read the number after symbol "=" from an option like "--specialize-threshold=3"
+     *
+     * @param option the option
+     * @return the number
+     */
+    private int parseNumber(String option) {
+        String number = option.substring(option.indexOf('=') + 1);
+        int result = 0;
+        try {
+            result = Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new CoreException("ERROR: option " + option + " needs a number!!!");
+        }
+        if (result < 0) {
+            throw new CoreException("ERROR: option " + option + " can not be negative!!!");
+        }
+        return result;
+    }
+
+    /**
+     * Read the file name after symbol "=" from an option like "--profile-write=1.profile"
+     *
+     * @param option the option
+     * @return the file name
+     */
+    private String parseFileName(String option) {
+        String fileName = option.substring(option.indexOf('=') + 1);
+        if (fileName.isEmpty()) {
+            throw new CoreException("ERROR: option " + option + " needs a file name!!!");
+        }
+        return fileName;
+    }
+
+    public boolean isSpecialize() {
+        return specialize;
+    }
+
+    public int getSpecializeThreshold() {
+        return specializeThreshold;
+    }
+
+    public boolean isOptimize() {
+        return optimize;
+    }
+
+    public boolean isPrintOptimized() {
+        return printOptimized;
+    }
+
+    public boolean isLicm() {
+        return licm;
+    }
+
+    public boolean isCse() {
+        return cse;
+    }
+
+    public boolean isInline() {
+        return inline;
+    }
+
+    public int getInlineThreshold() {
+        return inlineThreshold;
+    }
+
+    public boolean isTailCalls() {
+        return tailCalls;
+    }
+
+    public String getProfileWrite() {
+        return profileWrite;
+    }
+
+    public String getProfileUse() {
+        return profileUse;
+    }
+
+    public boolean isIr() {
+        return ir;
+    }
+
+    public boolean isDumpIr() {
+        return dumpIr;
+    }
+
+    public List<String> getIrPasses() {
+        return irPasses;
+    }
+
+    public boolean isPartialEvaluate() {
+        return partialEvaluate;
+    }
+
+    public String getResidualData() {
+        return residualData;
+    }
+
+    public boolean isShortCircuit() {
+        return shortCircuit;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public boolean isMemoize() {
+        return memoize;
+    }
+
+    public int getMemoizeSize() {
+        return memoizeSize;
+    }
+
+    public boolean isMemoizeStats() {
+        return memoizeStats;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public String getCollector() {
+        return collector;
+    }
+
+    public int getCollectorThreshold() {
+        return collectorThreshold;
+    }
+
+    public boolean isElideCounts() {
+        return elideCounts;
+    }
+
+    public boolean isEarlyRelease() {
+        return earlyRelease;
+    }
+
+    public boolean isFrameAllocate() {
+        return frameAllocate;
+    }
+
+    public boolean isCollectorStats() {
+        return collectorStats;
+    }
+
+    public int getCollectorBudget() {
+        return collectorBudget;
+    }
+
+    public String getHeap() {
+        return heap;
+    }
+
+    public int getHeapSize() {
+        return heapSize;
+    }
+
+    public int getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    public boolean isPool() {
+        return pool;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getPoolLimit() {
+        return poolLimit;
+    }
+}
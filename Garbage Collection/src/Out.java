@@ -1,3 +1,4 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Stack;
@@ -10,7 +11,7 @@ import java.util.Stack;
  *
  * @author Zhao Liu
  */
-public class Out {
+public final class Out implements Statement {
     private Core outKeyword;
     private Core leftParenthesis;
     private Core rightParenthesis;
@@ -24,29 +25,24 @@ public class Out {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.OUT) {
-            System.out.println("ERROR: missing keyword 'out'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'out'!!!");
         }
         outKeyword = Core.OUT;
 
         if (tokenQueue.poll() != Core.LPAREN) {
-            System.out.println("ERROR: missing symbol '('!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol '('!!!");
         }
         leftParenthesis = Core.LPAREN;
 
-        expression = new Expression();
-        expression.parse(tokenQueue, functionMap);
+        expression = Expression.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.RPAREN) {
-            System.out.println("ERROR: missing symbol ')'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing symbol ')'!!!");
         }
         rightParenthesis = Core.RPAREN;
 
         if (tokenQueue.poll() != Core.SEMICOLON) {
-            System.out.println("ERROR: missing semicolon symbol ';'");
-            System.exit(1);
+            throw new CoreException("ERROR: missing semicolon symbol ';'");
         }
         semicolon = Core.SEMICOLON;
     }
@@ -74,7 +70,84 @@ public class Out {
      */
     public void execute(Memory memory, Map<String, Function> functionMap) {
         int value = expression.execute(memory, functionMap);
-        System.out.println(value);
+        memory.getOutput().println(value);
+    }
+
+    /**
+     * Constant folding for the expression.
+     */
+    public void fold() {
+        expression = expression.fold();
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        return 1 + expression.countNodes();
+    }
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+        expression.hoist(loops);
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        expression.markBoundsChecks(loop);
+    }
+
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        expression.eliminateCommonSubexpressions(available);
+    }
+
+    /**
+     * Build the IR of "<out>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        builder.emit(IrInstruction.Opcode.OUT, expression.lower(builder));
+    }
+
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        analysis.addOutput();
+        expression.collectReads(analysis.getNames());
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     * The output always stays in the residual program, so it is printed in the same order.
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        Out residual = new Out();
+        residual.outKeyword = outKeyword;
+        residual.leftParenthesis = leftParenthesis;
+        residual.expression = expression.partialEvaluate(evaluator);
+        residual.rightParenthesis = rightParenthesis;
+        residual.semicolon = semicolon;
+        evaluator.emit(residual);
     }
 
     /**
@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -45,8 +46,7 @@ public class Parameter {
     public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
         for (Variable temp : variableStack) {
             if (temp.getName().equals(name)) {
-                System.out.println("ERROR: The formal parameters should be distinct from each other. Formal parameter " + name + " has been used!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: The formal parameters should be distinct from each other. Formal parameter " + name + " has been used!!!");
             }
         }
 
@@ -86,6 +86,28 @@ public class Parameter {
     }
 
 
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        int count = 1;
+        if (parameter != null) {
+            count += parameter.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * @return all the names in "<parameters>", in order
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        for (Parameter current = this; current != null; current = current.parameter) {
+            names.add(current.name);
+        }
+        return names;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
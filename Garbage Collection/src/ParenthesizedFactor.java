@@ -0,0 +1,91 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <factor> ==> ( <expr> )
+ *
+ * @author Zhao Liu
+ */
+public final class ParenthesizedFactor implements Factor {
+    private Expression expression;
+
+    /**
+     * @param expression the expression inside the parentheses, which has been parsed
+     */
+    public ParenthesizedFactor(Expression expression) {
+        this.expression = expression;
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        expression.semanticChecking(variableStack, functionCheckingMap);
+    }
+
+    /**
+     * Handle case for "<factor> ::= ( <expr> )", the expression specializes and hoists itself
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    public int execute(Memory memory, Map<String, Function> functionMap) {
+        return expression.execute(memory, functionMap);
+    }
+
+    /**
+     * Constant folding: "( <expr> )" becomes "const" if the expression has been folded into a constant.
+     *
+     * @return the constant, or this factor itself
+     */
+    public Factor fold() {
+        expression = expression.fold();
+        Factor singleFactor = expression.getSingleFactor();
+        if (singleFactor != null && singleFactor.isConstant()) {
+            return singleFactor;
+        }
+        return this;
+    }
+
+    public int countNodes() {
+        return 1 + expression.countNodes();
+    }
+
+    public boolean isInvariant(LoopAnalysis loop) {
+        return expression.isInvariant(loop);
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        expression.hoist(loops);
+    }
+
+    public void markBoundsChecks(LoopAnalysis loop) {
+        expression.markBoundsChecks(loop);
+    }
+
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        expression.eliminateCommonSubexpressions(available);
+    }
+
+    public void appendKey(StringBuilder key) {
+        expression.appendKey(key);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        return expression.collectReads(variables);
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        return expression.lower(builder);
+    }
+
+    public Factor substitute(PartialEvaluator evaluator) {
+        return new ParenthesizedFactor(expression.substitute(evaluator));
+    }
+
+    public void print(int indent) {
+        System.out.print("(");
+        expression.print(0);
+        System.out.print(")");
+    }
+
+}
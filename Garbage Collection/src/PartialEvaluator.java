@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Partial evaluation (option "--partial-evaluate"): the .data file is a known prefix of the input, and the program is
+ * specialized against it. Everything which only depends on those values and constants is computed here,
+ * and the rest becomes a residual Core program, which reads the input after the known prefix.
+ * It is filled by partialEvaluate() of all the statements in the main body.
+ * <p>
+ * An integer variable of the main body is static if its value is known here, then it is replaced by its value
+ * everywhere it is read, and an assignment to it is not written into the residual program.
+ * Before anything the residual program runs may read a static variable, the variable becomes dynamic:
+ * its value is written into the residual program as "id := const ;" (see makeDynamic()).
+ * <p>
+ * 1. Arrays are always dynamic, so "new integer", array elements, and the "gc:" lines are left for the residual program.
+ * 2. "if" with a static condition only keeps the branch taken, and "while" with a static condition is unrolled.
+ * If the condition of a loop becomes dynamic, or the loop runs too long, the unrolling is undone (see State).
+ * 3. Inside "if" and "while" with a dynamic condition, the variables written in them become dynamic before them,
+ * and "in" can not be known any more, because it is not known how many times it runs.
+ * 4. A function may read and write global variables and its arguments, so they become dynamic before a call.
+ * Functions themselves are not specialized.
+ * <p>
+ * The values of the .data file which can not be used here (like the ones read inside a loop with a dynamic condition)
+ * are the beginning of the input of the residual program, see saveResidualInput().
+ *
+ * @author Zhao Liu
+ */
+public class PartialEvaluator {
+    // a loop with a static condition is not unrolled if it runs more times than this
+    private static final int MAX_UNROLLED_ITERATIONS = 100000;
+    // a loop with a static condition is not unrolled if it writes more residual statements than this
+    private static final int MAX_UNROLLED_STATEMENTS = 1000;
+
+    // the values of all the static variables
+    private Map<String, Integer> values = new HashMap<>();
+    private List<Integer> inputData;
+    private int inputPosition = 0;
+    private boolean isInputKnown = true;
+    // how many "if" and "while" with a dynamic condition are around the current statement
+    private int dynamicDepth = 0;
+
+    // the residual statements of each block being evaluated, and the variables declared in it
+    private Deque<List<Statement>> blocks = new ArrayDeque<>();
+    private Deque<List<String>> declaredVariables = new ArrayDeque<>();
+    private int emittedCount = 0;
+
+    private Set<String> globalVariables;
+    private Map<String, Function> functionMap;
+
+    // all the names used in the program, so an empty block can declare a new variable with another name
+    private Set<String> usedNames;
+    private int fillerCount = 0;
+
+    /**
+     * Everything needed to undo the unrolling of a loop, see Loop.partialEvaluate()
+     */
+    public static class State {
+        private Map<String, Integer> values;
+        private int inputPosition;
+        private boolean isInputKnown;
+        private int blockSize;
+        private int emittedCount;
+    }
+
+    /**
+     * @param inputData       the known prefix of the input
+     * @param usedNames       all the names used in the program
+     * @param globalVariables the names of all the global variables
+     * @param functionMap     all the functions
+     */
+    public PartialEvaluator(List<Integer> inputData, Set<String> usedNames, Set<String> globalVariables,
+                            Map<String, Function> functionMap) {
+        this.inputData = inputData;
+        this.usedNames = usedNames;
+        this.globalVariables = globalVariables;
+        this.functionMap = functionMap;
+        beginBlock();
+    }
+
+    public Function getFunction(String functionName) {
+        return functionMap.get(functionName);
+    }
+
+    /**
+     * @return the value of the variable, or null if it is dynamic (or an array)
+     */
+    public Integer getValue(String variable) {
+        return values.get(variable);
+    }
+
+    public void setValue(String variable, int value) {
+        values.put(variable, value);
+    }
+
+    /**
+     * The variable becomes dynamic without writing its value, because the residual program assigns it right now.
+     *
+     * @param variable the variable
+     */
+    public void forget(String variable) {
+        values.remove(variable);
+    }
+
+    /**
+     * The variable becomes dynamic, so its value is written into the residual program.
+     *
+     * @param variable the variable
+     */
+    public void makeDynamic(String variable) {
+        Integer value = values.remove(variable);
+        if (value != null) {
+            emit(Assign.fromConstant(variable, value));
+        }
+    }
+
+    /**
+     * All the global variables become dynamic, before a function call.
+     */
+    public void makeGlobalsDynamic() {
+        for (String variable : new ArrayList<>(values.keySet())) {
+            if (globalVariables.contains(variable)) {
+                makeDynamic(variable);
+            }
+        }
+    }
+
+    /**
+     * All the variables become dynamic, before an "if" or a "while" with a function call inside.
+     */
+    public void makeAllDynamic() {
+        for (String variable : new ArrayList<>(values.keySet())) {
+            makeDynamic(variable);
+        }
+    }
+
+    /**
+     * The variables written in an "if" or a "while" with a dynamic condition become dynamic before it.
+     *
+     * @param writes what is written in the "if" or the "while", see LoopAnalysis.java
+     */
+    public void makeWritesDynamic(LoopAnalysis writes) {
+        if (writes.hasCall()) {
+            makeAllDynamic();
+            return;
+        }
+        for (String variable : new ArrayList<>(values.keySet())) {
+            if (writes.isWritten(variable)) {
+                makeDynamic(variable);
+            }
+        }
+    }
+
+    /**
+     * Start to evaluate the body of an "if" or a "while" with a dynamic condition.
+     *
+     * @return the values of the static variables when entering the body
+     */
+    public Map<String, Integer> enterDynamic() {
+        dynamicDepth++;
+        return new HashMap<>(values);
+    }
+
+    /**
+     * Finish the body of an "if" or a "while" with a dynamic condition.
+     * A variable which was dynamic when entering the body may be static now,
+     * its value is written at the end of the body, so it is dynamic after the body whichever way the program goes.
+     *
+     * @param entryValues the values of the static variables when entering the body
+     * @param block       the residual statements of the body
+     */
+    public void exitDynamic(Map<String, Integer> entryValues, List<Statement> block) {
+        for (Map.Entry<String, Integer> entry : values.entrySet()) {
+            if (!entry.getValue().equals(entryValues.get(entry.getKey()))) {
+                block.add(Assign.fromConstant(entry.getKey(), entry.getValue()));
+            }
+        }
+        values = entryValues;
+        dynamicDepth--;
+    }
+
+    /**
+     * @return the next value of the known input, or null if it is not known
+     */
+    public Integer readInput() {
+        if (dynamicDepth > 0 || inputPosition >= inputData.size()) {
+            isInputKnown = false;
+        }
+        if (!isInputKnown) {
+            return null;
+        }
+        return inputData.get(inputPosition++);
+    }
+
+    /**
+     * A called function reads the input, so the position of the input is not known any more.
+     */
+    public void stopInput() {
+        isInputKnown = false;
+    }
+
+    /**
+     * @return how many values of the known input have been used
+     */
+    public int getInputPosition() {
+        return inputPosition;
+    }
+
+    /**
+     * @param variable  a variable declared in the current block
+     * @param isInteger true if it is an integer, which is 0 when declared
+     */
+    public void declare(String variable, boolean isInteger) {
+        declaredVariables.peek().add(variable);
+        if (isInteger) {
+            values.put(variable, 0);
+        }
+    }
+
+    /**
+     * Write a statement into the residual program.
+     *
+     * @param statement the residual statement
+     */
+    public void emit(Statement statement) {
+        blocks.peek().add(statement);
+        emittedCount++;
+    }
+
+    public void beginBlock() {
+        blocks.push(new ArrayList<>());
+        declaredVariables.push(new ArrayList<>());
+    }
+
+    /**
+     * Finish the current block, the variables declared in it are gone.
+     *
+     * @return the residual statements of the block
+     */
+    public List<Statement> endBlock() {
+        for (String variable : declaredVariables.pop()) {
+            values.remove(variable);
+        }
+        return blocks.pop();
+    }
+
+    /**
+     * Write the residual statements of the branch taken by a static "if", or one iteration of an unrolled loop,
+     * into the current block. If they declare any variable, they keep their own scope inside "if 0 = 0 then".
+     *
+     * @param block the residual statements
+     */
+    public void emitBlock(List<Statement> block) {
+        for (Statement statement : block) {
+            if (statement.isDeclaration()) {
+                blocks.peek().add(If.fromBlock(Condition.alwaysTrue(), toSequence(block), null));
+                return;
+            }
+        }
+        blocks.peek().addAll(block);
+    }
+
+    /**
+     * A "<stmt-seq>" has at least one statement, so an empty block declares a new integer which is never used.
+     *
+     * @param block the residual statements
+     * @return the residual "<stmt-seq>"
+     */
+    public StatementSequence toSequence(List<Statement> block) {
+        if (block.isEmpty()) {
+            String filler;
+            do {
+                filler = "residual" + fillerCount++;
+            } while (usedNames.contains(filler));
+            block.add(Declaration.fromInteger(filler));
+        }
+        return StatementSequence.fromStatements(block);
+    }
+
+    /**
+     * @return everything needed to undo what is evaluated after this
+     */
+    public State saveState() {
+        State state = new State();
+        state.values = new HashMap<>(values);
+        state.inputPosition = inputPosition;
+        state.isInputKnown = isInputKnown;
+        state.blockSize = blocks.peek().size();
+        state.emittedCount = emittedCount;
+        return state;
+    }
+
+    /**
+     * Undo everything evaluated after saveState(), in the same block.
+     *
+     * @param state the saved state
+     */
+    public void restoreState(State state) {
+        values = state.values;
+        inputPosition = state.inputPosition;
+        isInputKnown = state.isInputKnown;
+        List<Statement> block = blocks.peek();
+        block.subList(state.blockSize, block.size()).clear();
+        emittedCount = state.emittedCount;
+    }
+
+    /**
+     * Save the values of the .data file which have not been used, the residual program has to read them first.
+     * With option "--residual-data=file" they are written into the file, in the same format as a .data file.
+     * Otherwise they are printed after "residual input:" on the error output, so the output is still only the program.
+     *
+     * @param residualInput the values which have not been used
+     * @param fileName      the file, or null
+     */
+    public static void saveResidualInput(List<Integer> residualInput, String fileName) {
+        StringBuilder line = new StringBuilder();
+        for (int value : residualInput) {
+            line.append(line.length() == 0 ? "" : " ").append(value);
+        }
+        if (fileName == null) {
+            if (!residualInput.isEmpty()) {
+                System.err.println("residual input: " + line);
+            }
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(fileName)) {
+            writer.println(line);
+        } catch (IOException e) {
+            throw new CoreException("ERROR: can not write the residual data file " + fileName + "!!!");
+        }
+    }
+
+    /**
+     * @return true if a loop unrolled since the state was saved has become too large
+     */
+    public boolean isUnrollingTooLarge(State state, int iterations) {
+        return iterations > MAX_UNROLLED_ITERATIONS || emittedCount - state.emittedCount > MAX_UNROLLED_STATEMENTS;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run the optimization passes on every function of the IR, in order.
+ * By default the passes are "sccp", "gvn", and "dce" (see ConstantPropagation.java, GlobalValueNumbering.java,
+ * and DeadCodeElimination.java), option "--ir-passes=" chooses other passes, like "--ir-passes=gvn,dce".
+ * With option "--dump-ir", the IR is printed after lowering and after every pass.
+ *
+ * @author Zhao Liu
+ */
+public class PassManager {
+    private List<IrPass> passes = new ArrayList<>();
+    private boolean dump;
+
+    /**
+     * @param passNames the names of the passes, or null for the default passes
+     * @param dump      print the IR after every pass
+     */
+    public PassManager(List<String> passNames, boolean dump) {
+        this.dump = dump;
+        if (passNames == null) {
+            passes.add(new ConstantPropagation());
+            passes.add(new GlobalValueNumbering());
+            passes.add(new DeadCodeElimination());
+            return;
+        }
+
+        for (String passName : passNames) {
+            passes.add(createPass(passName));
+        }
+    }
+
+    private IrPass createPass(String passName) {
+        switch (passName) {
+            case "sccp":
+                return new ConstantPropagation();
+            case "gvn":
+                return new GlobalValueNumbering();
+            case "dce":
+                return new DeadCodeElimination();
+            default:
+                throw new CoreException("ERROR: unknown IR pass " + passName + "!!!");
+        }
+    }
+
+    /**
+     * Run all the passes on every function.
+     *
+     * @param program the IR of the whole program
+     */
+    public void run(IrProgram program) {
+        if (dump) {
+            printProgram("lowering", program);
+        }
+        for (IrPass pass : passes) {
+            for (IrFunction function : program.getAllFunctions()) {
+                pass.run(function);
+            }
+            if (dump) {
+                printProgram(pass.getName(), program);
+            }
+        }
+    }
+
+    private void printProgram(String stage, IrProgram program) {
+        int count = 0;
+        for (IrFunction function : program.getAllFunctions()) {
+            count += function.countInstructions();
+        }
+        System.out.println("=== IR after " + stage + " (" + count + " instructions) ===");
+        program.print();
+    }
+}
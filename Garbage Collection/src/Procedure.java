@@ -1,6 +1,10 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -33,20 +37,17 @@ public class Procedure {
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         if (tokenQueue.poll() != Core.PROCEDURE) {
-            System.out.println("ERROR: missing keyword 'procedure'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'procedure'!!!");
         }
         procedureKeyword = Core.PROCEDURE;
 
         if (tokenQueue.poll() != Core.ID) {
-            System.out.println("ERROR: missing procedure name!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing procedure name!!!");
         }
         procedureName = String.valueOf(tokenQueue.poll());
 
         if (tokenQueue.poll() != Core.IS) {
-            System.out.println("ERROR: missing keyword 'is'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'is'!!!");
         }
         isKeyword = Core.IS;
 
@@ -57,8 +58,7 @@ public class Procedure {
             declarationSequence.parse(tokenQueue, functionMap);
 
             if (tokenQueue.poll() != Core.BEGIN) {
-                System.out.println("ERROR: missing keyword 'begin'!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: missing keyword 'begin'!!!");
             }
         }
         beginKeyword = Core.BEGIN;
@@ -68,22 +68,19 @@ public class Procedure {
             hasBody = false;
         }
         if (!hasBody) {
-            System.out.println("The body can not be empty. There needs to be at lest one statement!!!");
-            System.exit(1);
+            throw new CoreException("The body can not be empty. There needs to be at lest one statement!!!");
         }
 
         statementSequence = new StatementSequence();
         statementSequence.parse(tokenQueue, functionMap);
 
         if (tokenQueue.poll() != Core.END) {
-            System.out.println("ERROR: missing keyword 'end'!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: missing keyword 'end'!!!");
         }
         endKeyword = Core.END;
 
         if (!tokenQueue.isEmpty()) {
-            System.out.println("ERROR: There should not be any letters or chars after EOF keyword 'end' !!!");
-            System.exit(1);
+            throw new CoreException("ERROR: There should not be any letters or chars after EOF keyword 'end' !!!");
         }
     }
 
@@ -123,6 +120,186 @@ public class Procedure {
         memory.emptyMemory();
     }
 
+    /**
+     * Constant folding and algebraic simplification over the whole parse tree, after semantic checking.
+     * See fold() of Expression, Term, Factor, Compare, Condition, If, and StatementSequence.
+     */
+    public void fold() {
+        if (declarationSequence != null) {
+            declarationSequence.fold();
+        }
+        statementSequence.fold();
+    }
+
+    /**
+     * @return the number of nodes in the parse tree
+     */
+    public int countNodes() {
+        int count = 1 + statementSequence.countNodes();
+        if (declarationSequence != null) {
+            count += declarationSequence.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Loop-invariant code motion, see LoopAnalysis.java
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(TemporarySlots slots) {
+        if (declarationSequence != null) {
+            declarationSequence.hoist(slots);
+        }
+        statementSequence.hoist(new ArrayList<>(), slots);
+    }
+
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     *
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void eliminateCommonSubexpressions(TemporarySlots slots) {
+        if (declarationSequence != null) {
+            declarationSequence.eliminateCommonSubexpressions(slots);
+        }
+        statementSequence.eliminateCommonSubexpressions(new AvailableExpressions(slots));
+    }
+
+    /**
+     * Build the IR of the whole program (option "--ir"), see IrBuilder.java
+     * The functions are built first, then the main body with the global variable declarations at its beginning.
+     *
+     * @return the IR
+     */
+    public IrProgram lower() {
+        IrBuilder builder = new IrBuilder(procedureName);
+        Set<String> globalVariables = new HashSet<>();
+        if (declarationSequence != null) {
+            declarationSequence.collectGlobalVariables(globalVariables);
+            declarationSequence.lowerFunctions(builder, globalVariables);
+        }
+
+        Set<String> sharedVariables = new HashSet<>();
+        Set<String> declaredVariables = new HashSet<>(globalVariables);
+        statementSequence.collectVariables(sharedVariables, declaredVariables);
+        if (declarationSequence == null) {
+            // Without "<decl-seq>", the variables of the main body are global variables, see Memory.allocate()
+            sharedVariables.addAll(declaredVariables);
+        }
+
+        builder.beginFunction(builder.getProgram().getMain(), sharedVariables);
+        if (declarationSequence != null) {
+            declarationSequence.lowerDeclarations(builder);
+            builder.emit(IrInstruction.Opcode.END_DECLARATIONS);
+        }
+        statementSequence.lower(builder);
+        builder.endFunction();
+        return builder.getProgram();
+    }
+
+    /**
+     * Procedure inlining (option "--inline"): decide which calls run the function body in the frame of the caller,
+     * see InlineAnalysis.java
+     *
+     * @param functionMap all the functions
+     */
+    public void inline(Map<String, Function> functionMap) {
+        if (declarationSequence == null) {
+            return;
+        }
+        declarationSequence.inline(functionMap);
+
+        InlineAnalysis analysis = new InlineAnalysis();
+        statementSequence.collectInlineInfo(analysis);
+        statementSequence.inline(functionMap, analysis.getDeclaredVariables());
+    }
+
+    /**
+     * Elision of reference counts (option "--elide-counts"): find the functions whose formal parameters
+     * do not need to be counted, see Function.markBalancedParameters()
+     *
+     * @param functionMap all the functions
+     */
+    public void elideReferenceCounts(Map<String, Function> functionMap) {
+        if (declarationSequence != null) {
+            declarationSequence.elideReferenceCounts(functionMap);
+        }
+    }
+
+    /**
+     * Escape analysis (option "--frame-allocate"): the arrays which never escape the frame of a function are allocated
+     * in the frame and freed with it, see Function.markFrameAllocations()
+     * The main body is not analyzed, its frame is only popped when the program ends.
+     */
+    public void markFrameAllocations() {
+        if (declarationSequence != null) {
+            Set<String> globalVariables = new HashSet<>();
+            declarationSequence.collectGlobalVariables(globalVariables);
+            declarationSequence.markFrameAllocations(globalVariables);
+        }
+    }
+
+    /**
+     * Liveness-based early release (option "--early-release"): release the array of a local variable
+     * after its last use, see StatementSequence.markLastUses()
+     */
+    public void markLastUses() {
+        if (declarationSequence != null) {
+            declarationSequence.markLastUses();
+        }
+        statementSequence.markLastUses();
+    }
+
+    /**
+     * Memoization (option "--memoize"): find the functions whose calls can be memoized, see Memoization.java
+     */
+    public void memoize() {
+        if (declarationSequence == null) {
+            return;
+        }
+        Set<String> globalVariables = new HashSet<>();
+        declarationSequence.collectGlobalVariables(globalVariables);
+        declarationSequence.memoize(globalVariables);
+    }
+
+    /**
+     * Partial evaluation (option "--partial-evaluate"): specialize the main body against a known prefix of the input,
+     * see PartialEvaluator.java
+     *
+     * @param inputData   the known prefix of the input, the values used are removed,
+     *                    so the rest is the beginning of the input of the residual program
+     * @param functionMap all the functions
+     * @return the residual program, with the same "<decl-seq>"
+     */
+    public Procedure partialEvaluate(List<Integer> inputData, Map<String, Function> functionMap) {
+        Set<String> globalVariables = new HashSet<>();
+        if (declarationSequence != null) {
+            declarationSequence.collectGlobalVariables(globalVariables);
+        }
+        InlineAnalysis analysis = new InlineAnalysis();
+        statementSequence.collectInlineInfo(analysis);
+        Set<String> usedNames = new HashSet<>(analysis.getNames());
+        usedNames.addAll(globalVariables);
+
+        PartialEvaluator evaluator = new PartialEvaluator(inputData, usedNames, globalVariables, functionMap);
+        if (declarationSequence != null) {
+            declarationSequence.partialEvaluate(evaluator);
+        }
+        statementSequence.partialEvaluate(evaluator);
+        inputData.subList(0, evaluator.getInputPosition()).clear();
+
+        Procedure residual = new Procedure();
+        residual.procedureKeyword = procedureKeyword;
+        residual.procedureName = procedureName;
+        residual.isKeyword = isKeyword;
+        residual.declarationSequence = declarationSequence;
+        residual.beginKeyword = beginKeyword;
+        residual.statementSequence = evaluator.toSequence(evaluator.endBlock());
+        residual.endKeyword = endKeyword;
+        return residual;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      */
@@ -0,0 +1,262 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The execution profile of a program for profile-guided optimization.
+ * <p>
+ * Every "if", "while", call, "and", and "or" gets an id in the order they are parsed, so the same program always gets the same ids.
+ * With option "--profile-write=file", the program counts how many times each "if" takes each branch,
+ * how many times each loop is entered and how many iterations it runs, how many times each call is executed,
+ * and how many times the left side of each "and" and "or" decides the result,
+ * then the counts are written to the file with the hash of the program.
+ * <p>
+ * With option "--profile-use=file", the counts are loaded before optimizing, if the hash matches the program
+ * (a profile of another version of the program is ignored). Then a call or a loop which has run at least
+ * HOT_COUNT times is optimized ("--inline" and "--licm") even without the option, and one which has never run
+ * (or a loop which runs less than 2 iterations each time) is not optimized at all.
+ * <p>
+ * Every node which specializes itself ("--specialize") remembers the innermost loop around it when it is parsed.
+ * Inside a hot loop it specializes after HOT_SPECIALIZE_THRESHOLD executions instead of "--specialize-threshold=N",
+ * see getSpecializeThreshold(). And "if" is lowered into the IR with the branch taken more often first,
+ * see If.lower().
+ * <p>
+ * Applying Singleton Pattern for this class, same as Options.java.
+ *
+ * @author Zhao Liu
+ */
+public class Profile {
+    public static final String IF = "if";
+    public static final String LOOP = "loop";
+    public static final String CALL = "call";
+    public static final String AND = "and";
+    public static final String OR = "or";
+
+    // a call or a loop running at least this many times is hot
+    public static final int HOT_COUNT = 1000;
+    // a hot call can inline a function this many times larger than "--inline-threshold"
+    public static final int HOT_INLINE_FACTOR = 4;
+    // a node inside a hot loop specializes itself after this many executions
+    public static final int HOT_SPECIALIZE_THRESHOLD = 1;
+
+    private static final Profile instance = new Profile();
+
+    // the kind and the counters of each node: "if" has taken and not taken, "loop" has entries and iterations, "call" has calls,
+    // "and" and "or" have decided by the left side and needing the right side
+    private List<String> kinds = new ArrayList<>();
+    private List<long[]> counters = new ArrayList<>();
+    private String programHash;
+    private boolean recording = false;
+    private boolean loaded = false;
+    // the ids of the loops around the node being parsed, the innermost loop is the first one
+    private Deque<Integer> enclosingLoops = new ArrayDeque<>();
+
+    /**
+     * In order to implement Singleton pattern, make constructor private.
+     */
+    private Profile() {
+    }
+
+    /**
+     * Singleton pattern
+     *
+     * @return the single instance
+     */
+    public static Profile getInstance() {
+        return instance;
+    }
+
+    /**
+     * Remove all the nodes and counts, before parsing another program.
+     */
+    public void reset() {
+        kinds = new ArrayList<>();
+        counters = new ArrayList<>();
+        programHash = null;
+        recording = false;
+        loaded = false;
+        enclosingLoops = new ArrayDeque<>();
+    }
+
+    /**
+     * Give a new id to a node when it is parsed.
+     *
+     * @param kind IF, LOOP, CALL, AND, or OR
+     * @return the id
+     */
+    public int newNode(String kind) {
+        kinds.add(kind);
+        counters.add(new long[kind.equals(CALL) ? 1 : 2]);
+        return kinds.size() - 1;
+    }
+
+    /**
+     * The body of a loop is parsed after this, until exitLoop().
+     *
+     * @param id the id of the loop
+     */
+    public void enterLoop(int id) {
+        enclosingLoops.push(id);
+    }
+
+    public void exitLoop() {
+        enclosingLoops.pop();
+    }
+
+    /**
+     * @return the id of the innermost loop around the node being parsed, or -1 if it is not inside a loop
+     */
+    public int getEnclosingLoop() {
+        return enclosingLoops.isEmpty() ? -1 : enclosingLoops.peek();
+    }
+
+    /**
+     * Increase a counter of a node, only when recording.
+     *
+     * @param id    the id of the node
+     * @param index the index of the counter
+     */
+    public void count(int id, int index) {
+        if (recording) {
+            counters.get(id)[index]++;
+        }
+    }
+
+    /**
+     * @return true if the node has run at least HOT_COUNT times in the loaded profile
+     */
+    public boolean isHot(int id) {
+        return loaded && counters.get(id)[counters.get(id).length - 1] >= HOT_COUNT;
+    }
+
+    /**
+     * @return true if the node is not worth optimizing in the loaded profile: it has never run,
+     * or it is a loop running less than 2 iterations each time it is entered
+     */
+    public boolean isCold(int id) {
+        if (!loaded) {
+            return false;
+        }
+        long[] nodeCounters = counters.get(id);
+        if (kinds.get(id).equals(LOOP)) {
+            return nodeCounters[1] < 2 * nodeCounters[0];
+        }
+        return nodeCounters[nodeCounters.length - 1] == 0;
+    }
+
+    /**
+     * @return true if the "if" has taken its else branch (or skipped its body) more often than its then branch
+     * in the loaded profile
+     */
+    public boolean isMostlyNotTaken(int id) {
+        return loaded && counters.get(id)[1] > counters.get(id)[0];
+    }
+
+    /**
+     * @param loopId the innermost loop around the node, see getEnclosingLoop()
+     * @return how many times the node runs before it specializes itself: HOT_SPECIALIZE_THRESHOLD inside a hot loop
+     * (if that is earlier), otherwise "--specialize-threshold=N"
+     */
+    public int getSpecializeThreshold(int loopId) {
+        int threshold = Options.getInstance().getSpecializeThreshold();
+        if (loopId >= 0 && isHot(loopId)) {
+            return Math.min(threshold, HOT_SPECIALIZE_THRESHOLD);
+        }
+        return threshold;
+    }
+
+    /**
+     * Compute the hash of the program file, to find out whether a profile belongs to it.
+     *
+     * @param fileName the program file
+     */
+    public void setProgram(String fileName) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(fileName)));
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            programHash = hash.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new CoreException("ERROR: can not read the program file " + fileName + "!!!");
+        }
+    }
+
+    public void startRecording() {
+        recording = true;
+    }
+
+    /**
+     * Load the counts from a profile file written by save(). Nothing is loaded if the file does not exist,
+     * or it belongs to another program.
+     *
+     * @param fileName the profile file
+     */
+    public void load(String fileName) {
+        List<long[]> loadedCounters = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals("profile " + programHash)) {
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] items = line.trim().split(" ");
+                int id = loadedCounters.size();
+                if (id >= kinds.size() || !items[0].equals(kinds.get(id)) || items.length != counters.get(id).length + 1) {
+                    return;
+                }
+                long[] nodeCounters = new long[items.length - 1];
+                for (int i = 1; i < items.length; i++) {
+                    nodeCounters[i - 1] = Long.parseLong(items[i]);
+                }
+                loadedCounters.add(nodeCounters);
+            }
+        } catch (IOException | NumberFormatException e) {
+            return;
+        }
+
+        if (loadedCounters.size() == kinds.size()) {
+            counters = loadedCounters;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Write the counts to a profile file like:
+     * profile 3f2a...
+     * loop 5 5000
+     * if 4000 1000
+     * call 4000
+     * and 300 700
+     *
+     * @param fileName the profile file
+     */
+    public void save(String fileName) {
+        try (PrintWriter writer = new PrintWriter(fileName)) {
+            writer.println("profile " + programHash);
+            for (int i = 0; i < kinds.size(); i++) {
+                StringBuilder line = new StringBuilder(kinds.get(i));
+                for (long counter : counters.get(i)) {
+                    line.append(' ').append(counter);
+                }
+                writer.println(line);
+            }
+        } catch (IOException e) {
+            throw new CoreException("ERROR: can not write the profile file " + fileName + "!!!");
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+}
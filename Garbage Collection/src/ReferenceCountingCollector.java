@@ -0,0 +1,70 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Garbage collection by reference counting, option "--gc=rc" (the default).
+ * The system will keep track of how many variables point to each array.
+ * Once a reference count reaches 0, the array is freed at once, and "gc:n" is printed.
+ *
+ * @author Zhao Liu
+ */
+public class ReferenceCountingCollector implements Collector {
+    private int totalObjects = 0;
+
+    public void allocate(Memory memory, Memory.Value value) {
+        totalObjects++;
+        memory.getOutput().println("gc:" + totalObjects);
+    }
+
+    public void allocateInFrame(Memory memory, Memory.Value value) {
+        allocate(memory, value);
+    }
+
+    public void releaseFrame(Memory memory, List<Memory.Value> values) {
+        totalObjects -= values.size();
+        memory.getOutput().println("gc:" + totalObjects);
+    }
+
+    /**
+     * The count of the old value is decreased first, the same as the order of the variables being changed.
+     */
+    public void store(Memory memory, Memory.Value oldValue, Memory.Value newValue, boolean isGlobal) {
+        if (oldValue != null) {
+            release(memory, oldValue);
+        }
+        if (newValue != null) {
+            newValue.referenceCount++;
+        }
+    }
+
+    public void popFrame(Memory memory, List<Map<String, Memory.Value>> scopes, boolean isGlobal) {
+        for (Map<String, Memory.Value> scope : scopes) {
+            for (Memory.Value value : scope.values()) {
+                if (value != null && value.type == Core.ARRAY) {
+                    release(memory, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every array has been freed when its count reaches 0.
+     */
+    public void collect(Memory memory) {
+    }
+
+    /**
+     * An array allocated in a frame is not counted, it is freed by releaseFrame().
+     */
+    private void release(Memory memory, Memory.Value value) {
+        if (value.isFrameAllocated) {
+            return;
+        }
+        value.referenceCount--;
+        if (value.referenceCount == 0) {
+            memory.free(value);
+            totalObjects--;
+            memory.getOutput().println("gc:" + totalObjects);
+        }
+    }
+}
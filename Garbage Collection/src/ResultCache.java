@@ -0,0 +1,213 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The cache of the output of whole programs, with option "--cache=directory".
+ * <p>
+ * A program always prints the same output (including "gc:" lines) for the same .code file, .data file, and options,
+ * so the output is saved in the directory with the SHA-256 hash of all of them as the file name, compressed by gzip.
+ * If the same program runs again, the saved output is printed without parsing or executing anything.
+ * The saved output is decompressed completely before printing, so a broken entry prints nothing: it is deleted,
+ * and the program runs as if there was no entry.
+ * <p>
+ * The cache is not used with "--profile-write" and "--partial-evaluate" (see Main.main()), because they write files
+ * (the profile, and the residual data with "--residual-data") which the saved output could not write again.
+ * <p>
+ * When the program runs, everything printed is written into the console and into a temporary file at the same time,
+ * and the temporary file becomes the cache entry only after the program ends normally.
+ * A program stopped by an error (a CoreException, see Main.main()) is not saved: save() is never called,
+ * and its temporary file is deleted when the JVM exits.
+ * Only the standard output is saved. What is printed on the standard error, like "--gc-stats" and "--memoize-stats",
+ * is not printed again when the saved output is used.
+ * <p>
+ * The size of the directory is bounded by option "--cache-size=N" (in KB). The last modified time of an entry is
+ * the last time it was used, and the least recently used entries are deleted after saving a new one, until the
+ * size is under the bound.
+ *
+ * @author Zhao Liu
+ */
+public class ResultCache {
+    private static final String SUFFIX = ".out.gz";
+
+    private Path directory;
+    private long maxBytes;
+    private String key;
+
+    // the console, and the temporary file being written when running the program
+    private PrintStream console;
+    private OutputStream entryStream;
+    private File temporaryFile;
+
+    /**
+     * @param directory the cache directory, created if it does not exist
+     * @param maxKBytes the largest size of the directory in KB
+     */
+    public ResultCache(String directory, int maxKBytes) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxKBytes * 1024L;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new CoreException("ERROR: can not create the cache directory " + directory + "!!!");
+        }
+    }
+
+    /**
+     * Print the saved output if the program has run before. Otherwise, start recording the output.
+     *
+     * @param args command-line arguments: the program file, the data file, and the options
+     * @return true if the saved output has been printed, so the program does not need to run
+     */
+    public boolean replay(String[] args) {
+        key = hash(args);
+        Path entry = directory.resolve(key + SUFFIX);
+        if (Files.exists(entry)) {
+            // the whole entry is read first, so nothing is printed from a broken entry
+            byte[] output = null;
+            try (InputStream input = new GZIPInputStream(Files.newInputStream(entry))) {
+                output = input.readAllBytes();
+            } catch (IOException e) {
+                // a broken entry is deleted, and written again after running the program
+                entry.toFile().delete();
+            }
+            if (output != null) {
+                System.out.write(output, 0, output.length);
+                System.out.flush();
+                // used now, so it is the most recently used entry
+                entry.toFile().setLastModified(System.currentTimeMillis());
+                return true;
+            }
+        }
+
+        try {
+            temporaryFile = File.createTempFile(key, ".tmp", directory.toFile());
+            temporaryFile.deleteOnExit();
+            entryStream = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile)));
+        } catch (IOException e) {
+            // the program still runs without the cache
+            return false;
+        }
+        console = System.out;
+        System.setOut(new PrintStream(new TeeOutputStream(console, entryStream), true));
+        return false;
+    }
+
+    /**
+     * The program has ended normally, so the recorded output becomes a cache entry, then old entries are evicted.
+     */
+    public void save() {
+        if (entryStream == null) {
+            return;
+        }
+        System.out.flush();
+        System.setOut(console);
+        try {
+            entryStream.close();
+            Files.move(temporaryFile.toPath(), directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temporaryFile.delete();
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Delete the least recently used entries until the size of the directory is under the bound.
+     */
+    private void evict() {
+        File[] entries = directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File entry : entries) {
+            totalBytes += entry.length();
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length && totalBytes > maxBytes; i++) {
+            long length = entries[i].length();
+            if (entries[i].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    /**
+     * The key of the cache: the hash of the program file, the data file, and all the options except the cache options.
+     *
+     * @param args command-line arguments
+     * @return the hash in hexadecimal
+     */
+    private static String hash(String[] args) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteArrayOutputStream options = new ByteArrayOutputStream();
+            for (int i = 2; i < args.length; i++) {
+                if (!args[i].startsWith("--cache")) {
+                    options.write(args[i].getBytes());
+                    options.write(0);
+                }
+            }
+            // the length of each part is included, so different splits of the same bytes get different hashes
+            for (byte[] part : new byte[][]{Files.readAllBytes(Paths.get(args[0])), Files.readAllBytes(Paths.get(args[1])),
+                    options.toByteArray()}) {
+                digest.update(Long.toString(part.length).getBytes());
+                digest.update((byte) 0);
+                digest.update(part);
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new CoreException("ERROR: can not read the program file " + args[0] + " or the data file " + args[1] + "!!!");
+        }
+    }
+
+    /**
+     * Write everything into both the console and the cache entry.
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private OutputStream console;
+        private OutputStream entry;
+
+        TeeOutputStream(OutputStream console, OutputStream entry) {
+            this.console = console;
+            this.entry = entry;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            console.write(b);
+            entry.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            console.write(bytes, offset, length);
+            entry.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            console.flush();
+        }
+    }
+}
@@ -46,8 +46,7 @@ class Scanner {
             // Set token = Error
             token = Core.ERROR;
             e.printStackTrace();
-            System.out.print("ERROR: " + filename + " does not exist!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: " + filename + " does not exist!!!");
         }
     }
 
@@ -99,8 +98,7 @@ class Scanner {
             token = Core.ERROR;
 
             e.printStackTrace();
-            System.out.println("ERROR: The char " + Character.toString(currentUnicode) + " is not legal one!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: The char " + Character.toString(currentUnicode) + " is not legal one!!!");
         }
     }
 
@@ -262,8 +260,7 @@ class Scanner {
                 if (tempInt > MAX_CONST) {
                     token = Core.ERROR;
                     // Print some meaningful error message.
-                    System.out.println("ERROR: Integer " + constants.toString() + " is too large. The range of Integer should be between 0 and 100003");
-                    System.exit(1);
+                    throw new CoreException("ERROR: Integer " + constants.toString() + " is too large. The range of Integer should be between 0 and 100003");
                 }
             } else {
                 isContinue = false;
@@ -333,8 +330,7 @@ class Scanner {
             default:
                 token = Core.ERROR;
 
-                System.out.println("ERROR: The symbol '" + currentChar + "' is not a valid symbol.");
-                System.exit(1);
+                throw new CoreException("ERROR: The symbol '" + currentChar + "' is not a valid symbol.");
         }
     }
 
@@ -352,8 +348,7 @@ class Scanner {
             fileReader.close();
         } catch (IOException e) {
             e.printStackTrace();
-            System.out.println("ERROR: unable to close file stream!!!");
-            System.exit(1);
+            throw new CoreException("ERROR: unable to close file stream!!!");
         }
     }
 
@@ -0,0 +1,352 @@
+import java.util.Map;
+
+/**
+ * A specialized node is the fast version of a Factor, Expression, Compare, or Assign node.
+ * <p>
+ * The generic nodes decide what they are looking at every time they are executed:
+ * integer or array, local or global, indexed or whole variable, "=" or "<".
+ * When "--specialize" is on, a generic node rewrites itself into one of the specialized nodes below after it has been executed,
+ * based on what it has seen during that execution. For example, "x" becomes "LocalIntRead" and "a[i]" becomes "GlobalArrayIndexRead".
+ * <p>
+ * Every specialized node makes some assumptions, like "x is a local integer".
+ * If an assumption is broken, the node throws DEOPTIMIZE before it changes anything in memory,
+ * and the owner node goes back to the generic version (deoptimize).
+ * After MAX_DEOPTIMIZATIONS times, the owner node stays generic forever.
+ *
+ * @author Zhao Liu
+ */
+public abstract class SpecializedNode {
+
+    // A node can deoptimize at most this many times, after that it stays generic.
+    public static final int MAX_DEOPTIMIZATIONS = 3;
+
+    /**
+     * Thrown when an assumption of a specialized node is broken.
+     * There is only one instance without stack trace, so throwing it is cheap.
+     */
+    public static final class Deoptimize extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Deoptimize() {
+            super("deoptimize", null, false, false);
+        }
+    }
+
+    public static final Deoptimize DEOPTIMIZE = new Deoptimize();
+
+    /**
+     * A specialized node which produces an integer, like "<factor>" and "<expr>".
+     */
+    public abstract static class Read extends SpecializedNode {
+        public abstract int execute(Memory memory, Map<String, Function> functionMap);
+    }
+
+    /**
+     * A specialized node which produces true or false, like "<cmpr>".
+     */
+    public abstract static class Test extends SpecializedNode {
+        public abstract boolean execute(Memory memory, Map<String, Function> functionMap);
+    }
+
+    /**
+     * A specialized node which changes memory, like "<assign>".
+     */
+    public abstract static class Write extends SpecializedNode {
+        public abstract void execute(Memory memory, Map<String, Function> functionMap);
+    }
+
+    /**
+     * "<factor> ::= const", the constant is converted to int only once.
+     */
+    public static final class ConstRead extends Read {
+        private final int value;
+
+        public ConstRead(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return value;
+        }
+    }
+
+    /**
+     * "<factor> ::= id", where id is an integer variable in the current frame.
+     */
+    public static final class LocalIntRead extends Read {
+        private final String variable;
+
+        public LocalIntRead(String variable) {
+            this.variable = variable;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return memory.readInteger(variable, false);
+        }
+    }
+
+    /**
+     * "<factor> ::= id", where id is a global integer variable.
+     * It assumes no local variable hides the global variable since it has been specialized.
+     */
+    public static final class GlobalIntRead extends Read {
+        private final String variable;
+        private final int shadowEpoch;
+
+        public GlobalIntRead(String variable, int shadowEpoch) {
+            this.variable = variable;
+            this.shadowEpoch = shadowEpoch;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            if (memory.getShadowEpoch() != shadowEpoch) {
+                throw DEOPTIMIZE;
+            }
+            return memory.readInteger(variable, true);
+        }
+    }
+
+    /**
+     * "<factor> ::= id [ <expr> ]" (or "id" as a shorthand for index 0), where id is an array variable in the current frame.
+     */
+    public static final class LocalArrayIndexRead extends Read {
+        private final String variable;
+        private final Read index;
+
+        public LocalArrayIndexRead(String variable, Read index) {
+            this.variable = variable;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return memory.readArray(variable, index.execute(memory, functionMap), false);
+        }
+    }
+
+    /**
+     * "<factor> ::= id [ <expr> ]" (or "id" as a shorthand for index 0), where id is a global array variable.
+     */
+    public static final class GlobalArrayIndexRead extends Read {
+        private final String variable;
+        private final Read index;
+        private final int shadowEpoch;
+
+        public GlobalArrayIndexRead(String variable, Read index, int shadowEpoch) {
+            this.variable = variable;
+            this.index = index;
+            this.shadowEpoch = shadowEpoch;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            int indexValue = index.execute(memory, functionMap);
+            if (memory.getShadowEpoch() != shadowEpoch) {
+                throw DEOPTIMIZE;
+            }
+            return memory.readArray(variable, indexValue, true);
+        }
+    }
+
+    /**
+     * "<expr> ::= const + <factor>" or "<expr> ::= <factor> + const", the Term layers are skipped.
+     */
+    public static final class ConstPlusVar extends Read {
+        private final int constant;
+        private final Read variable;
+
+        public ConstPlusVar(int constant, Read variable) {
+            this.constant = constant;
+            this.variable = variable;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return constant + variable.execute(memory, functionMap);
+        }
+    }
+
+    /**
+     * "<expr> ::= <factor> - const", the Term layers are skipped.
+     */
+    public static final class VarMinusConst extends Read {
+        private final Read variable;
+        private final int constant;
+
+        public VarMinusConst(Read variable, int constant) {
+            this.variable = variable;
+            this.constant = constant;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return variable.execute(memory, functionMap) - constant;
+        }
+    }
+
+    /**
+     * Run a Factor node, which may be specialized itself.
+     */
+    public static final class FactorRead extends Read {
+        private final Factor factor;
+
+        public FactorRead(Factor factor) {
+            this.factor = factor;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return factor.execute(memory, functionMap);
+        }
+    }
+
+    /**
+     * Run an Expression node, which may be specialized itself.
+     */
+    public static final class ExpressionRead extends Read {
+        private final Expression expression;
+
+        public ExpressionRead(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public int execute(Memory memory, Map<String, Function> functionMap) {
+            return expression.execute(memory, functionMap);
+        }
+    }
+
+    /**
+     * "<cmpr> ::= <expr> = <expr>"
+     */
+    public static final class IntEqual extends Test {
+        private final Read left;
+        private final Read right;
+
+        public IntEqual(Read left, Read right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean execute(Memory memory, Map<String, Function> functionMap) {
+            int leftValue = left.execute(memory, functionMap);
+            return leftValue == right.execute(memory, functionMap);
+        }
+    }
+
+    /**
+     * "<cmpr> ::= <expr> < <expr>"
+     */
+    public static final class IntLess extends Test {
+        private final Read left;
+        private final Read right;
+
+        public IntLess(Read left, Read right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean execute(Memory memory, Map<String, Function> functionMap) {
+            int leftValue = left.execute(memory, functionMap);
+            return leftValue < right.execute(memory, functionMap);
+        }
+    }
+
+    /**
+     * "<assign> ::= id := <expr> ;", where id is an integer variable in the current frame.
+     */
+    public static final class LocalIntWrite extends Write {
+        private final String variable;
+        private final Read value;
+
+        public LocalIntWrite(String variable, Read value) {
+            this.variable = variable;
+            this.value = value;
+        }
+
+        @Override
+        public void execute(Memory memory, Map<String, Function> functionMap) {
+            memory.writeInteger(variable, value.execute(memory, functionMap), false);
+        }
+    }
+
+    /**
+     * "<assign> ::= id := <expr> ;", where id is a global integer variable.
+     */
+    public static final class GlobalIntWrite extends Write {
+        private final String variable;
+        private final Read value;
+        private final int shadowEpoch;
+
+        public GlobalIntWrite(String variable, Read value, int shadowEpoch) {
+            this.variable = variable;
+            this.value = value;
+            this.shadowEpoch = shadowEpoch;
+        }
+
+        @Override
+        public void execute(Memory memory, Map<String, Function> functionMap) {
+            int newValue = value.execute(memory, functionMap);
+            if (memory.getShadowEpoch() != shadowEpoch) {
+                throw DEOPTIMIZE;
+            }
+            memory.writeInteger(variable, newValue, true);
+        }
+    }
+
+    /**
+     * "<assign> ::= id [ <expr> ] := <expr> ;" (or "id := <expr> ;" as a shorthand for index 0),
+     * where id is an array variable in the current frame.
+     */
+    public static final class LocalArrayIndexWrite extends Write {
+        private final String variable;
+        private final Read index;
+        private final Read value;
+
+        public LocalArrayIndexWrite(String variable, Read index, Read value) {
+            this.variable = variable;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public void execute(Memory memory, Map<String, Function> functionMap) {
+            int indexValue = index.execute(memory, functionMap);
+            int newValue = value.execute(memory, functionMap);
+            memory.writeArray(variable, indexValue, newValue, false);
+        }
+    }
+
+    /**
+     * "<assign> ::= id [ <expr> ] := <expr> ;" (or "id := <expr> ;" as a shorthand for index 0),
+     * where id is a global array variable.
+     */
+    public static final class GlobalArrayIndexWrite extends Write {
+        private final String variable;
+        private final Read index;
+        private final Read value;
+        private final int shadowEpoch;
+
+        public GlobalArrayIndexWrite(String variable, Read index, Read value, int shadowEpoch) {
+            this.variable = variable;
+            this.index = index;
+            this.value = value;
+            this.shadowEpoch = shadowEpoch;
+        }
+
+        @Override
+        public void execute(Memory memory, Map<String, Function> functionMap) {
+            int indexValue = index.execute(memory, functionMap);
+            int newValue = value.execute(memory, functionMap);
+            if (memory.getShadowEpoch() != shadowEpoch) {
+                throw DEOPTIMIZE;
+            }
+            memory.writeArray(variable, indexValue, newValue, true);
+        }
+    }
+}
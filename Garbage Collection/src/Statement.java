@@ -1,9 +1,11 @@
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
- * There are 6 different types of "Statement".
+ * There are 7 different types of "Statement".
  * <stmt> ==> <assign>
  * <stmt> ==> <if>
  * <stmt> ==> <loop>
@@ -19,53 +21,60 @@ import java.util.Stack;
  * If the first word of tokenQueue is the keyword "integer" or "array", then it is an "<decl>" statement.
  * If the first word of tokenQueue is the keyword "begin", then it is an "<call>" statement.
  * Otherwise, it is a "<assign>" statement.
+ * <p>
+ * Each type is its own final class, so a statement is run by one virtual call,
+ * instead of checking which child is not null every time.
+ * A pass which does nothing for some types of statement has a default method here.
  *
  * @author Zhao Liu
  */
-public class Statement {
-    private Assign assign;
-    private If ifStmt;
-    private Loop loop;
-    private Out out;
-    private In in;
-    private Declaration declaration;
-    private Call call;
+public sealed interface Statement permits Assign, If, Loop, Out, In, Declaration, Call {
 
     /**
-     * The grammar is: <stmt> ==> <assign> | <if> | <loop> | <out> | <in> | <decl>
+     * The grammar is: <stmt> ==> <assign> | <if> | <loop> | <out> | <in> | <decl> | <call>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
+     * @return the statement
      */
-    public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
+    static Statement parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
         Object firstWord = tokenQueue.peek();
 
+        Statement statement;
         if (firstWord == Core.IF) {
-            ifStmt = new If();
+            If ifStmt = new If();
             ifStmt.parse(tokenQueue, functionMap);
+            statement = ifStmt;
 
         } else if (firstWord == Core.WHILE) {
-            loop = new Loop();
+            Loop loop = new Loop();
             loop.parse(tokenQueue, functionMap);
+            statement = loop;
 
         } else if (firstWord == Core.OUT) {
-            out = new Out();
+            Out out = new Out();
             out.parse(tokenQueue, functionMap);
+            statement = out;
 
         } else if (firstWord == Core.IN) {
-            in = new In();
+            In in = new In();
             in.parse(tokenQueue, functionMap);
+            statement = in;
 
         } else if (firstWord == Core.INTEGER || firstWord == Core.ARRAY) {
-            declaration = new Declaration();
+            Declaration declaration = new Declaration();
             declaration.parse(tokenQueue, functionMap);
+            statement = declaration;
 
         } else if (firstWord == Core.BEGIN) {
-            call = new Call();
+            Call call = new Call();
             call.parse(tokenQueue, functionMap);
+            statement = call;
         } else {
-            assign = new Assign();
+            Assign assign = new Assign();
             assign.parse(tokenQueue, functionMap);
+            statement = assign;
         }
+        return statement;
     }
 
     /**
@@ -77,85 +86,149 @@ public class Statement {
      *
      * @param variableStack contains all declared variables
      */
-    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
-        if (assign != null) {
-            assign.semanticChecking(variableStack, functionCheckingMap);
+    void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap);
 
-        } else if (ifStmt != null) {
-            ifStmt.semanticChecking(variableStack, functionCheckingMap);
+    /**
+     * Using the recursive descent approach to walk over the parse tree.
+     * This function will execute its children and perform any action needed on the result of that execution.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     */
+    void execute(Memory memory, Map<String, Function> functionMap);
 
-        } else if (loop != null) {
-            loop.semanticChecking(variableStack, functionCheckingMap);
+    /**
+     * Constant folding for the statement.
+     */
+    default void fold() {
+    }
 
-        } else if (out != null) {
-            out.semanticChecking(variableStack, functionCheckingMap);
+    /**
+     * @return true if the statement can never do anything after constant folding
+     */
+    default boolean isNoOp() {
+        return false;
+    }
 
-        } else if (in != null) {
-            in.semanticChecking(variableStack, functionCheckingMap);
+    /**
+     * @return the number of nodes in this sub-tree, not counting "<stmt>" itself (see StatementSequence.countNodes())
+     */
+    int countNodes();
 
-        } else if (call != null) {
-            call.semanticChecking(variableStack, functionCheckingMap);
-        } else {
-            declaration.semanticChecking(variableStack, functionCheckingMap);
-        }
+    /**
+     * Record what this statement writes, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    default void collectWrites(LoopAnalysis loop) {
     }
 
     /**
-     * Using the recursive descent approach to walk over the parse tree.
-     * This function will execute its children and perform any action needed on the result of that execution.
+     * Loop-invariant code motion, see Expression.hoist()
      *
-     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
      */
-    public void execute(Memory memory, Map<String, Function> functionMap) {
-        if (assign != null) {
-            assign.execute(memory, functionMap);
+    default void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+    }
 
-        } else if (ifStmt != null) {
-            ifStmt.execute(memory, functionMap);
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    default void markBoundsChecks(LoopAnalysis loop) {
+    }
 
-        } else if (loop != null) {
-            loop.execute(memory, functionMap);
+    /**
+     * @param variable an integer variable
+     * @return true if it is "variable := variable + const ;" or "variable := const + variable ;", where const is positive
+     */
+    default boolean isIncrementOf(String variable) {
+        return false;
+    }
 
-        } else if (out != null) {
-            out.execute(memory, functionMap);
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     * "if", "while", and function calls end the straight-line part.
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    void eliminateCommonSubexpressions(AvailableExpressions available);
 
-        } else if (in != null) {
-            in.execute(memory, functionMap);
+    /**
+     * Build the IR of "<stmt>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    void lower(IrBuilder builder);
 
-        } else if (call != null) {
-            call.execute(memory, functionMap);
-        } else {
-            declaration.execute(memory, functionMap);
-        }
+    /**
+     * Find the local integer variables which have to stay in Memory, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    default void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
     }
 
+    /**
+     * Record what this statement uses, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    void collectInlineInfo(InlineAnalysis analysis);
 
     /**
-     * produce "pretty" code with the appropriate indentation
+     * Decide which calls can be inlined, see Call.inline()
      *
-     * @param indent the number of spaces which need to be print
+     * @param functionMap    all the functions
+     * @param localVariables the local variables of the caller
      */
-    public void print(int indent) {
-        if (assign != null) {
-            assign.print(indent);
+    default void inline(Map<String, Function> functionMap, Set<String> localVariables) {
+    }
 
-        } else if (ifStmt != null) {
-            ifStmt.print(indent);
+    /**
+     * Mark the allocations of the arrays which never escape the frame, see Function.markFrameAllocations()
+     * An allocation in a "while" is never marked, since the frame would keep one array for every iteration.
+     *
+     * @param variables the local array variables which never escape the frame
+     */
+    default void markFrameAllocations(Set<String> variables) {
+    }
 
-        } else if (loop != null) {
-            loop.print(indent);
+    /**
+     * Find the last use of every local variable in the nested "<stmt-seq>", see StatementSequence.markLastUses()
+     */
+    default void markLastUses() {
+    }
 
-        } else if (out != null) {
-            out.print(indent);
+    /**
+     * Find the calls of the function in tail position, see StatementSequence.findTailCalls()
+     *
+     * @param functionName the function whose body contains this statement
+     * @param tailCalls    the tail calls found are added
+     */
+    default void findTailCalls(String functionName, List<Call> tailCalls) {
+    }
 
-        } else if (in != null) {
-            in.print(indent);
+    /**
+     * Partial evaluation: the residual statements are written into the evaluator, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    void partialEvaluate(PartialEvaluator evaluator);
 
-        } else if (call != null) {
-            call.print(indent);
-        } else {
-            declaration.print(indent);
-        }
+    /**
+     * @return true if it is "<stmt> ==> <decl>"
+     */
+    default boolean isDeclaration() {
+        return false;
     }
 
+    /**
+     * produce "pretty" code with the appropriate indentation
+     *
+     * @param indent the number of spaces which need to be print
+     */
+    void print(int indent);
 }
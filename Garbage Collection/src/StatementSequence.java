@@ -1,5 +1,9 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -18,14 +22,16 @@ public class StatementSequence {
     private Statement statement;
     private StatementSequence statementSequence;
 
+    // for "--early-release": the local variables whose last use is "<stmt>", released after running it
+    private List<String> releasedVariables;
+
     /**
      * The grammar is: <stmt-seq> ==> <stmt> | <stmt><stmt-seq>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
-        statement = new Statement();
-        statement.parse(tokenQueue, functionMap);
+        statement = Statement.parse(tokenQueue, functionMap);
 
         // If next token is keyword "end" or "else", it should not create any StatementSequence
         if (tokenQueue.peek() != Core.END && tokenQueue.peek() != Core.ELSE) {
@@ -60,11 +66,242 @@ public class StatementSequence {
      */
     public void execute(Memory memory, Map<String, Function> functionMap) {
         statement.execute(memory, functionMap);
+        if (releasedVariables != null) {
+            memory.releaseVariables(releasedVariables);
+        }
         if (statementSequence != null) {
             statementSequence.execute(memory, functionMap);
         }
     }
 
+    /**
+     * Constant folding for all the statements.
+     * Statements which can never run anything are removed, but the sequence always keeps at least one statement.
+     */
+    public void fold() {
+        statement.fold();
+        if (statementSequence != null) {
+            statementSequence.fold();
+        }
+
+        // The rest of sequence has been cleaned, only its last statement may be a no-op.
+        while (statement.isNoOp() && statementSequence != null) {
+            statement = statementSequence.statement;
+            statementSequence = statementSequence.statementSequence;
+        }
+        if (statementSequence != null && statementSequence.statementSequence == null && statementSequence.statement.isNoOp()) {
+            statementSequence = null;
+        }
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        // one node for "<stmt-seq>", and one for "<stmt>"
+        int count = 2 + statement.countNodes();
+        if (statementSequence != null) {
+            count += statementSequence.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Record what the statements write, see LoopAnalysis.java
+     *
+     * @param loop information about the loop
+     */
+    public void collectWrites(LoopAnalysis loop) {
+        statement.collectWrites(loop);
+        if (statementSequence != null) {
+            statementSequence.collectWrites(loop);
+        }
+    }
+
+    /**
+     * Loop-invariant code motion, see Expression.hoist()
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     * @param slots the slots of the temporary values of this compile
+     */
+    public void hoist(List<LoopAnalysis> loops, TemporarySlots slots) {
+        statement.hoist(loops, slots);
+        if (statementSequence != null) {
+            statementSequence.hoist(loops, slots);
+        }
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        statement.markBoundsChecks(loop);
+        if (statementSequence != null) {
+            statementSequence.markBoundsChecks(loop);
+        }
+    }
+
+    /**
+     * @return the last statement of the sequence
+     */
+    public Statement getLastStatement() {
+        if (statementSequence == null) {
+            return statement;
+        }
+        return statementSequence.getLastStatement();
+    }
+
+    /**
+     * Common subexpression elimination, see AvailableExpressions.java
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        statement.eliminateCommonSubexpressions(available);
+        if (statementSequence != null) {
+            statementSequence.eliminateCommonSubexpressions(available);
+        }
+    }
+
+    /**
+     * Build the IR of "<stmt-seq>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     */
+    public void lower(IrBuilder builder) {
+        statement.lower(builder);
+        if (statementSequence != null) {
+            statementSequence.lower(builder);
+        }
+    }
+
+    /**
+     * Find the local integer variables which have to stay in Memory, see IrBuilder.java
+     *
+     * @param sharedVariables   the variables which have to stay in Memory
+     * @param declaredVariables all the variables declared before
+     */
+    public void collectVariables(Set<String> sharedVariables, Set<String> declaredVariables) {
+        statement.collectVariables(sharedVariables, declaredVariables);
+        if (statementSequence != null) {
+            statementSequence.collectVariables(sharedVariables, declaredVariables);
+        }
+    }
+
+    /**
+     * Record what the statements use, see InlineAnalysis.java
+     *
+     * @param analysis information about the function body
+     */
+    public void collectInlineInfo(InlineAnalysis analysis) {
+        statement.collectInlineInfo(analysis);
+        if (statementSequence != null) {
+            statementSequence.collectInlineInfo(analysis);
+        }
+    }
+
+    /**
+     * Decide which calls can be inlined, see Call.inline()
+     *
+     * @param functionMap    all the functions
+     * @param localVariables the local variables of the caller
+     */
+    public void inline(Map<String, Function> functionMap, Set<String> localVariables) {
+        statement.inline(functionMap, localVariables);
+        if (statementSequence != null) {
+            statementSequence.inline(functionMap, localVariables);
+        }
+    }
+
+    /**
+     * Find the calls of the function in tail position: the last statement, or inside the last "if".
+     *
+     * @param functionName the function whose body is this sequence
+     * @param tailCalls    the tail calls found are added
+     */
+    public void markFrameAllocations(Set<String> variables) {
+        statement.markFrameAllocations(variables);
+        if (statementSequence != null) {
+            statementSequence.markFrameAllocations(variables);
+        }
+    }
+
+    /**
+     * Liveness-based early release (option "--early-release"): a variable declared in this "<stmt-seq>" is dead after
+     * the last statement of the sequence using it (an "if" or a "while" using it anywhere inside is one use,
+     * so a variable used in a loop stays alive until the loop ends). Its array is released right after that statement,
+     * see Memory.releaseVariables(), instead of when the scope is popped.
+     * Only the variables declared here are released: a formal parameter or a global variable is still used by the caller.
+     */
+    public void markLastUses() {
+        Map<String, StatementSequence> lastUses = new LinkedHashMap<>();
+        for (StatementSequence node = this; node != null; node = node.statementSequence) {
+            InlineAnalysis analysis = new InlineAnalysis();
+            node.statement.collectInlineInfo(analysis);
+            if (node.statement instanceof Declaration) {
+                for (String variable : analysis.getDeclaredVariables()) {
+                    lastUses.put(variable, null);
+                }
+            } else {
+                for (String variable : analysis.getNames()) {
+                    if (lastUses.containsKey(variable)) {
+                        lastUses.put(variable, node);
+                    }
+                }
+            }
+            node.statement.markLastUses();
+        }
+
+        for (Map.Entry<String, StatementSequence> entry : lastUses.entrySet()) {
+            StatementSequence node = entry.getValue();
+            if (node != null) {
+                if (node.releasedVariables == null) {
+                    node.releasedVariables = new ArrayList<>();
+                }
+                node.releasedVariables.add(entry.getKey());
+            }
+        }
+    }
+
+    public void findTailCalls(String functionName, List<Call> tailCalls) {
+        if (statementSequence != null) {
+            statementSequence.findTailCalls(functionName, tailCalls);
+        } else {
+            statement.findTailCalls(functionName, tailCalls);
+        }
+    }
+
+    /**
+     * Partial evaluation, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     */
+    public void partialEvaluate(PartialEvaluator evaluator) {
+        statement.partialEvaluate(evaluator);
+        if (statementSequence != null) {
+            statementSequence.partialEvaluate(evaluator);
+        }
+    }
+
+    /**
+     * Create "<stmt-seq>" for partial evaluation
+     *
+     * @param statements the statements, at least one
+     * @return the new statement sequence
+     */
+    public static StatementSequence fromStatements(List<Statement> statements) {
+        StatementSequence sequence = null;
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            StatementSequence previous = new StatementSequence();
+            previous.statement = statements.get(i);
+            previous.statementSequence = sequence;
+            sequence = previous;
+        }
+        return sequence;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
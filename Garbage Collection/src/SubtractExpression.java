@@ -0,0 +1,49 @@
+/**
+ * <expr> ==> <term> - <expr>
+ *
+ * @author Zhao Liu
+ */
+public final class SubtractExpression extends BinaryExpression {
+
+    /**
+     * @param term       the "<term>" on the left side, which has been parsed
+     * @param expression the "<expr>" on the right side, which has been parsed
+     */
+    public SubtractExpression(Term term, Expression expression) {
+        super(term, expression);
+    }
+
+    protected char getSymbol() {
+        return '-';
+    }
+
+    protected IrInstruction.Opcode getOpcode() {
+        return IrInstruction.Opcode.SUB;
+    }
+
+    protected int compute(int termValue, int expressionValue) {
+        return termValue - expressionValue;
+    }
+
+    protected BinaryExpression copy(Term term, Expression expression) {
+        return new SubtractExpression(term, expression);
+    }
+
+    /**
+     * "<factor> - const" skips all the Term layers.
+     *
+     * @return the specialized node, or null if it can not be specialized
+     */
+    protected SpecializedNode.Read specialize() {
+        Factor left = getTerm().getSingleFactor();
+        Factor right = getExpression().getSingleFactor();
+        if (left == null || right == null) {
+            return null;
+        }
+        if (right.isConstant() && !left.isConstant()) {
+            return new SpecializedNode.VarMinusConst(new SpecializedNode.FactorRead(left), right.getConstantValue());
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * The slot numbers of the temporary values in Memory, given by the optimizations of one compile
+ * ("--licm" and "--cse", see LoopAnalysis.java and AvailableExpressions.java).
+ * <p>
+ * Every compile (see Main.compile()) has its own slots, so compiling a program never changes the slots of
+ * another one, even in the batch mode and with many data files. The number of slots is kept in Main.Program,
+ * and every Memory executing the program gets that many slots.
+ *
+ * @author Zhao Liu
+ */
+public class TemporarySlots {
+    private int count = 0;
+
+    /**
+     * Give a new slot number for a temporary value. It is called before execution.
+     *
+     * @return the slot number
+     */
+    public int newSlot() {
+        return count++;
+    }
+
+    /**
+     * @return how many slots have been given
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -1,5 +1,8 @@
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -20,14 +23,25 @@ public class Term {
     private Factor factor;
     private Term term;
 
+    // Strength reduction: "x * 8" is executed as "x << 3", see fold()
+    private int shiftAmount;
+    private boolean isConstantOnLeft;
+
+    // for "--licm", see LoopAnalysis.java
+    private int hoistSlot = -1;
+    private int hoistLoopSlot = -1;
+
+    // for "--cse", see AvailableExpressions.java
+    private int cseSlot = -1;
+    private boolean isCseDefinition;
+
     /**
      * The grammar is: <term> ==> <factor> | <factor> * <term> | <factor> / <term>
      *
      * @param tokenQueue a sequence of tokens as input to the parser.
      */
     public void parse(Queue<Object> tokenQueue, Map<String, Function> functionMap) {
-        factor = new Factor();
-        factor.parse(tokenQueue, functionMap);
+        factor = Factor.parse(tokenQueue, functionMap);
 
         if (tokenQueue.peek() == Core.MULTIPLY) {
             // If the second token is symbol "*", then it is "<term> ==> <factor> * <term>"
@@ -80,8 +94,48 @@ public class Term {
      * @return the result of "<term>"
      */
     public int execute(Memory memory, Map<String, Function> functionMap) {
+        if (cseSlot >= 0 && !isCseDefinition) {
+            // The same value has been computed before in this straight-line part.
+            return memory.getTemporary(cseSlot);
+        }
+
+        int result;
+        if (hoistSlot >= 0) {
+            // It is loop-invariant, so it is only executed once for each time entering the loop.
+            int loopTag = memory.getTemporary(hoistLoopSlot);
+            if (memory.isTemporaryValid(hoistSlot, loopTag)) {
+                result = memory.getTemporary(hoistSlot);
+            } else {
+                result = executeNode(memory, functionMap);
+                memory.setTemporary(hoistSlot, loopTag, result);
+            }
+        } else {
+            result = executeNode(memory, functionMap);
+        }
+
+        if (isCseDefinition) {
+            memory.setTemporary(cseSlot, 0, result);
+        }
+        return result;
+    }
+
+    /**
+     * Execute this node without the loop-invariant value or the common subexpression value.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<term>"
+     */
+    private int executeNode(Memory memory, Map<String, Function> functionMap) {
         int result = 0;
 
+        if (shiftAmount > 0) {
+            // Multiplying by a power of two constant, only the other side needs to be executed.
+            if (isConstantOnLeft) {
+                return term.execute(memory, functionMap) << shiftAmount;
+            }
+            return factor.execute(memory, functionMap) << shiftAmount;
+        }
+
         int factorValue = factor.execute(memory, functionMap);
         if (multiply != null) {
             // Handle case for "<term> ::= <factor> * <term>"
@@ -92,8 +146,7 @@ public class Term {
             // Handle case for "<term> ::= <factor> / <term>"
             int termValue = term.execute(memory, functionMap);
             if (termValue == 0) {
-                System.out.println("ERROR: can not divided by 0!!!");
-                System.exit(1);
+                throw new CoreException("ERROR: can not divided by 0!!!");
             }
             result = factorValue / termValue;
 
@@ -105,6 +158,258 @@ public class Term {
         return result;
     }
 
+    /**
+     * @return the factor if it is "<term> ::= <factor>", otherwise null
+     */
+    public Factor getSingleFactor() {
+        if (multiply != null || divide != null) {
+            return null;
+        }
+        return factor;
+    }
+
+    /**
+     * Constant folding and algebraic simplification for "<term>".
+     * 1. "const * const" and "const / const" are folded into one constant (except dividing by 0, which is left for the runtime error).
+     * 2. "<factor> * 1", "1 * <term>", and "<factor> / 1" are simplified.
+     * 3. Strength reduction: multiplying by a power of two constant is executed as a shift.
+     */
+    public void fold() {
+        factor = factor.fold();
+        if (term == null) {
+            return;
+        }
+        term.fold();
+
+        Factor right = term.getSingleFactor();
+        boolean isLeftConstant = factor.isConstant();
+        boolean isRightConstant = right != null && right.isConstant();
+
+        if (isLeftConstant && isRightConstant) {
+            int leftValue = factor.getConstantValue();
+            int rightValue = right.getConstantValue();
+            if (multiply != null) {
+                setConstant(leftValue * rightValue);
+            } else if (rightValue != 0) {
+                setConstant(leftValue / rightValue);
+            }
+            return;
+        }
+
+        if (isRightConstant && right.getConstantValue() == 1) {
+            // "<factor> * 1" and "<factor> / 1"
+            multiply = null;
+            divide = null;
+            term = null;
+            return;
+        }
+
+        if (multiply != null && isLeftConstant && factor.getConstantValue() == 1) {
+            // "1 * <term>"
+            factor = term.factor;
+            multiply = term.multiply;
+            divide = term.divide;
+            shiftAmount = term.shiftAmount;
+            isConstantOnLeft = term.isConstantOnLeft;
+            term = term.term;
+            return;
+        }
+
+        if (multiply != null) {
+            if (isRightConstant && isPowerOfTwo(right.getConstantValue())) {
+                shiftAmount = Integer.numberOfTrailingZeros(right.getConstantValue());
+                isConstantOnLeft = false;
+            } else if (isLeftConstant && isPowerOfTwo(factor.getConstantValue())) {
+                shiftAmount = Integer.numberOfTrailingZeros(factor.getConstantValue());
+                isConstantOnLeft = true;
+            }
+        }
+    }
+
+    /**
+     * @param value int
+     * @return true if value is 2, 4, 8, 16, ...
+     */
+    private static boolean isPowerOfTwo(int value) {
+        return value > 1 && (value & (value - 1)) == 0;
+    }
+
+    /**
+     * Replace this term by "<term> ::= const"
+     *
+     * @param value the value of constant
+     */
+    private void setConstant(int value) {
+        factor = Factor.fromConstant(value);
+        multiply = null;
+        divide = null;
+        term = null;
+        shiftAmount = 0;
+    }
+
+    /**
+     * @return the number of nodes in this sub-tree
+     */
+    public int countNodes() {
+        int count = 1 + factor.countNodes();
+        if (term != null) {
+            count += term.countNodes();
+        }
+        return count;
+    }
+
+    /**
+     * Create "<term> ::= const" for constant folding
+     *
+     * @param value the value of constant
+     * @return the new term
+     */
+    public static Term fromConstant(int value) {
+        Term term = new Term();
+        term.factor = Factor.fromConstant(value);
+        return term;
+    }
+
+    /**
+     * Check whether the value of "<term>" never changes inside the loop.
+     *
+     * @param loop information about the loop
+     * @return true if it is loop-invariant
+     */
+    public boolean isInvariant(LoopAnalysis loop) {
+        return factor.isInvariant(loop) && (term == null || term.isInvariant(loop));
+    }
+
+    /**
+     * Loop-invariant code motion. If "<term>" is invariant in one of the loops,
+     * it will only be executed once for each time entering the outermost one of these loops.
+     * A single "<factor>" is handled by the factor itself, since specialized nodes may run the factor directly.
+     *
+     * @param loops all the loops around this node, from the outermost one to the innermost one
+     */
+    public void hoist(List<LoopAnalysis> loops) {
+        if (getSingleFactor() == null) {
+            for (LoopAnalysis loop : loops) {
+                if (isInvariant(loop)) {
+                    hoistLoopSlot = loop.getLoopSlot();
+                    hoistSlot = loop.newTemporarySlot();
+                    return;
+                }
+            }
+        }
+
+        factor.hoist(loops);
+        if (term != null) {
+            term.hoist(loops);
+        }
+    }
+
+    /**
+     * Find "a[i]", where "i" is the induction variable of the loop.
+     *
+     * @param loop information about the loop
+     */
+    public void markBoundsChecks(LoopAnalysis loop) {
+        factor.markBoundsChecks(loop);
+        if (term != null) {
+            term.markBoundsChecks(loop);
+        }
+    }
+
+    /**
+     * Common subexpression elimination, see Expression.eliminateCommonSubexpressions()
+     *
+     * @param available the expressions computed before in this straight-line part
+     */
+    public void eliminateCommonSubexpressions(AvailableExpressions available) {
+        if (multiply != null || divide != null) {
+            StringBuilder key = new StringBuilder();
+            appendKey(key);
+            Set<String> variables = new HashSet<>();
+            boolean readsArray = collectReads(variables);
+            cseSlot = available.find(key.toString(), variables, readsArray, slot -> {
+                cseSlot = slot;
+                isCseDefinition = true;
+            });
+            if (cseSlot >= 0) {
+                return;
+            }
+        }
+
+        factor.eliminateCommonSubexpressions(available);
+        if (term != null) {
+            term.eliminateCommonSubexpressions(available);
+        }
+    }
+
+    /**
+     * Write "<term>" as a key for common subexpression elimination, like "(x*y)".
+     *
+     * @param key the key
+     */
+    public void appendKey(StringBuilder key) {
+        if (multiply == null && divide == null) {
+            factor.appendKey(key);
+            return;
+        }
+        key.append('(');
+        factor.appendKey(key);
+        key.append(multiply != null ? '*' : '/');
+        term.appendKey(key);
+        key.append(')');
+    }
+
+    /**
+     * @param variables all the variables read by "<term>" are added
+     * @return true if any array element is read
+     */
+    public boolean collectReads(Set<String> variables) {
+        boolean readsArray = factor.collectReads(variables);
+        if (term != null && term.collectReads(variables)) {
+            readsArray = true;
+        }
+        return readsArray;
+    }
+
+    /**
+     * Build the IR of "<term>", see IrBuilder.java
+     *
+     * @param builder the IR builder
+     * @return the value of "<term>"
+     */
+    public IrInstruction lower(IrBuilder builder) {
+        if (shiftAmount > 0) {
+            // A shift is the same as multiplying by the power of two.
+            IrInstruction value = isConstantOnLeft ? term.lower(builder) : factor.lower(builder);
+            return builder.emit(IrInstruction.Opcode.MUL, value, builder.constant(1 << shiftAmount));
+        }
+
+        IrInstruction factorValue = factor.lower(builder);
+        if (multiply != null) {
+            return builder.emit(IrInstruction.Opcode.MUL, factorValue, term.lower(builder));
+        } else if (divide != null) {
+            return builder.emit(IrInstruction.Opcode.DIV, factorValue, term.lower(builder));
+        }
+        return factorValue;
+    }
+
+    /**
+     * Partial evaluation: copy this node, where every static variable is replaced by its value, see PartialEvaluator.java
+     *
+     * @param evaluator the partial evaluator
+     * @return the residual term
+     */
+    public Term substitute(PartialEvaluator evaluator) {
+        Term residual = new Term();
+        residual.factor = factor.substitute(evaluator);
+        residual.multiply = multiply;
+        residual.divide = divide;
+        if (term != null) {
+            residual.term = term.substitute(evaluator);
+        }
+        return residual;
+    }
+
     /**
      * produce "pretty" code with the appropriate indentation
      *
@@ -0,0 +1,57 @@
+import java.util.Map;
+
+/**
+ * <expr> ==> <term>
+ *
+ * @author Zhao Liu
+ */
+public final class TermExpression extends Expression {
+
+    /**
+     * @param term the "<term>", which has been parsed
+     */
+    public TermExpression(Term term) {
+        super(term);
+    }
+
+    /**
+     * Handle case for "<expr> ::= <term>", return the result of "<term>"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<expr>"
+     */
+    protected int executeGeneric(Memory memory, Map<String, Function> functionMap) {
+        return getTerm().execute(memory, functionMap);
+    }
+
+    /**
+     * "<term>" with a single factor runs the factor directly.
+     *
+     * @return the specialized node, or null if it can not be specialized
+     */
+    protected SpecializedNode.Read specialize() {
+        Factor factor = getTerm().getSingleFactor();
+        if (factor == null) {
+            return null;
+        }
+        return new SpecializedNode.FactorRead(factor);
+    }
+
+    public Factor getSingleFactor() {
+        return getTerm().getSingleFactor();
+    }
+
+    public Expression fold() {
+        getTerm().fold();
+        return this;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        return getTerm().lower(builder);
+    }
+
+    public Expression substitute(PartialEvaluator evaluator) {
+        return new TermExpression(getTerm().substitute(evaluator));
+    }
+
+}
@@ -0,0 +1,194 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * <factor> ==> id
+ * <p>
+ * When id is an array, "id" is a shorthand for "id[0]".
+ *
+ * @author Zhao Liu
+ */
+public final class VariableFactor implements Factor {
+    private String variable;
+    private Core variableType;
+
+    // for "--specialize", see SpecializedNode.java
+    private SpecializedNode.Read specializedNode;
+    private int executionCount;
+    // the innermost loop around this node when it is parsed, see Profile.getSpecializeThreshold()
+    private int loopProfileId = Profile.getInstance().getEnclosingLoop();
+    private int deoptimizationCount;
+
+    // for "--licm", see LoopAnalysis.java
+    private int hoistSlot = -1;
+    private int hoistLoopSlot = -1;
+
+    /**
+     * @param variable the variable name
+     */
+    public VariableFactor(String variable) {
+        this.variable = variable;
+    }
+
+    public void semanticChecking(Stack<Variable> variableStack, Map<String, Function> functionCheckingMap) {
+        variableType = findDeclared(variable, variableStack).getType();
+    }
+
+    /**
+     * @param variable      the variable name
+     * @param variableStack contains all declared variables
+     * @return the innermost declaration of the variable
+     */
+    static Variable findDeclared(String variable, Stack<Variable> variableStack) {
+        for (Variable temp : variableStack) {
+            if (temp.getName().equals(variable)) {
+                return temp;
+            }
+        }
+        throw new CoreException("ERROR: the variable " + variable + " has not been declared before!!!");
+    }
+
+    /**
+     * Handle case for "<factor> ::= id"
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    public int execute(Memory memory, Map<String, Function> functionMap) {
+        if (hoistSlot >= 0) {
+            // It is loop-invariant, so it is only executed once for each time entering the loop.
+            int loopTag = memory.getTemporary(hoistLoopSlot);
+            if (memory.isTemporaryValid(hoistSlot, loopTag)) {
+                return memory.getTemporary(hoistSlot);
+            }
+            int result = executeNode(memory, functionMap);
+            memory.setTemporary(hoistSlot, loopTag, result);
+            return result;
+        }
+        return executeNode(memory, functionMap);
+    }
+
+    /**
+     * Execute this node, either by the specialized node or by the generic node.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the result of "<factor>"
+     */
+    private int executeNode(Memory memory, Map<String, Function> functionMap) {
+        if (specializedNode != null) {
+            try {
+                return specializedNode.execute(memory, functionMap);
+            } catch (SpecializedNode.Deoptimize e) {
+                // An assumption of the specialized node is broken, go back to the generic node.
+                specializedNode = null;
+                executionCount = 0;
+                deoptimizationCount++;
+            }
+        }
+
+        int result = memory.find(variable);
+
+        Options options = Options.getInstance();
+        if (options.isSpecialize() && deoptimizationCount < SpecializedNode.MAX_DEOPTIMIZATIONS) {
+            executionCount++;
+            if (executionCount >= Profile.getInstance().getSpecializeThreshold(loopProfileId)) {
+                specializedNode = specialize(memory);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Rewrite this node into a specialized node, based on what the variable looks like right now.
+     *
+     * @param memory simulating memory (Stack and Heap) for local and global variables
+     * @return the specialized node, or null if it can not be specialized
+     */
+    private SpecializedNode.Read specialize(Memory memory) {
+        int region = memory.findRegion(variable);
+        if (region == Memory.REGION_NONE) {
+            return null;
+        }
+        boolean isGlobal = region == Memory.REGION_GLOBAL;
+        int shadowEpoch = memory.getShadowEpoch();
+
+        if (memory.findType(variable) == Core.ARRAY) {
+            // "id" is a shorthand for "id[0]" when id is an array.
+            SpecializedNode.Read index = new SpecializedNode.ConstRead(0);
+            if (isGlobal) {
+                return new SpecializedNode.GlobalArrayIndexRead(variable, index, shadowEpoch);
+            }
+            return new SpecializedNode.LocalArrayIndexRead(variable, index);
+        }
+
+        if (isGlobal) {
+            return new SpecializedNode.GlobalIntRead(variable, shadowEpoch);
+        }
+        return new SpecializedNode.LocalIntRead(variable);
+    }
+
+    public Factor fold() {
+        return this;
+    }
+
+    public boolean isInvariant(LoopAnalysis loop) {
+        if (loop.isWritten(variable)) {
+            return false;
+        }
+        // "id" is a shorthand for "id[0]" when id is an array.
+        return variableType != Core.ARRAY || !loop.hasArrayWrite();
+    }
+
+    public void hoist(List<LoopAnalysis> loops) {
+        for (LoopAnalysis loop : loops) {
+            if (isInvariant(loop)) {
+                hoistLoopSlot = loop.getLoopSlot();
+                hoistSlot = loop.newTemporarySlot();
+                return;
+            }
+        }
+    }
+
+    public boolean isIntegerVariable(String name) {
+        return variableType == Core.INTEGER && variable.equals(name);
+    }
+
+    public String getIntegerVariable() {
+        return variableType == Core.INTEGER ? variable : null;
+    }
+
+    public void appendKey(StringBuilder key) {
+        key.append(variable);
+    }
+
+    public boolean collectReads(Set<String> variables) {
+        variables.add(variable);
+        // "id" is a shorthand for "id[0]" when id is an array.
+        return variableType == Core.ARRAY;
+    }
+
+    public IrInstruction lower(IrBuilder builder) {
+        if (builder.isLocalInteger(variable)) {
+            return builder.readLocal(variable);
+        }
+        return builder.emitMemory(IrInstruction.Opcode.LOAD, variable);
+    }
+
+    public Factor substitute(PartialEvaluator evaluator) {
+        Integer value = evaluator.getValue(variable);
+        if (value != null) {
+            return Factor.fromConstant(value);
+        }
+        VariableFactor residual = new VariableFactor(variable);
+        residual.variableType = variableType;
+        return residual;
+    }
+
+    public void print(int indent) {
+        System.out.print(variable);
+    }
+
+}